@@ -0,0 +1,105 @@
+package com.egova.cache.benchmark;
+
+import com.egova.cache.CacheType;
+import com.egova.cache.LocalCacheType;
+import com.egova.cache.RedisEhcacheCache;
+import com.egova.cache.RedisEhcacheCacheManager;
+import com.egova.cache.RedisEhcacheProperties;
+import com.egova.redis.CompactRedisSerializer;
+import com.egova.redis.FastJson2JsonRedisSerializer;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 基准测试共用的缓存：一个 {@link CacheType#all} 模式、由消息维护一致性的 {@link RedisEhcacheCache}，
+ * 与业务中通过 {@link RedisEhcacheCacheManager} 创建的cache配置一致
+ */
+public class BenchmarkCache implements AutoCloseable {
+
+    public static final String CACHE_NAME = "benchmark";
+
+    private final BenchmarkRedis redis;
+
+    private final RedisEhcacheCacheManager cacheManager;
+
+    private final RedisEhcacheCache cache;
+
+    /**
+     * @param provider   一级缓存的实现，ehcache 或 caffeine
+     * @param serializer 二级缓存值的序列化，json 或 compact
+     * @param maxEntry   一级缓存的容量
+     */
+    public BenchmarkCache(String provider, String serializer, long maxEntry) throws Exception {
+        this(provider, serializer, maxEntry, false);
+    }
+
+    /**
+     * @param storeByValue 一级缓存是否按值存储
+     */
+    public BenchmarkCache(String provider, String serializer, long maxEntry, boolean storeByValue) throws Exception {
+        this.redis = BenchmarkRedis.start();
+
+        RedisTemplate<Object, Object> redisTemplate = new RedisTemplate<>();
+        redisTemplate.setConnectionFactory(redis.getConnectionFactory());
+        redisTemplate.setKeySerializer(new StringRedisSerializer());
+        redisTemplate.setValueSerializer(createValueSerializer(serializer));
+        redisTemplate.afterPropertiesSet();
+
+        RedisEhcacheProperties properties = new RedisEhcacheProperties();
+        properties.setCacheType(CacheType.all);
+        properties.getEhcache().setProvider(LocalCacheType.valueOf(provider));
+        properties.getEhcache().setMaxEntry(maxEntry);
+        // 按全部节点升级后的配置，发送二进制消息
+        properties.getRedis().setMessageLegacyFormat(false);
+        if (storeByValue) {
+            RedisEhcacheProperties.Policy policy = new RedisEhcacheProperties.Policy();
+            policy.setStoreByValue(true);
+            properties.getCaches().put(CACHE_NAME, policy);
+        }
+
+        this.cacheManager = new RedisEhcacheCacheManager(properties, redisTemplate);
+        this.cache = (RedisEhcacheCache) cacheManager.getCache(CACHE_NAME);
+        // 不读取上一次中断的测试留下的数据
+        this.cache.clear();
+    }
+
+    static RedisSerializer<Object> createValueSerializer(String serializer) {
+        if ("compact".equals(serializer)) {
+            return new CompactRedisSerializer(1024);
+        }
+        return new FastJson2JsonRedisSerializer<>(Object.class);
+    }
+
+    /**
+     * 测试用的缓存值，字段数量和类型接近一条普通的业务记录
+     */
+    public static Map<String, Object> newValue(long id) {
+        Map<String, Object> value = new HashMap<>();
+        value.put("id", id);
+        value.put("code", "CODE-" + id);
+        value.put("name", "测试数据" + id);
+        value.put("type", (int) (id % 10));
+        value.put("enabled", Boolean.TRUE);
+        value.put("createTime", 1600000000000L + id);
+        value.put("remark", "用于缓存基准测试的记录，长度与一般的备注字段相当");
+        return value;
+    }
+
+    public RedisEhcacheCache getCache() {
+        return cache;
+    }
+
+    @Override
+    public void close() {
+        try {
+            cache.clear();
+            cacheManager.destroy();
+        } finally {
+            redis.close();
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.egova.cache.benchmark;
+
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 基准测试使用的redis。
+ * 配置了 -Dredis.server（redis-server可执行文件的路径）时，在 redis.port 上启动一个不持久化的redis进程，测试结束后关闭；
+ * 否则连接 redis.host:redis.port 上已经启动的redis。
+ * 测试数据只写入 redis.database（默认15），结束时切换cache的代数，旧数据随过期时间清理，不会清空整个库。
+ */
+public class BenchmarkRedis implements AutoCloseable {
+
+    private static final long STARTUP_TIMEOUT = TimeUnit.SECONDS.toMillis(10);
+
+    private final String host = System.getProperty("redis.host", "127.0.0.1");
+
+    private final int port = Integer.getInteger("redis.port", 6379);
+
+    private final int database = Integer.getInteger("redis.database", 15);
+
+    private Process process;
+
+    private LettuceConnectionFactory connectionFactory;
+
+    public static BenchmarkRedis start() throws Exception {
+        BenchmarkRedis redis = new BenchmarkRedis();
+        String server = System.getProperty("redis.server");
+        if (server != null && !server.isEmpty()) {
+            redis.startServer(server);
+        }
+        redis.connect();
+        return redis;
+    }
+
+    private void startServer(String server) throws Exception {
+        process = new ProcessBuilder(server, "--port", String.valueOf(port), "--save", "", "--appendonly", "no")
+                .redirectErrorStream(true)
+                .redirectOutput(new File(System.getProperty("java.io.tmpdir"), "benchmark-redis-" + port + ".log"))
+                .start();
+        long deadline = System.currentTimeMillis() + STARTUP_TIMEOUT;
+        while (!reachable()) {
+            if (!process.isAlive() || System.currentTimeMillis() > deadline) {
+                close();
+                throw new IllegalStateException("redis-server启动失败，端口：" + port);
+            }
+            Thread.sleep(50);
+        }
+    }
+
+    private boolean reachable() {
+        try (Socket socket = new Socket()) {
+            socket.connect(new InetSocketAddress(host, port), 200);
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private void connect() {
+        RedisStandaloneConfiguration configuration = new RedisStandaloneConfiguration(host, port);
+        configuration.setDatabase(database);
+        connectionFactory = new LettuceConnectionFactory(configuration);
+        connectionFactory.afterPropertiesSet();
+    }
+
+    public LettuceConnectionFactory getConnectionFactory() {
+        return connectionFactory;
+    }
+
+    @Override
+    public void close() {
+        if (connectionFactory != null) {
+            connectionFactory.destroy();
+            connectionFactory = null;
+        }
+        if (process != null) {
+            process.destroy();
+            try {
+                process.waitFor(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            process = null;
+        }
+    }
+}
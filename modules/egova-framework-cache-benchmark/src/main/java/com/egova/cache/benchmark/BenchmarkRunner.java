@@ -0,0 +1,46 @@
+package com.egova.cache.benchmark;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 基准测试入口，参数与JMH的命令行一致，如：
+ * <pre>
+ * java -Dredis.server=/usr/local/bin/redis-server -jar target/benchmarks.jar RedisEhcacheCache -rff target/1.0.3.json
+ * </pre>
+ * 未指定 -rf 时结果以json格式写入 -rff 指定的文件（默认 jmh-result.json），便于不同版本之间对比。
+ * redis相关的系统属性会传给fork出的测试进程。
+ */
+public class BenchmarkRunner {
+
+    private static final String[] FORWARDED_PROPERTIES = {"redis.server", "redis.host", "redis.port", "redis.database"};
+
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions commandLine = new CommandLineOptions(args);
+        ChainedOptionsBuilder options = new OptionsBuilder().parent(commandLine);
+        if (!commandLine.getResultFormat().hasValue()) {
+            options.resultFormat(ResultFormatType.JSON);
+        }
+        if (!commandLine.getResult().hasValue()) {
+            options.result("jmh-result.json");
+        }
+        List<String> jvmArgs = new ArrayList<>();
+        if (commandLine.getJvmArgsAppend().hasValue()) {
+            jvmArgs.addAll(commandLine.getJvmArgsAppend().get());
+        }
+        for (String name : FORWARDED_PROPERTIES) {
+            String value = System.getProperty(name);
+            if (value != null) {
+                jvmArgs.add("-D" + name + "=" + value);
+            }
+        }
+        options.jvmArgsAppend(jvmArgs.toArray(new String[0]));
+        new Runner(options.build()).run();
+    }
+}
@@ -0,0 +1,142 @@
+package com.egova.cache.benchmark;
+
+import com.egova.cache.CacheKeyGenerator;
+import com.egova.cache.CacheKeyHasher;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link CacheKeyGenerator#generate} 的基准测试，覆盖常见的参数形式：无参数、id、字符串和id、集合、查询条件；
+ * 以及大查询条件生成的长key经 {@link CacheKeyHasher} 压缩的额外耗时
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CacheKeyGeneratorBenchmark {
+
+    private final CacheKeyGenerator generator = new CacheKeyGenerator();
+
+    private final CacheKeyHasher hasher = new CacheKeyHasher(128);
+
+    private final SampleServiceImpl target = new SampleServiceImpl();
+
+    private Method getDataFromCache;
+
+    private Method findById;
+
+    private Method findByTypeAndCode;
+
+    private Method getManyFromCache;
+
+    private Method query;
+
+    private final List<Long> ids = Arrays.asList(1L, 2L, 3L, 4L, 5L, 6L, 7L, 8L);
+
+    private Map<String, Object> criteria;
+
+    private Map<String, Object> largeCriteria;
+
+    @Setup
+    public void setup() throws NoSuchMethodException {
+        getDataFromCache = SampleServiceImpl.class.getMethod("getDataFromCache");
+        findById = SampleServiceImpl.class.getMethod("findById", Long.class);
+        findByTypeAndCode = SampleServiceImpl.class.getMethod("findByTypeAndCode", String.class, Long.class);
+        getManyFromCache = SampleServiceImpl.class.getMethod("getManyFromCache", List.class);
+        query = SampleServiceImpl.class.getMethod("query", Map.class);
+
+        criteria = new HashMap<>();
+        criteria.put("name", "测试");
+        criteria.put("type", 3);
+        criteria.put("enabled", Boolean.TRUE);
+        Set<String> codes = new HashSet<>(Arrays.asList("A01", "A02", "B01"));
+        criteria.put("codes", codes);
+
+        largeCriteria = new HashMap<>(criteria);
+        Set<String> moreCodes = new HashSet<>();
+        for (int i = 0; i < 50; i++) {
+            moreCodes.add("CODE" + i);
+        }
+        largeCriteria.put("codes", moreCodes);
+    }
+
+    @Benchmark
+    public Object noParams() {
+        return generator.generate(target, getDataFromCache);
+    }
+
+    @Benchmark
+    public Object id() {
+        return generator.generate(target, findById, 12345L);
+    }
+
+    @Benchmark
+    public Object stringAndId() {
+        return generator.generate(target, findByTypeAndCode, "dictionary", 12345L);
+    }
+
+    @Benchmark
+    public Object list() {
+        return generator.generate(target, getManyFromCache, ids);
+    }
+
+    @Benchmark
+    public Object criteria() {
+        return generator.generate(target, query, criteria);
+    }
+
+    @Benchmark
+    public Object largeCriteria() {
+        return generator.generate(target, query, largeCriteria);
+    }
+
+    @Benchmark
+    public Object largeCriteriaCompact() {
+        return hasher.encode(generator.generate(target, query, largeCriteria).toString());
+    }
+
+    /**
+     * 模拟业务中的服务类，只用于取得方法
+     */
+    public static class SampleServiceImpl {
+
+        public Object getDataFromCache() {
+            return null;
+        }
+
+        public Object findById(Long id) {
+            return null;
+        }
+
+        public Object findByTypeAndCode(String type, Long code) {
+            return null;
+        }
+
+        public Object getManyFromCache(List<Long> ids) {
+            return null;
+        }
+
+        public Object query(Map<String, Object> criteria) {
+            return null;
+        }
+    }
+}
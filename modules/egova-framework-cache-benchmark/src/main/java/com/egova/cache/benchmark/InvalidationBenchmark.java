@@ -0,0 +1,197 @@
+package com.egova.cache.benchmark;
+
+import com.egova.cache.CacheCoherence;
+import com.egova.cache.CacheMessageListener;
+import com.egova.cache.CacheTrackingListener;
+import com.egova.cache.CacheType;
+import com.egova.cache.RedisEhcacheCache;
+import com.egova.cache.RedisEhcacheCacheManager;
+import com.egova.cache.RedisEhcacheProperties;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.core.task.SyncTaskExecutor;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 一级缓存失效的基准测试，对比 topic（写入方发送消息）和 tracking（redis推送失效通知）两种一致性维护方式。
+ * 两个cacheManager连接同一个redis，分别代表写入节点和读取节点，各自按配置的方式监听失效；
+ * 每次操作由写入节点写入一个key，直到读取节点收到该key的失效为止，按单次耗时统计。
+ * topic方式的耗时包含消息的合并发送间隔（cache.multi.redis.message-flush-interval，默认5毫秒）。
+ * 网络流量取redis INFO stats 中 total_net_input_bytes、total_net_output_bytes 的增量，包括写入本身的流量，
+ * 与操作数一起作为辅助计数输出，每次操作的流量为 redisInputBytes / operations、redisOutputBytes / operations。
+ * 运行方式与 {@link BenchmarkRunner} 相同，需要redis 6以上。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class InvalidationBenchmark {
+
+    private static final long INVALIDATION_TIMEOUT = TimeUnit.SECONDS.toNanos(5);
+
+    private static final int KEYS = 1000;
+
+    @Param({"topic", "tracking"})
+    private String coherence;
+
+    private BenchmarkRedis redis;
+
+    private RedisTemplate<Object, Object> redisTemplate;
+
+    private final List<AutoCloseable> resources = new ArrayList<>();
+
+    private RedisEhcacheCache writer;
+
+    private RedisEhcacheCache reader;
+
+    private Map<String, Object> value;
+
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        redis = BenchmarkRedis.start();
+        redisTemplate = newRedisTemplate();
+        writer = startNode();
+        reader = startNode();
+        // 不读取上一次中断的测试留下的数据
+        writer.clear();
+        value = BenchmarkCache.newValue(1);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        try {
+            writer.clear();
+            for (int i = resources.size() - 1; i >= 0; i--) {
+                resources.get(i).close();
+            }
+        } finally {
+            redis.close();
+        }
+    }
+
+    /**
+     * 一个节点：独立的cacheManager和失效监听，与业务中的自动配置一致
+     */
+    private RedisEhcacheCache startNode() throws Exception {
+        RedisEhcacheProperties properties = new RedisEhcacheProperties();
+        properties.setCacheType(CacheType.all);
+        properties.getRedis().setCoherence(CacheCoherence.valueOf(coherence));
+        // 按全部节点升级后的配置，发送二进制消息
+        properties.getRedis().setMessageLegacyFormat(false);
+        RedisTemplate<Object, Object> nodeTemplate = newRedisTemplate();
+        RedisEhcacheCacheManager cacheManager = new RedisEhcacheCacheManager(properties, nodeTemplate);
+        resources.add(cacheManager::destroy);
+        if (CacheCoherence.tracking.name().equals(coherence)) {
+            CacheTrackingListener listener = new CacheTrackingListener(nodeTemplate, cacheManager);
+            listener.afterPropertiesSet();
+            resources.add(listener::destroy);
+        } else {
+            // 测试中只有二进制格式的消息，不需要JsonMapping
+            CacheMessageListener listener = new CacheMessageListener(nodeTemplate, cacheManager, null);
+            RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+            container.setConnectionFactory(redis.getConnectionFactory());
+            container.setTaskExecutor(new SyncTaskExecutor());
+            container.addMessageListener(listener, new ChannelTopic(properties.getRedis().getTopic()));
+            container.afterPropertiesSet();
+            container.start();
+            resources.add(container::destroy);
+        }
+        return (RedisEhcacheCache) cacheManager.getCache(BenchmarkCache.CACHE_NAME);
+    }
+
+    private RedisTemplate<Object, Object> newRedisTemplate() {
+        RedisTemplate<Object, Object> template = new RedisTemplate<>();
+        template.setConnectionFactory(redis.getConnectionFactory());
+        template.setKeySerializer(new StringRedisSerializer());
+        template.setValueSerializer(BenchmarkCache.createValueSerializer("json"));
+        template.afterPropertiesSet();
+        return template;
+    }
+
+    @Benchmark
+    public void invalidate(Traffic traffic) {
+        long received = reader.getMetrics().getInvalidationsReceived();
+        writer.put("Service:Benchmark:" + (next++ % KEYS), value);
+        long deadline = System.nanoTime() + INVALIDATION_TIMEOUT;
+        while (reader.getMetrics().getInvalidationsReceived() == received) {
+            if (System.nanoTime() > deadline) {
+                throw new IllegalStateException("读取节点没有收到失效，coherence:" + coherence);
+            }
+        }
+        traffic.operations++;
+    }
+
+    /**
+     * 测试期间redis上的网络流量，单位字节。JMH把各轮的辅助计数相加，这里输出总量而不是平均值
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Traffic {
+
+        /**
+         * redis收到的字节数
+         */
+        public long redisInputBytes;
+
+        /**
+         * redis发出的字节数，包括推送给各节点的消息和失效通知
+         */
+        public long redisOutputBytes;
+
+        /**
+         * 完成的操作数
+         */
+        public long operations;
+
+        private long input;
+
+        private long output;
+
+        @Setup(Level.Iteration)
+        public void start(InvalidationBenchmark benchmark) {
+            Properties stats = benchmark.stats();
+            input = Long.parseLong(stats.getProperty("total_net_input_bytes"));
+            output = Long.parseLong(stats.getProperty("total_net_output_bytes"));
+            operations = 0;
+            redisInputBytes = 0;
+            redisOutputBytes = 0;
+        }
+
+        @TearDown(Level.Iteration)
+        public void stop(InvalidationBenchmark benchmark) {
+            Properties stats = benchmark.stats();
+            redisInputBytes = Long.parseLong(stats.getProperty("total_net_input_bytes")) - input;
+            redisOutputBytes = Long.parseLong(stats.getProperty("total_net_output_bytes")) - output;
+        }
+    }
+
+    private Properties stats() {
+        return redisTemplate.execute((RedisCallback<Properties>) connection -> connection.info("stats"));
+    }
+}
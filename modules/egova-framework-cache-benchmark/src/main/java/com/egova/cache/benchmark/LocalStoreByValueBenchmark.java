@@ -0,0 +1,88 @@
+package com.egova.cache.benchmark;
+
+import com.egova.cache.RedisEhcacheCache;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 一级缓存按值存储与读取后自行复制的对比，都是一级缓存命中。copy参数：
+ * none 按引用读取不复制（不安全，作为基准）；shallow 读取后复制Map；deep 读取后经序列化深复制；storeByValue 按值存储，直接读取副本。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LocalStoreByValueBenchmark {
+
+    @Param({"ehcache", "caffeine"})
+    private String provider;
+
+    @Param({"json", "compact"})
+    private String serializer;
+
+    @Param({"none", "shallow", "deep", "storeByValue"})
+    private String copy;
+
+    private BenchmarkCache benchmarkCache;
+
+    private RedisEhcacheCache cache;
+
+    private RedisSerializer<Object> copier;
+
+    private String[] keys;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        benchmarkCache = new BenchmarkCache(provider, serializer, RedisEhcacheCacheBenchmark.KEYS * 2, "storeByValue".equals(copy));
+        cache = benchmarkCache.getCache();
+        copier = BenchmarkCache.createValueSerializer(serializer);
+
+        keys = new String[RedisEhcacheCacheBenchmark.KEYS];
+        Map<Object, Object> values = new HashMap<>(keys.length);
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = "Service:Benchmark:" + i;
+            values.put(keys[i], BenchmarkCache.newValue(i));
+        }
+        cache.putAll(values);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        benchmarkCache.close();
+    }
+
+    /**
+     * 一级缓存命中，按copy参数取得调用方可以修改的值
+     */
+    @Benchmark
+    @SuppressWarnings("unchecked")
+    public Object localHit(RedisEhcacheCacheBenchmark.Cursor cursor) {
+        Object value = cache.get(keys[cursor.next()]).get();
+        switch (copy) {
+            case "shallow":
+                return new HashMap<>((Map<String, Object>) value);
+            case "deep":
+                return copier.deserialize(copier.serialize(value));
+            default:
+                return value;
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package com.egova.cache.benchmark;
+
+import com.egova.cache.RedisEhcacheCache;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.cache.Cache;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link RedisEhcacheCache} 读写路径的基准测试。
+ * 每个方法对应一条典型路径：一级缓存命中、二级缓存命中并回填一级缓存、两级都未命中后回源、写入并发送失效消息。
+ * 读写的key在固定的一组key中轮换，每个线程各自轮换。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RedisEhcacheCacheBenchmark {
+
+    /**
+     * 预先写入的key数量，为2的幂
+     */
+    static final int KEYS = 1024;
+
+    @Param({"ehcache", "caffeine"})
+    private String provider;
+
+    @Param({"json", "compact"})
+    private String serializer;
+
+    private BenchmarkCache benchmarkCache;
+
+    private RedisEhcacheCache cache;
+
+    private String[] keys;
+
+    private Map<String, Object> value;
+
+    private Callable<Object> loader;
+
+    /**
+     * 回源测试使用的key序号，保证每次读取都是新key
+     */
+    private final AtomicLong missSequence = new AtomicLong();
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        benchmarkCache = new BenchmarkCache(provider, serializer, KEYS * 2);
+        cache = benchmarkCache.getCache();
+        value = BenchmarkCache.newValue(1);
+        loader = () -> value;
+
+        keys = new String[KEYS];
+        Map<Object, Object> values = new HashMap<>(KEYS);
+        for (int i = 0; i < KEYS; i++) {
+            keys[i] = "Service:Benchmark:" + i;
+            values.put(keys[i], BenchmarkCache.newValue(i));
+        }
+        cache.putAll(values);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        benchmarkCache.close();
+    }
+
+    /**
+     * 一级缓存命中
+     */
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public Cache.ValueWrapper localHit(Cursor cursor) {
+        return cache.get(keys[cursor.next()]);
+    }
+
+    /**
+     * 一级缓存未命中、二级缓存命中并回填一级缓存。
+     * 先移除一级缓存中的条目，移除本身是一次本地操作，相对于redis的往返可以忽略
+     */
+    @Benchmark
+    public Cache.ValueWrapper remoteHit(Cursor cursor) {
+        String key = keys[cursor.next()];
+        cache.getLocalStore().remove(key);
+        return cache.get(key);
+    }
+
+    /**
+     * 两级缓存都未命中，通过加载器回源并写入两级缓存，对应 {@code @Cacheable(sync = true)}
+     */
+    @Benchmark
+    public Object missWithLoader() {
+        return cache.get("Service:Benchmark:miss:" + missSequence.incrementAndGet(), loader);
+    }
+
+    /**
+     * 写入两级缓存并发送失效消息
+     */
+    @Benchmark
+    public void put(Cursor cursor) {
+        cache.put(keys[cursor.next()], value);
+    }
+
+    /**
+     * 每个线程各自轮换读写的key
+     */
+    @State(Scope.Thread)
+    public static class Cursor {
+
+        private int next;
+
+        int next() {
+            int index = next;
+            next = (index + 1) & (KEYS - 1);
+            return index;
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.egova.cache.benchmark;
+
+import com.egova.cache.RedisEhcacheCache;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link RedisEhcacheCache#clear()} 的基准测试。
+ * 每次清空前重新写入指定数量的key，写入不计入耗时；清空只切换代数，耗时与key的数量无关，按单次耗时统计。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 20)
+@Fork(1)
+public class RedisEhcacheCacheClearBenchmark {
+
+    @Param({"1000", "10000"})
+    private int entries;
+
+    private BenchmarkCache benchmarkCache;
+
+    private RedisEhcacheCache cache;
+
+    private Map<Object, Object> values;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        benchmarkCache = new BenchmarkCache("ehcache", "json", entries);
+        cache = benchmarkCache.getCache();
+        values = new HashMap<>(entries);
+        for (int i = 0; i < entries; i++) {
+            values.put("Service:Benchmark:" + i, BenchmarkCache.newValue(i));
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void fill() {
+        cache.putAll(values);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        benchmarkCache.close();
+    }
+
+    @Benchmark
+    public void clear() {
+        cache.clear();
+    }
+}
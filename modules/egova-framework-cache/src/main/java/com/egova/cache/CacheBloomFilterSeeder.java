@@ -0,0 +1,19 @@
+package com.egova.cache;
+
+/**
+ * 布隆过滤器的初始数据，提供某个cache当前已存在的全部key（如数据库中全部主键）。
+ * 注册为spring bean后，开启了布隆过滤器的cache在创建时异步加载一次，加载完成前过滤器不拦截任何key；
+ * 配置了bloomReseedInterval时按间隔重新加载，也可以调用 {@link RedisEhcacheCacheManager#reseedBloomFilter(String)} 立即重新加载。
+ */
+public interface CacheBloomFilterSeeder {
+
+    /**
+     * 对应的cacheName
+     */
+    String getCacheName();
+
+    /**
+     * 已存在的key，与读写缓存时使用的key一致
+     */
+    Iterable<?> loadKeys() throws Exception;
+}
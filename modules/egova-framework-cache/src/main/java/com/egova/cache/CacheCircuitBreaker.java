@@ -0,0 +1,307 @@
+package com.egova.cache;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 二级缓存的熔断器，只在 {@link CacheType#all} 模式下使用。
+ * 按固定时间窗口统计redis操作的异常和慢调用，窗口内调用数达到下限后，异常率或慢调用率超过阈值即熔断；
+ * 熔断期间只读写一级缓存，跳过的二级缓存写入和失效通知记录在有界的待补发集合中，超出上限后改为恢复时清空整个cache。
+ * 熔断时间结束后由后台线程探测：补发待处理的失效（没有待处理的失效时发送PING），成功则恢复，失败则继续熔断。
+ */
+@Slf4j
+public class CacheCircuitBreaker {
+
+    public enum State {
+        /**
+         * 正常访问redis
+         */
+        closed,
+        /**
+         * 熔断中，只使用一级缓存
+         */
+        open,
+        /**
+         * 正在探测redis是否恢复，探测完成前仍只使用一级缓存
+         */
+        halfOpen
+    }
+
+    /**
+     * 恢复前的探测，补发熔断期间跳过的失效；抛出异常表示redis仍不可用
+     */
+    @FunctionalInterface
+    public interface Replayer {
+
+        /**
+         * @param keys  需要删除并通知其它节点的key，为空时只检查redis是否可用
+         * @param clear 是否需要清空整个cache，为true时忽略keys
+         */
+        void replay(Collection<Object> keys, boolean clear) throws Exception;
+    }
+
+    private final String name;
+
+    private final double failureRateThreshold;
+
+    private final double slowCallRateThreshold;
+
+    private final long slowCallNanos;
+
+    private final int minimumCalls;
+
+    private final long windowMillis;
+
+    private final long openMillis;
+
+    private final int maxPendingInvalidations;
+
+    private final Replayer replayer;
+
+    private volatile Executor executor;
+
+    private final AtomicReference<State> state = new AtomicReference<>(State.closed);
+
+    private final AtomicLong windowStart = new AtomicLong(System.currentTimeMillis());
+
+    private final LongAdder calls = new LongAdder();
+
+    private final LongAdder failures = new LongAdder();
+
+    private final LongAdder slowCalls = new LongAdder();
+
+    private volatile long openUntil;
+
+    /**
+     * 熔断期间跳过的失效key，由自身加锁保护
+     */
+    private final Set<Object> pending = new LinkedHashSet<>();
+
+    private boolean pendingClear;
+
+    private final LongAdder rejections = new LongAdder();
+
+    private final LongAdder openings = new LongAdder();
+
+    private final LongAdder overflows = new LongAdder();
+
+    public CacheCircuitBreaker(String name, RedisEhcacheProperties.CircuitBreaker properties, Replayer replayer) {
+        this.name = name;
+        this.failureRateThreshold = properties.getFailureRateThreshold();
+        this.slowCallRateThreshold = properties.getSlowCallRateThreshold();
+        this.slowCallNanos = properties.getSlowCallDuration().toNanos();
+        this.minimumCalls = Math.max(1, properties.getMinimumCalls());
+        this.windowMillis = properties.getWindow().toMillis();
+        this.openMillis = properties.getOpenDuration().toMillis();
+        this.maxPendingInvalidations = properties.getMaxPendingInvalidations();
+        this.replayer = replayer;
+    }
+
+    /**
+     * 设置执行探测的线程池，未设置时在触发探测的线程上执行
+     */
+    public void setExecutor(Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * 是否可以访问redis。熔断时间结束后的第一次调用触发后台探测，本次调用仍返回false
+     */
+    public boolean allowRequest() {
+        State current = state.get();
+        if (current == State.closed) {
+            return true;
+        }
+        if (current == State.open && System.currentTimeMillis() >= openUntil && state.compareAndSet(State.open, State.halfOpen)) {
+            startProbe();
+        }
+        rejections.increment();
+        return false;
+    }
+
+    /**
+     * 记录一次成功的redis操作
+     *
+     * @param nanos 操作耗时，超过慢调用阈值时记为慢调用
+     */
+    public void onSuccess(long nanos) {
+        record(false, nanos >= slowCallNanos);
+    }
+
+    /**
+     * 记录一次失败的redis操作
+     */
+    public void onError() {
+        record(true, false);
+    }
+
+    private void record(boolean failure, boolean slow) {
+        if (state.get() != State.closed) {
+            // 熔断前已发出的操作，结果不再计入
+            return;
+        }
+        long now = System.currentTimeMillis();
+        long start = windowStart.get();
+        if (now - start >= windowMillis && windowStart.compareAndSet(start, now)) {
+            calls.reset();
+            failures.reset();
+            slowCalls.reset();
+        }
+        calls.increment();
+        if (failure) {
+            failures.increment();
+        }
+        if (slow) {
+            slowCalls.increment();
+        }
+        if (!failure && !slow) {
+            return;
+        }
+        long total = calls.sum();
+        if (total < minimumCalls) {
+            return;
+        }
+        if (failures.sum() >= total * failureRateThreshold || slowCalls.sum() >= total * slowCallRateThreshold) {
+            if (state.compareAndSet(State.closed, State.open)) {
+                openUntil = now + openMillis;
+                openings.increment();
+                log.warn("redis操作异常或过慢，缓存熔断，只使用一级缓存，cacheName:{}, 调用:{}, 异常:{}, 慢调用:{}",
+                        name, total, failures.sum(), slowCalls.sum());
+            }
+        }
+    }
+
+    /**
+     * 记录熔断期间跳过的失效，超过上限后改为恢复时清空整个cache
+     */
+    public void deferInvalidation(Object key) {
+        synchronized (pending) {
+            if (pendingClear) {
+                return;
+            }
+            if (pending.size() >= maxPendingInvalidations && !pending.contains(key)) {
+                overflows.increment();
+                deferClearLocked();
+                return;
+            }
+            pending.add(key);
+        }
+    }
+
+    /**
+     * 记录熔断期间跳过的清空
+     */
+    public void deferClear() {
+        synchronized (pending) {
+            deferClearLocked();
+        }
+    }
+
+    private void deferClearLocked() {
+        pendingClear = true;
+        pending.clear();
+    }
+
+    private void startProbe() {
+        Executor executor = this.executor;
+        if (executor == null) {
+            probe();
+            return;
+        }
+        try {
+            executor.execute(this::probe);
+        } catch (RejectedExecutionException e) {
+            reopen();
+        }
+    }
+
+    /**
+     * 补发待处理的失效，直到没有新的待处理失效后恢复；补发期间新增的失效在下一轮补发
+     */
+    private void probe() {
+        while (true) {
+            List<Object> keys;
+            boolean clear;
+            synchronized (pending) {
+                keys = new ArrayList<>(pending);
+                clear = pendingClear;
+                pending.clear();
+                pendingClear = false;
+            }
+            try {
+                replayer.replay(keys, clear);
+            } catch (Exception ex) {
+                synchronized (pending) {
+                    if (clear) {
+                        deferClearLocked();
+                    } else if (!pendingClear) {
+                        pending.addAll(keys);
+                    }
+                }
+                log.debug("redis仍不可用，继续熔断，cacheName:{}", name, ex);
+                reopen();
+                return;
+            }
+            synchronized (pending) {
+                if (pending.isEmpty() && !pendingClear) {
+                    windowStart.set(System.currentTimeMillis());
+                    calls.reset();
+                    failures.reset();
+                    slowCalls.reset();
+                    state.set(State.closed);
+                    log.info("redis已恢复，缓存熔断结束，cacheName:{}, 补发失效:{}", name, clear ? "clear" : keys.size());
+                    return;
+                }
+            }
+        }
+    }
+
+    private void reopen() {
+        openUntil = System.currentTimeMillis() + openMillis;
+        state.set(State.open);
+    }
+
+    public State getState() {
+        return state.get();
+    }
+
+    /**
+     * 熔断期间直接跳过redis的次数
+     */
+    public long getRejections() {
+        return rejections.sum();
+    }
+
+    /**
+     * 进入熔断的次数
+     */
+    public long getOpenings() {
+        return openings.sum();
+    }
+
+    /**
+     * 待补发的失效key数量，需要清空整个cache时为0
+     */
+    public int getPendingInvalidations() {
+        synchronized (pending) {
+            return pending.size();
+        }
+    }
+
+    /**
+     * 待补发的失效超过上限、改为清空整个cache的次数
+     */
+    public long getOverflows() {
+        return overflows.sum();
+    }
+}
@@ -0,0 +1,17 @@
+package com.egova.cache;
+
+/**
+ * 一级缓存一致性的维护方式
+ */
+public enum CacheCoherence
+{
+	/**
+	 * 写入方通过redis消息通知其他节点
+	 */
+	topic,
+
+	/**
+	 * redis服务端跟踪key的变更并推送失效通知（CLIENT TRACKING），不经过业务写入方
+	 */
+	tracking
+}
@@ -0,0 +1,206 @@
+package com.egova.cache;
+
+import org.springframework.cache.Cache;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.function.Function;
+
+/**
+ * 按实体归一化的缓存。
+ * 实体按id只在实体cache中保存一份；列表（如getDataFromCache对应的all）在列表cache中只保存id列表，
+ * 读取时通过实体cache的 {@link RedisEhcacheCache#getAll} 批量取得实体，缺失的实体由批量加载器一次回源并写回实体cache；
+ * 按id批量读取（如getManyFromCache对应的key-value）直接读取实体cache，不再按参数组合缓存。
+ * 实体变更后只需要失效实体本身，包含它的列表在下一次读取时自动得到新值，已删除的实体从结果中去掉；
+ * 列表的成员发生变化（新增实体、查询条件命中的实体改变）时仍需要失效对应的列表。
+ * 实体cache的key和列表cache中保存的id都是id的字符串形式，不依赖二级缓存的序列化能否还原id的类型
+ * （如json序列化后Long变为Integer），需要回源时由idParser还原为id。
+ * 本类需要显式使用：{@link CacheKeyGenerator} 对应的getDataFromCache、getManyFromCache仍按参数缓存整个结果，
+ * 改为归一化缓存时由调用方通过本类读取。
+ *
+ * @param <K> id的类型
+ * @param <T> 实体的类型
+ */
+public class CacheEntityStore<K, T> {
+
+    private final RedisEhcacheCache entityCache;
+
+    private final RedisEhcacheCache listCache;
+
+    private final Function<T, K> idOf;
+
+    private final Function<String, K> idParser;
+
+    private final Function<Collection<K>, Map<K, T>> loader;
+
+    /**
+     * @param entityCache 保存实体的cache
+     * @param listCache   保存id列表的cache
+     * @param idOf        取得实体的id
+     * @param idParser    由id的字符串形式还原id，如 Long::valueOf
+     * @param loader      按id批量回源，不存在的id不在结果中，返回null视为都不存在
+     */
+    public CacheEntityStore(RedisEhcacheCache entityCache, RedisEhcacheCache listCache,
+                            Function<T, K> idOf, Function<String, K> idParser, Function<Collection<K>, Map<K, T>> loader) {
+        this.entityCache = entityCache;
+        this.listCache = listCache;
+        this.idOf = idOf;
+        this.idParser = idParser;
+        this.loader = loader;
+    }
+
+    /**
+     * 按id读取单个实体，不存在时返回null
+     */
+    public T get(K id) {
+        List<T> entities = getMany(Collections.singletonList(id));
+        return entities.isEmpty() ? null : entities.get(0);
+    }
+
+    /**
+     * 按id批量读取，结果按id的顺序排列，不存在的id不在结果中
+     */
+    public List<T> getMany(Collection<? extends K> ids) {
+        Map<String, K> keys = new LinkedHashMap<>(ids.size());
+        for (K id : ids) {
+            keys.put(key(id), id);
+        }
+        return resolve(keys);
+    }
+
+    /**
+     * 读取列表。列表cache中只保存id列表，未命中时由listLoader回源，回源得到的实体同时写入实体cache；
+     * 同一个列表的并发回源与 {@link RedisEhcacheCache#get(Object, Callable)} 一致，只有一个线程执行
+     *
+     * @param listKey    列表的key，如 {@link CacheKeyGenerator} 生成的key
+     * @param listLoader 回源读取完整的列表
+     */
+    public List<T> getList(Object listKey, Callable<List<T>> listLoader) {
+        List<String> ids = listCache.get(listKey, () -> {
+            List<T> entities = listLoader.call();
+            if (entities == null) {
+                return null;
+            }
+            putAll(entities);
+            List<String> loaded = new ArrayList<>(entities.size());
+            for (T entity : entities) {
+                loaded.add(key(idOf.apply(entity)));
+            }
+            return loaded;
+        });
+        if (ids == null) {
+            return null;
+        }
+        Map<String, K> keys = new LinkedHashMap<>(ids.size());
+        for (String id : ids) {
+            keys.put(id, null);
+        }
+        return resolve(keys);
+    }
+
+    /**
+     * 写入实体，包含它的列表随之读到新值
+     */
+    public void put(T entity) {
+        entityCache.put(key(idOf.apply(entity)), entity);
+    }
+
+    /**
+     * 批量写入实体，只发送一条失效消息
+     */
+    public void putAll(Collection<T> entities) {
+        Map<Object, Object> values = new HashMap<>(entities.size());
+        for (T entity : entities) {
+            values.put(key(idOf.apply(entity)), entity);
+        }
+        entityCache.putAll(values);
+    }
+
+    /**
+     * 失效实体，包含它的列表在下一次读取时重新加载该实体
+     */
+    public void evict(K id) {
+        entityCache.evict(key(id));
+    }
+
+    /**
+     * 失效列表，用于列表成员发生变化的情况
+     */
+    public void evictList(Object listKey) {
+        listCache.evict(listKey);
+    }
+
+    /**
+     * 失效全部列表，实体不受影响
+     */
+    public void evictLists() {
+        listCache.clear();
+    }
+
+    public Cache getEntityCache() {
+        return entityCache;
+    }
+
+    public Cache getListCache() {
+        return listCache;
+    }
+
+    /**
+     * 按key的顺序取得实体：先从实体cache批量读取，缺失的id一次批量回源并写回实体cache
+     *
+     * @param keys id的字符串形式及对应的id，id为null时由idParser还原
+     */
+    @SuppressWarnings("unchecked")
+    private List<T> resolve(Map<String, K> keys) {
+        Map<Object, Object> cached = entityCache.getAll(keys.keySet());
+        Map<String, K> misses = new LinkedHashMap<>();
+        for (Map.Entry<String, K> entry : keys.entrySet()) {
+            if (!cached.containsKey(entry.getKey())) {
+                K id = entry.getValue();
+                misses.put(entry.getKey(), id != null ? id : idParser.apply(entry.getKey()));
+            }
+        }
+
+        Map<Object, Object> loaded = Collections.emptyMap();
+        if (!misses.isEmpty()) {
+            Map<K, T> entities = loader.apply(new ArrayList<>(misses.values()));
+            loaded = new HashMap<>(misses.size());
+            if (entities != null) {
+                for (T entity : entities.values()) {
+                    if (entity != null) {
+                        loaded.put(key(idOf.apply(entity)), entity);
+                    }
+                }
+            }
+            Map<Object, Object> values = new HashMap<>(loaded);
+            if (entityCache.isNullCacheable()) {
+                // 已删除的实体以空值缓存，列表失效前不会反复回源
+                for (String key : misses.keySet()) {
+                    values.putIfAbsent(key, null);
+                }
+            }
+            if (!values.isEmpty()) {
+                entityCache.putAll(values);
+            }
+        }
+
+        List<T> result = new ArrayList<>(keys.size());
+        for (Object key : keys.keySet()) {
+            Object entity = cached.containsKey(key) ? cached.get(key) : loaded.get(key);
+            if (entity != null) {
+                result.add((T) entity);
+            }
+        }
+        return result;
+    }
+
+    private static String key(Object id) {
+        return String.valueOf(id);
+    }
+}
@@ -0,0 +1,53 @@
+package com.egova.cache;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+
+/**
+ * 一级缓存中存放的条目，在缓存值之外记录该值的刷新和过期时间（毫秒时间戳）。
+ * 刷新和过期时间是数据本身的时间，一级缓存回填自二级缓存时沿用二级缓存的时间；
+ * 移除时间是条目在一级缓存中的存活期限，由 {@link CacheEntryExpiry} 交给ehcache处理。
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CacheEntry implements Serializable {
+
+    private static final long serialVersionUID = -1781306520476402533L;
+
+    /**
+     * 缓存的存储值
+     */
+    private Object value;
+
+    /**
+     * 超过该时间后读取会触发异步刷新
+     */
+    private long refreshTime;
+
+    /**
+     * 超过该时间后值已过期，只在宽限期内作为旧值返回
+     */
+    private long expireTime;
+
+    /**
+     * 一级缓存移除该条目的时间
+     */
+    private long evictTime;
+
+    /**
+     * 写入时cache的本地代数，cache清空后代数增加，之前的条目视为不存在
+     */
+    private long generation;
+
+    public boolean expired(long now) {
+        return now >= expireTime;
+    }
+
+    public boolean refreshable(long now) {
+        return now >= refreshTime;
+    }
+}
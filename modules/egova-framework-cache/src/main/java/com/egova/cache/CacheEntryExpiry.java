@@ -0,0 +1,36 @@
+package com.egova.cache;
+
+import org.ehcache.expiry.ExpiryPolicy;
+
+import java.time.Duration;
+import java.util.function.Supplier;
+
+/**
+ * 一级缓存的过期策略，按条目自身的移除时间过期，非 {@link CacheEntry} 的值使用固定的存活时间
+ */
+public class CacheEntryExpiry implements ExpiryPolicy<Object, Object> {
+
+    private final Duration timeToLive;
+
+    public CacheEntryExpiry(Duration timeToLive) {
+        this.timeToLive = timeToLive;
+    }
+
+    @Override
+    public Duration getExpiryForCreation(Object key, Object value) {
+        if (value instanceof CacheEntry) {
+            return Duration.ofMillis(Math.max(0, ((CacheEntry) value).getEvictTime() - System.currentTimeMillis()));
+        }
+        return timeToLive;
+    }
+
+    @Override
+    public Duration getExpiryForAccess(Object key, Supplier<?> value) {
+        return null;
+    }
+
+    @Override
+    public Duration getExpiryForUpdate(Object key, Supplier<?> oldValue, Object newValue) {
+        return getExpiryForCreation(key, newValue);
+    }
+}
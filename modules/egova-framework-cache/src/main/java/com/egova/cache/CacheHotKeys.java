@@ -0,0 +1,203 @@
+package com.egova.cache;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import org.ehcache.config.EvictionAdvisor;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 热点key统计。
+ * 用count-min sketch估算每个key最近的读取次数，累计读取达到采样数后所有计数减半，使统计偏向最近的访问；
+ * 估算次数达到阈值的key记为热点，最多保留固定数量，满了以后只接纳比当前最冷的热点更热的key。
+ * 作为一级缓存的淘汰建议，容量不足时优先淘汰非热点key。
+ * 计数不加锁，并发下的少量丢失不影响估算结果。
+ */
+public class CacheHotKeys implements EvictionAdvisor<Object, Object> {
+
+    private static final int DEPTH = 4;
+
+    private static final int WIDTH = 4096;
+
+    private static final int SHIFT = Long.numberOfLeadingZeros(WIDTH - 1);
+
+    /**
+     * 累计读取达到该次数后计数减半
+     */
+    static final int SAMPLE_SIZE = 10 * WIDTH;
+
+    private static final long[] SEEDS = {0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L};
+
+    private final int[] table = new int[DEPTH * WIDTH];
+
+    private final int threshold;
+
+    private final int capacity;
+
+    private final Map<Object, Boolean> hotKeys = new ConcurrentHashMap<>();
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private int size;
+
+    /**
+     * 热点已满时接纳新热点的最低次数，即当前最冷热点的次数
+     */
+    private volatile int admitFloor;
+
+    /**
+     * @param threshold 成为热点的最低估算次数
+     * @param capacity  最多保留的热点数量
+     */
+    public CacheHotKeys(int threshold, int capacity) {
+        this.threshold = Math.max(1, threshold);
+        this.capacity = Math.max(1, capacity);
+        this.admitFloor = this.threshold - 1;
+    }
+
+    /**
+     * 记录一次读取
+     */
+    public void record(Object key) {
+        int hash = spread(key.hashCode());
+        int frequency = Integer.MAX_VALUE;
+        for (int i = 0; i < DEPTH; i++) {
+            int index = indexOf(hash, i);
+            int count = table[index];
+            if (count < Integer.MAX_VALUE) {
+                table[index] = ++count;
+            }
+            frequency = Math.min(frequency, count);
+        }
+        if (++size >= SAMPLE_SIZE) {
+            age();
+        }
+        if (frequency > admitFloor && !hotKeys.containsKey(key)) {
+            admit(key, frequency);
+        }
+    }
+
+    /**
+     * 估算的最近读取次数
+     */
+    public int frequency(Object key) {
+        int hash = spread(key.hashCode());
+        int frequency = Integer.MAX_VALUE;
+        for (int i = 0; i < DEPTH; i++) {
+            frequency = Math.min(frequency, table[indexOf(hash, i)]);
+        }
+        return frequency;
+    }
+
+    public boolean isHot(Object key) {
+        return hotKeys.containsKey(key);
+    }
+
+    /**
+     * 按估算次数从高到低返回热点key
+     *
+     * @param limit 最多返回的数量
+     */
+    public List<HotKey> getHotKeys(int limit) {
+        List<HotKey> result = new ArrayList<>(hotKeys.size());
+        for (Object key : hotKeys.keySet()) {
+            result.add(new HotKey(key, frequency(key)));
+        }
+        result.sort(Comparator.comparingInt(HotKey::getFrequency).reversed());
+        return result.size() > limit ? new ArrayList<>(result.subList(0, limit)) : result;
+    }
+
+    @Override
+    public boolean adviseAgainstEviction(Object key, Object value) {
+        return hotKeys.containsKey(key);
+    }
+
+    private void admit(Object key, int frequency) {
+        if (!lock.tryLock()) {
+            return;
+        }
+        try {
+            if (hotKeys.size() >= capacity) {
+                Object coldest = null;
+                int coldestFrequency = Integer.MAX_VALUE;
+                for (Object hotKey : hotKeys.keySet()) {
+                    int f = frequency(hotKey);
+                    if (f < coldestFrequency) {
+                        coldest = hotKey;
+                        coldestFrequency = f;
+                    }
+                }
+                if (coldest == null || coldestFrequency >= frequency) {
+                    admitFloor = Math.max(threshold - 1, coldestFrequency);
+                    return;
+                }
+                hotKeys.remove(coldest);
+            }
+            hotKeys.put(key, Boolean.TRUE);
+            updateAdmitFloor();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 所有计数减半，并移除不再达到阈值的热点
+     */
+    private void age() {
+        if (!lock.tryLock()) {
+            return;
+        }
+        try {
+            if (size < SAMPLE_SIZE) {
+                return;
+            }
+            for (int i = 0; i < table.length; i++) {
+                table[i] >>>= 1;
+            }
+            size = SAMPLE_SIZE / 2;
+            hotKeys.keySet().removeIf(key -> frequency(key) < threshold);
+            updateAdmitFloor();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void updateAdmitFloor() {
+        int floor = threshold - 1;
+        if (hotKeys.size() >= capacity) {
+            floor = Integer.MAX_VALUE;
+            for (Object hotKey : hotKeys.keySet()) {
+                floor = Math.min(floor, frequency(hotKey));
+            }
+        }
+        admitFloor = floor;
+    }
+
+    private static int spread(int hash) {
+        hash ^= hash >>> 16;
+        hash *= 0x45d9f3b;
+        return hash ^ (hash >>> 16);
+    }
+
+    private static int indexOf(int hash, int row) {
+        long h = (hash + SEEDS[row]) * SEEDS[row];
+        return row * WIDTH + (int) (h >>> SHIFT);
+    }
+
+    /**
+     * 热点key及其估算的最近读取次数
+     */
+    @Data
+    @AllArgsConstructor
+    public static class HotKey {
+
+        private Object key;
+
+        private int frequency;
+    }
+}
@@ -4,15 +4,38 @@ import com.egova.utils.ReflectExtraUtils;
 import org.springframework.aop.framework.ProxyFactory;
 import org.springframework.cache.interceptor.KeyGenerator;
 
+import java.lang.reflect.Array;
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
- * 缓存key的生成器
+ * 缓存key的生成器。
+ * key由 类名:方法名 前缀和各参数依次拼接而成，前缀按目标类和方法缓存，只在第一次调用时计算。
+ * 参数按类型编码：null写为 \0；字符串中的 \ : , = [ ] { } 前加 \ 转义；
+ * 数组和List按顺序写为 [a,b]，Set按编码排序后写为 [a,b]，Map按key的编码排序后写为 {k=v}；
+ * 其余对象使用toString。不含特殊字符的字符串和数字与原来的key相同。
+ * 编码不带类型信息，只保证同一类型的不同参数值得到不同的编码：文本相同的字符串和数字（"1"与1L）、
+ * Integer与Long（有意合并，id的类型不一致时仍命中同一个key）、内容相同的数组、List和Set的编码相同，
+ * 同一方法同一位置的参数类型固定时不受影响；重载的同名方法需要自行区分key。
  */
 public class CacheKeyGenerator implements KeyGenerator {
 
+	private static final String NULL = "\\0";
+
+	/**
+	 * 目标类和方法对应的key前缀。代理类与被代理的接口一一对应，可以按目标对象的类缓存
+	 */
+	private final ConcurrentMap<Class<?>, ConcurrentMap<Method, String>> prefixes = new ConcurrentHashMap<>();
+
 	public Class<?> getProxyClass(Object target) {
 		Class clazz;
 		if (target instanceof Proxy) {
@@ -35,8 +58,53 @@ public class CacheKeyGenerator implements KeyGenerator {
 
 	@Override
 	public Object generate(Object target, Method method, Object... params) {
+		String prefix = prefix(target, method);
+		if (params.length == 0) {
+			return prefix;
+		}
+		StringBuilder sb = new StringBuilder(prefix.length() + 16 * params.length).append(prefix);
+		for (Object obj : params) {
+			sb.append(':');
+			encode(sb, obj);
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * 批量生成key，每个参数单独生成一个key，顺序与参数一致。
+	 * 用于getManyFromCache这类按id批量读取的方法，配合{@link RedisEhcacheCache#getAll}一次读取多个key
+	 *
+	 * @param target 目标对象
+	 * @param method 方法
+	 * @param params 参数集合，如id集合
+	 * @return key集合
+	 */
+	public List<Object> generateMany(Object target, Method method, Collection<?> params) {
+		String prefix = prefix(target, method);
+		List<Object> keys = new ArrayList<>(params.size());
+		for (Object obj : params) {
+			StringBuilder sb = new StringBuilder(prefix.length() + 16).append(prefix).append(':');
+			encode(sb, obj);
+			keys.add(sb.toString());
+		}
+		return keys;
+	}
+
+	private String prefix(Object target, Method method) {
+		ConcurrentMap<Method, String> methods = prefixes.get(target.getClass());
+		if (methods == null) {
+			methods = prefixes.computeIfAbsent(target.getClass(), key -> new ConcurrentHashMap<>());
+		}
+		String prefix = methods.get(method);
+		if (prefix == null) {
+			prefix = buildPrefix(getProxyClass(target), method);
+			methods.putIfAbsent(method, prefix);
+		}
+		return prefix;
+	}
+
+	private static String buildPrefix(Class<?> clazz, Method method) {
 		StringBuilder sb = new StringBuilder();
-		Class clazz = getProxyClass(target);
 		if (clazz.getSimpleName().endsWith("ServiceImpl")
 				|| clazz.getSimpleName().contains("ServiceImpl$")) {
 			sb.append("Service");
@@ -60,12 +128,103 @@ public class CacheKeyGenerator implements KeyGenerator {
 		} else {
 			sb.append(method.getName());
 		}
-		for (Object obj : params) {
-			if (obj != null) {
-				sb.append(":");
-				sb.append(obj.toString());
+		return sb.toString();
+	}
+
+	/**
+	 * 按类型编码一个参数，同一类型的不同参数值不会得到相同的编码，不同类型之间可能相同
+	 */
+	private static void encode(StringBuilder sb, Object value) {
+		if (value == null) {
+			sb.append(NULL);
+		} else if (value instanceof String) {
+			escape(sb, (String) value);
+		} else if (value instanceof Long || value instanceof Integer) {
+			sb.append(((Number) value).longValue());
+		} else if (value instanceof Number || value instanceof Boolean) {
+			sb.append(value);
+		} else if (value.getClass().isArray()) {
+			sb.append('[');
+			int length = Array.getLength(value);
+			for (int i = 0; i < length; i++) {
+				if (i > 0) {
+					sb.append(',');
+				}
+				encode(sb, Array.get(value, i));
+			}
+			sb.append(']');
+		} else if (value instanceof Set) {
+			// 集合的遍历顺序不固定，按编码排序
+			List<String> elements = new ArrayList<>(((Set<?>) value).size());
+			for (Object element : (Set<?>) value) {
+				elements.add(encode(element));
+			}
+			Collections.sort(elements);
+			sb.append('[').append(String.join(",", elements)).append(']');
+		} else if (value instanceof Map) {
+			List<String> entries = new ArrayList<>(((Map<?, ?>) value).size());
+			for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+				StringBuilder item = new StringBuilder();
+				encode(item, entry.getKey());
+				item.append('=');
+				encode(item, entry.getValue());
+				entries.add(item.toString());
+			}
+			Collections.sort(entries);
+			sb.append('{').append(String.join(",", entries)).append('}');
+		} else if (value instanceof Collection) {
+			sb.append('[');
+			int i = 0;
+			for (Object element : (Collection<?>) value) {
+				if (i++ > 0) {
+					sb.append(',');
+				}
+				encode(sb, element);
 			}
+			sb.append(']');
+		} else {
+			escape(sb, value.toString());
 		}
+	}
+
+	private static String encode(Object value) {
+		StringBuilder sb = new StringBuilder();
+		encode(sb, value);
 		return sb.toString();
 	}
+
+	private static void escape(StringBuilder sb, String value) {
+		int start = 0;
+		while (start < value.length() && !isSpecial(value.charAt(start))) {
+			start++;
+		}
+		if (start == value.length()) {
+			sb.append(value);
+			return;
+		}
+		sb.append(value, 0, start);
+		for (int i = start; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (isSpecial(c)) {
+				sb.append('\\');
+			}
+			sb.append(c);
+		}
+	}
+
+	private static boolean isSpecial(char c) {
+		switch (c) {
+			case '\\':
+			case ':':
+			case ',':
+			case '=':
+			case '[':
+			case ']':
+			case '{':
+			case '}':
+				return true;
+			default:
+				return false;
+		}
+	}
 }
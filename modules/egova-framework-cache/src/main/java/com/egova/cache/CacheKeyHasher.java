@@ -0,0 +1,148 @@
+package com.egova.cache;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * 过长缓存key的压缩。
+ * 保留key中可读的前缀（{@link CacheKeyGenerator} 生成的 类名:方法名:），其余部分替换为整个key的128位murmur3哈希，
+ * 写为 前缀#哈希 的形式，哈希用不带填充的base64url编码，固定22个字符。
+ * 短于阈值的key保持不变；本身就是压缩形式的key同样压缩，原始key和压缩后的key不会相同。
+ */
+public class CacheKeyHasher {
+
+    private static final char MARKER = '#';
+
+    private static final int HASH_LENGTH = 22;
+
+    /**
+     * 可读前缀的最大长度，超过时只保留第一段
+     */
+    private static final int MAX_PREFIX_LENGTH = 64;
+
+    private static final long C1 = 0x87c37b91114253d5L;
+
+    private static final long C2 = 0x4cf5ad432745937fL;
+
+    private final int minLength;
+
+    /**
+     * @param minLength 达到该长度的key才压缩
+     */
+    public CacheKeyHasher(int minLength) {
+        this.minLength = Math.max(MAX_PREFIX_LENGTH + HASH_LENGTH + 2, minLength);
+    }
+
+    public String encode(String key) {
+        if (key.length() < minLength && !isEncoded(key)) {
+            return key;
+        }
+        long[] hash = hash(key.getBytes(StandardCharsets.UTF_8));
+        byte[] bytes = new byte[16];
+        for (int i = 0; i < 8; i++) {
+            bytes[i] = (byte) (hash[0] >>> (i << 3));
+            bytes[i + 8] = (byte) (hash[1] >>> (i << 3));
+        }
+        return prefix(key).concat(String.valueOf(MARKER)).concat(Base64.getUrlEncoder().withoutPadding().encodeToString(bytes));
+    }
+
+    /**
+     * 是否是压缩后的key
+     */
+    public boolean isEncoded(String key) {
+        int marker = key.length() - HASH_LENGTH - 1;
+        return marker >= 0 && key.charAt(marker) == MARKER && (marker == 0 || key.charAt(marker - 1) == ':');
+    }
+
+    /**
+     * 可读前缀，取到第二个冒号为止（含冒号）；没有或过长时取到第一个冒号，仍没有时为空
+     */
+    private static String prefix(String key) {
+        int first = key.indexOf(':');
+        if (first < 0 || first >= MAX_PREFIX_LENGTH) {
+            return "";
+        }
+        int second = key.indexOf(':', first + 1);
+        return second > 0 && second < MAX_PREFIX_LENGTH ? key.substring(0, second + 1) : key.substring(0, first + 1);
+    }
+
+    /**
+     * MurmurHash3 x64 128位，种子为0
+     */
+    static long[] hash(byte[] data) {
+        int length = data.length;
+        int blocks = length >>> 4;
+        long h1 = 0;
+        long h2 = 0;
+        for (int i = 0; i < blocks; i++) {
+            long k1 = getLong(data, i << 4);
+            long k2 = getLong(data, (i << 4) + 8);
+            h1 ^= mixK1(k1);
+            h1 = Long.rotateLeft(h1, 27);
+            h1 += h2;
+            h1 = h1 * 5 + 0x52dce729;
+            h2 ^= mixK2(k2);
+            h2 = Long.rotateLeft(h2, 31);
+            h2 += h1;
+            h2 = h2 * 5 + 0x38495ab5;
+        }
+
+        int offset = blocks << 4;
+        int remaining = length & 15;
+        long k1 = 0;
+        long k2 = 0;
+        for (int i = remaining - 1; i >= 8; i--) {
+            k2 ^= (data[offset + i] & 0xffL) << ((i - 8) << 3);
+        }
+        for (int i = Math.min(remaining, 8) - 1; i >= 0; i--) {
+            k1 ^= (data[offset + i] & 0xffL) << (i << 3);
+        }
+        if (remaining > 8) {
+            h2 ^= mixK2(k2);
+        }
+        if (remaining > 0) {
+            h1 ^= mixK1(k1);
+        }
+
+        h1 ^= length;
+        h2 ^= length;
+        h1 += h2;
+        h2 += h1;
+        h1 = fmix(h1);
+        h2 = fmix(h2);
+        h1 += h2;
+        h2 += h1;
+        return new long[]{h1, h2};
+    }
+
+    private static long getLong(byte[] data, int offset) {
+        long value = 0;
+        for (int i = 7; i >= 0; i--) {
+            value = (value << 8) | (data[offset + i] & 0xffL);
+        }
+        return value;
+    }
+
+    private static long mixK1(long k1) {
+        k1 *= C1;
+        k1 = Long.rotateLeft(k1, 31);
+        k1 *= C2;
+        return k1;
+    }
+
+    private static long mixK2(long k2) {
+        k2 *= C2;
+        k2 = Long.rotateLeft(k2, 33);
+        k2 *= C1;
+        return k2;
+    }
+
+    private static long fmix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
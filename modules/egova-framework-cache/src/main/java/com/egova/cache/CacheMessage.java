@@ -5,6 +5,7 @@ import lombok.Data;
 import lombok.NoArgsConstructor;
 
 import java.io.Serializable;
+import java.util.Collection;
 
 @Data
 @NoArgsConstructor
@@ -19,5 +20,22 @@ public class CacheMessage implements Serializable
 
 	private Integer sender;
 
+	/**
+	 * 批量写入时一次失效的多个key
+	 */
+	private Collection<Object> keys;
+
+	/**
+	 * 消息在失效日志（redis stream）中的编号，仅接收端使用
+	 */
+	private transient String offset;
+
+	public CacheMessage(String cacheName, Object key, Integer sender) {
+		this(cacheName, key, sender, null, null);
+	}
+
+	public CacheMessage(String cacheName, Object key, Integer sender, Collection<Object> keys) {
+		this(cacheName, key, sender, keys, null);
+	}
 
 }
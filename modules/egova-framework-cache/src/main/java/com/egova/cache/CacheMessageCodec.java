@@ -0,0 +1,194 @@
+package com.egova.cache;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * 缓存失效消息的二进制编解码，格式如下：
+ * <pre>
+ * magic(1) version(1) flags(1) [sender(4)] cacheName keyCount keys... [offset]
+ * </pre>
+ * 字符串和长度均为varint前缀，key带1字节的类型标记。key只编码String、Integer、Long，
+ * 其它类型的key按toString写为字符串，接收方不会反序列化任意对象；这类key在其它节点上按字符串失效，
+ * 一级缓存的key不是字符串时不会命中，与旧版本JSON消息的行为相同。
+ * offset是消息在失效日志中的编号，由发布脚本在写入日志后追加到消息末尾。
+ * 旧版本的JSON消息以 '{' 开头，可通过 {@link #isBinary(byte[])} 区分。
+ */
+public final class CacheMessageCodec {
+
+    public static final byte MAGIC = (byte) 0xCE;
+
+    public static final byte VERSION = 1;
+
+    private static final int FLAG_CLEAR = 1;
+
+    private static final int FLAG_SENDER = 1 << 1;
+
+    private static final int FLAG_OFFSET = 1 << 2;
+
+    private static final byte TYPE_STRING = 0;
+
+    private static final byte TYPE_INTEGER = 1;
+
+    private static final byte TYPE_LONG = 2;
+
+    private CacheMessageCodec() {
+    }
+
+    public static boolean isBinary(byte[] bytes) {
+        return bytes != null && bytes.length > 1 && bytes[0] == MAGIC;
+    }
+
+    /**
+     * 编码，key和keys都为空时表示清空整个cache
+     */
+    public static byte[] encode(CacheMessage message) {
+        return encode(message, false);
+    }
+
+    /**
+     * 编码
+     *
+     * @param message    消息
+     * @param withOffset 是否标记消息末尾会追加日志编号
+     */
+    public static byte[] encode(CacheMessage message, boolean withOffset) {
+        Collection<Object> keys = keysOf(message);
+        int flags = message.getKey() == null && message.getKeys() == null ? FLAG_CLEAR : 0;
+        if (message.getSender() != null) {
+            flags |= FLAG_SENDER;
+        }
+        if (withOffset) {
+            flags |= FLAG_OFFSET;
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(32 + keys.size() * 24);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(MAGIC);
+            out.writeByte(VERSION);
+            out.writeByte(flags);
+            if (message.getSender() != null) {
+                out.writeInt(message.getSender());
+            }
+            writeBytes(out, message.getCacheName().getBytes(StandardCharsets.UTF_8));
+            writeVarInt(out, keys.size());
+            for (Object key : keys) {
+                writeKey(out, key);
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    public static CacheMessage decode(byte[] bytes) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes))) {
+            if (in.readByte() != MAGIC) {
+                throw new IllegalArgumentException("not a cache message");
+            }
+            byte version = in.readByte();
+            if (version > VERSION) {
+                throw new IllegalArgumentException("unsupported cache message version: " + version);
+            }
+            int flags = in.readByte();
+            Integer sender = (flags & FLAG_SENDER) != 0 ? in.readInt() : null;
+            String cacheName = new String(readBytes(in), StandardCharsets.UTF_8);
+            int count = readVarInt(in);
+            List<Object> keys = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                keys.add(readKey(in));
+            }
+            String offset = (flags & FLAG_OFFSET) != 0 && in.available() > 0
+                    ? new String(readBytes(in), StandardCharsets.UTF_8) : null;
+            if ((flags & FLAG_CLEAR) != 0) {
+                return new CacheMessage(cacheName, null, sender, null, offset);
+            }
+            return new CacheMessage(cacheName, null, sender, keys, offset);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("invalid cache message", e);
+        }
+    }
+
+    private static void writeKey(DataOutputStream out, Object key) throws IOException {
+        if (key instanceof String) {
+            out.writeByte(TYPE_STRING);
+            writeBytes(out, ((String) key).getBytes(StandardCharsets.UTF_8));
+        } else if (key instanceof Integer) {
+            out.writeByte(TYPE_INTEGER);
+            out.writeInt((Integer) key);
+        } else if (key instanceof Long) {
+            out.writeByte(TYPE_LONG);
+            out.writeLong((Long) key);
+        } else {
+            out.writeByte(TYPE_STRING);
+            writeBytes(out, key.toString().getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private static Object readKey(DataInputStream in) throws IOException {
+        byte type = in.readByte();
+        switch (type) {
+            case TYPE_STRING:
+                return new String(readBytes(in), StandardCharsets.UTF_8);
+            case TYPE_INTEGER:
+                return in.readInt();
+            case TYPE_LONG:
+                return in.readLong();
+            default:
+                throw new IOException("unknown key type: " + type);
+        }
+    }
+
+    private static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+        writeVarInt(out, bytes.length);
+        out.write(bytes);
+    }
+
+    private static byte[] readBytes(DataInputStream in) throws IOException {
+        int length = readVarInt(in);
+        if (length < 0 || length > in.available()) {
+            throw new IOException("malformed length: " + length);
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+    private static void writeVarInt(DataOutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    private static int readVarInt(DataInputStream in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = in.readByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("malformed varint");
+    }
+
+    static Collection<Object> keysOf(CacheMessage message) {
+        if (message.getKeys() != null) {
+            return message.getKeys();
+        }
+        List<Object> keys = new ArrayList<>(1);
+        if (message.getKey() != null) {
+            keys.add(message.getKey());
+        }
+        return keys;
+    }
+}
@@ -5,38 +5,169 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.redis.connection.Message;
 import org.springframework.data.redis.connection.MessageListener;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
- * 缓存消息监听
+ * 缓存消息监听。
+ * 收到的消息只做解码和按cacheName合并去重，由单个分发线程统一清理本地缓存，
+ * 不会因为消息量大而创建大量线程。
  */
 @Slf4j
 public class CacheMessageListener implements MessageListener {
 
+    private static final int MAX_APPLIED_OFFSETS = 10000;
+
     private final RedisTemplate<Object, Object> redisTemplate;
 
     private final RedisEhcacheCacheManager redisEhcacheCacheManager;
 
     private final JsonMapping jsonMapping;
 
+    private final int maxPendingKeys;
+
+    private final ConcurrentMap<String, Pending> pendings = new ConcurrentHashMap<>();
+
+    private final AtomicBoolean dispatching = new AtomicBoolean();
+
+    private final ExecutorService dispatcher;
+
+    /**
+     * 最近处理过的日志编号，避免订阅消息和日志补齐重复处理同一条消息
+     */
+    private final Map<String, Boolean> appliedOffsets = new LinkedHashMap<String, Boolean>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+            return size() > MAX_APPLIED_OFFSETS;
+        }
+    };
+
     public CacheMessageListener(RedisTemplate<Object, Object> redisTemplate, RedisEhcacheCacheManager redisEhcacheCacheManager, JsonMapping jsonMapping) {
+        this(redisTemplate, redisEhcacheCacheManager, jsonMapping, 10000);
+    }
+
+    public CacheMessageListener(RedisTemplate<Object, Object> redisTemplate, RedisEhcacheCacheManager redisEhcacheCacheManager, JsonMapping jsonMapping, int maxPendingKeys) {
         super();
         this.redisTemplate = redisTemplate;
         this.redisEhcacheCacheManager = redisEhcacheCacheManager;
         this.jsonMapping = jsonMapping;
+        this.maxPendingKeys = maxPendingKeys;
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("cache-message-dispatcher-");
+        threadFactory.setDaemon(true);
+        // 同一时刻最多只有一个分发任务在排队，队列长度为1即可
+        this.dispatcher = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(1), threadFactory, new ThreadPoolExecutor.CallerRunsPolicy());
     }
 
     @Override
     public void onMessage(Message message, byte[] pattern) {
         CacheMessage cacheMessage;
         try {
-            cacheMessage = jsonMapping.deserialize(new String(message.getBody()), CacheMessage.class);
-            log.debug(String.format("receive a redis topic message, clear local cache, the cacheName is %s, the key is %s", cacheMessage.getCacheName(), cacheMessage.getKey()));
-            redisEhcacheCacheManager.clearLocal(cacheMessage.getCacheName(), cacheMessage.getKey(), cacheMessage.getSender());
+            byte[] body = message.getBody();
+            if (CacheMessageCodec.isBinary(body)) {
+                cacheMessage = CacheMessageCodec.decode(body);
+            } else {
+                // 兼容旧版本节点发送的JSON消息
+                cacheMessage = jsonMapping.deserialize(new String(body), CacheMessage.class);
+            }
         } catch (Exception e) {
-            log.warn("缓存自动清理失败", e);
+            log.warn("缓存消息解析失败", e);
+            return;
         }
 
+        handle(cacheMessage);
     }
 
-}
+    /**
+     * 处理一条失效消息，订阅和失效日志补齐都经过这里
+     */
+    public void handle(CacheMessage cacheMessage) {
+        if (cacheMessage.getOffset() != null && !markApplied(cacheMessage.getOffset())) {
+            return;
+        }
+        // 自己发送的消息不处理
+        if (redisEhcacheCacheManager.isLocalSender(cacheMessage.getCacheName(), cacheMessage.getSender())) {
+            return;
+        }
+        log.debug("receive a redis topic message, the cacheName is {}, the key is {}", cacheMessage.getCacheName(),
+                cacheMessage.getKeys() != null ? cacheMessage.getKeys() : cacheMessage.getKey());
+
+        enqueue(cacheMessage);
+        if (dispatching.compareAndSet(false, true)) {
+            dispatcher.execute(this::dispatch);
+        }
+    }
 
+    private boolean markApplied(String offset) {
+        synchronized (appliedOffsets) {
+            return appliedOffsets.put(offset, Boolean.TRUE) == null;
+        }
+    }
+
+    private void enqueue(CacheMessage cacheMessage) {
+        while (true) {
+            Pending pending = pendings.computeIfAbsent(cacheMessage.getCacheName(), name -> new Pending());
+            synchronized (pending) {
+                if (pending.closed) {
+                    continue;
+                }
+                if (cacheMessage.getKey() == null && cacheMessage.getKeys() == null) {
+                    pending.clear = true;
+                } else if (!pending.clear) {
+                    pending.keys.addAll(CacheMessageCodec.keysOf(cacheMessage));
+                    if (pending.keys.size() > maxPendingKeys) {
+                        pending.clear = true;
+                    }
+                }
+                if (pending.clear) {
+                    pending.keys.clear();
+                }
+                return;
+            }
+        }
+    }
+
+    private void dispatch() {
+        dispatching.set(false);
+        for (String cacheName : new ArrayList<>(pendings.keySet())) {
+            Pending pending = pendings.remove(cacheName);
+            if (pending == null) {
+                continue;
+            }
+            synchronized (pending) {
+                pending.closed = true;
+            }
+            try {
+                if (pending.clear) {
+                    redisEhcacheCacheManager.clearLocal(cacheName, null, null);
+                } else {
+                    redisEhcacheCacheManager.clearLocalKeys(cacheName, pending.keys, null);
+                }
+            } catch (Exception e) {
+                log.warn("缓存自动清理失败", e);
+            }
+        }
+    }
+
+    private static class Pending {
+
+        private final Set<Object> keys = new LinkedHashSet<>();
+
+        private boolean clear;
+
+        private boolean closed;
+    }
+
+}
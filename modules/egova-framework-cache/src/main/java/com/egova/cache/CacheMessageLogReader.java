@@ -0,0 +1,159 @@
+package com.egova.cache;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.connection.RedisZSetCommands;
+import org.springframework.data.redis.connection.stream.ByteRecord;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 失效日志读取。
+ * 订阅消息是即发即弃的，节点断线重连或长时间GC停顿期间会错过消息。
+ * 这里定时从失效日志（redis stream）中读取上次处理位置之后的消息，补齐错过的部分；
+ * 已经通过订阅处理过的消息会按日志编号跳过。
+ * 如果上次处理位置已被日志裁剪掉，无法确定错过了哪些key，只能清空本地缓存。
+ * 新节点从日志末尾开始读取，不会回放历史消息。
+ */
+@Slf4j
+public class CacheMessageLogReader implements InitializingBean, DisposableBean {
+
+    private static final String FIELD = "m";
+
+    private static final int BATCH_SIZE = 500;
+
+    private static final String EMPTY_OFFSET = "0-0";
+
+    private final RedisTemplate<Object, Object> redisTemplate;
+
+    private final RedisEhcacheCacheManager redisEhcacheCacheManager;
+
+    private final CacheMessageListener cacheMessageListener;
+
+    private final byte[] logKey;
+
+    private final long pollInterval;
+
+    /**
+     * 已处理到的日志编号
+     */
+    private volatile String offset;
+
+    private ScheduledExecutorService scheduler;
+
+    public CacheMessageLogReader(RedisTemplate<Object, Object> redisTemplate, RedisEhcacheCacheManager redisEhcacheCacheManager,
+                                 CacheMessageListener cacheMessageListener, String logKey, Duration pollInterval) {
+        this.redisTemplate = redisTemplate;
+        this.redisEhcacheCacheManager = redisEhcacheCacheManager;
+        this.cacheMessageListener = cacheMessageListener;
+        this.logKey = logKey.getBytes(StandardCharsets.UTF_8);
+        this.pollInterval = pollInterval.toMillis();
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("cache-message-log-");
+        threadFactory.setDaemon(true);
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(threadFactory);
+        this.scheduler.scheduleWithFixedDelay(this::poll, 0, pollInterval, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void destroy() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    public String getOffset() {
+        return offset;
+    }
+
+    void poll() {
+        try {
+            if (offset == null) {
+                offset = tail();
+                return;
+            }
+
+            // 起始位置为0-0说明开始读取时日志为空，不存在裁剪
+            String first = EMPTY_OFFSET.equals(offset) ? null : first();
+            if (first != null && compare(first, offset) > 0) {
+                log.warn("缓存失效日志已裁剪到 {}，本地处理位置 {} 之后的消息可能已丢失，清空本地缓存", first, offset);
+                redisEhcacheCacheManager.clearAllLocal();
+                offset = tail();
+                return;
+            }
+
+            List<ByteRecord> records;
+            do {
+                String from = offset;
+                records = redisTemplate.execute((RedisCallback<List<ByteRecord>>) connection ->
+                        connection.xRange(logKey, Range.rightUnbounded(Range.Bound.inclusive(from)), RedisZSetCommands.Limit.limit().count(BATCH_SIZE)));
+                if (records == null) {
+                    return;
+                }
+                for (ByteRecord record : records) {
+                    String id = record.getId().getValue();
+                    if (id.equals(from)) {
+                        continue;
+                    }
+                    apply(record, id);
+                    offset = id;
+                }
+            } while (records.size() >= BATCH_SIZE);
+        } catch (Exception ex) {
+            log.warn("缓存失效日志读取失败", ex);
+        }
+    }
+
+    private void apply(ByteRecord record, String id) {
+        for (Map.Entry<byte[], byte[]> entry : record.getValue().entrySet()) {
+            if (FIELD.equals(new String(entry.getKey(), StandardCharsets.UTF_8))) {
+                try {
+                    CacheMessage message = CacheMessageCodec.decode(entry.getValue());
+                    message.setOffset(id);
+                    cacheMessageListener.handle(message);
+                } catch (Exception ex) {
+                    log.warn("缓存失效日志解析失败，offset:{}", id, ex);
+                }
+            }
+        }
+    }
+
+    private String first() {
+        List<ByteRecord> records = redisTemplate.execute((RedisCallback<List<ByteRecord>>) connection ->
+                connection.xRange(logKey, Range.unbounded(), RedisZSetCommands.Limit.limit().count(1)));
+        return records == null || records.isEmpty() ? null : records.get(0).getId().getValue();
+    }
+
+    private String tail() {
+        List<ByteRecord> records = redisTemplate.execute((RedisCallback<List<ByteRecord>>) connection ->
+                connection.xRevRange(logKey, Range.unbounded(), RedisZSetCommands.Limit.limit().count(1)));
+        return records == null || records.isEmpty() ? EMPTY_OFFSET : records.get(0).getId().getValue();
+    }
+
+    /**
+     * 比较两个日志编号（毫秒时间戳-序号）
+     */
+    static int compare(String left, String right) {
+        String[] l = left.split("-");
+        String[] r = right.split("-");
+        int result = Long.compare(Long.parseLong(l[0]), Long.parseLong(r[0]));
+        if (result != 0) {
+            return result;
+        }
+        return Long.compare(l.length > 1 ? Long.parseLong(l[1]) : 0, r.length > 1 ? Long.parseLong(r[1]) : 0);
+    }
+}
@@ -0,0 +1,273 @@
+package com.egova.cache;
+
+import com.alibaba.fastjson.JSON;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 缓存失效消息发布器。
+ * 同一个cacheName的失效key先合并到一个批次里，每隔flushInterval或攒够batchSize个key时作为一条消息发送，
+ * 避免写入高峰时每次put/evict都发送一条消息。
+ * 开启失效日志时，消息先写入redis stream再发布，发布的消息末尾带上日志编号，整个过程在一个脚本中完成。
+ * 集群中还有不能解析二进制消息的旧版本节点时，可以开启兼容格式，按旧版本的JSON格式每个key发布一条消息，
+ * 失效日志仍以二进制格式写入，供新版本节点补齐错过的消息。
+ */
+@Slf4j
+public class CacheMessagePublisher {
+
+    /**
+     * 写入失效日志并发布，返回日志编号。
+     * 日志编号形如 1600000000000-0，长度小于128，单字节即可表示其varint长度
+     */
+    private static final RedisScript<String> LOG_AND_PUBLISH_SCRIPT = new DefaultRedisScript<>(
+            "local id = redis.call('XADD', KEYS[1], 'MAXLEN', '~', ARGV[2], '*', 'm', ARGV[1]) " +
+                    "redis.call('PUBLISH', ARGV[3], ARGV[1] .. string.char(#id) .. id) " +
+                    "return id", String.class);
+
+    private static final byte[] XADD_MAXLEN = "MAXLEN".getBytes(StandardCharsets.UTF_8);
+
+    private static final byte[] XADD_APPROXIMATE = "~".getBytes(StandardCharsets.UTF_8);
+
+    private static final byte[] XADD_AUTO_ID = "*".getBytes(StandardCharsets.UTF_8);
+
+    private static final byte[] LOG_FIELD = "m".getBytes(StandardCharsets.UTF_8);
+
+    private final RedisTemplate<Object, Object> redisTemplate;
+
+    private final byte[] topic;
+
+    private String logKey;
+
+    private byte[] logMaxLength;
+
+    private final long flushInterval;
+
+    private final int batchSize;
+
+    /**
+     * 是否按旧版本的JSON格式发布
+     */
+    private boolean legacyFormat;
+
+    private final ConcurrentMap<String, Batch> batches = new ConcurrentHashMap<>();
+
+    private volatile ScheduledExecutorService scheduler;
+
+    public CacheMessagePublisher(RedisTemplate<Object, Object> redisTemplate, String topic, Duration flushInterval, int batchSize) {
+        this.redisTemplate = redisTemplate;
+        this.topic = topic.getBytes(StandardCharsets.UTF_8);
+        this.flushInterval = flushInterval.toMillis();
+        this.batchSize = batchSize;
+    }
+
+    public CacheMessagePublisher(RedisTemplate<Object, Object> redisTemplate, RedisEhcacheProperties.Redis properties) {
+        this(redisTemplate, properties.getTopic(), properties.getMessageFlushInterval(), properties.getMessageBatchSize());
+        if (properties.isMessageLogEnabled()) {
+            setLog(getLogKey(properties.getTopic()), properties.getMessageLogMaxLength());
+        }
+        setLegacyFormat(properties.isMessageLegacyFormat());
+    }
+
+    /**
+     * 失效日志（redis stream）的key
+     */
+    public static String getLogKey(String topic) {
+        return topic.concat(":log");
+    }
+
+    /**
+     * 开启失效日志
+     *
+     * @param logKey    redis stream的key
+     * @param maxLength 保留的消息条数
+     */
+    public void setLog(String logKey, long maxLength) {
+        this.logKey = logKey;
+        this.logMaxLength = String.valueOf(maxLength).getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 是否按旧版本的JSON格式发布，集群中的节点全部升级后应关闭
+     */
+    public void setLegacyFormat(boolean legacyFormat) {
+        this.legacyFormat = legacyFormat;
+    }
+
+    /**
+     * 加入待发送批次，key和keys都为空时表示清空整个cache
+     */
+    public void publish(CacheMessage message) {
+        String cacheName = message.getCacheName();
+        while (true) {
+            Batch batch = batches.get(cacheName);
+            boolean created = false;
+            if (batch == null) {
+                Batch newBatch = new Batch(message.getSender());
+                batch = batches.putIfAbsent(cacheName, newBatch);
+                if (batch == null) {
+                    batch = newBatch;
+                    created = true;
+                }
+            }
+
+            int size;
+            synchronized (batch) {
+                if (batch.closed) {
+                    // 批次刚被发送，重新取一个
+                    continue;
+                }
+                if (message.getKey() == null && message.getKeys() == null) {
+                    batch.clear = true;
+                    batch.keys.clear();
+                } else if (!batch.clear) {
+                    batch.keys.addAll(CacheMessageCodec.keysOf(message));
+                }
+                size = batch.keys.size();
+            }
+
+            try {
+                if (flushInterval <= 0 || size >= batchSize) {
+                    getScheduler().execute(() -> flush(cacheName));
+                } else if (created) {
+                    getScheduler().schedule(() -> flush(cacheName), flushInterval, TimeUnit.MILLISECONDS);
+                }
+            } catch (RejectedExecutionException ex) {
+                // 已调用shutdown（容器关闭期间仍有写入），在当前线程发送
+                flush(cacheName);
+            }
+            return;
+        }
+    }
+
+    private void flush(String cacheName) {
+        Batch batch = batches.remove(cacheName);
+        if (batch == null) {
+            return;
+        }
+        CacheMessage message;
+        synchronized (batch) {
+            batch.closed = true;
+            if (!batch.clear && batch.keys.isEmpty()) {
+                return;
+            }
+            message = batch.clear
+                    ? new CacheMessage(cacheName, null, batch.sender)
+                    : new CacheMessage(cacheName, null, batch.sender, new ArrayList<>(batch.keys));
+        }
+        if (legacyFormat) {
+            publishLegacy(message);
+            return;
+        }
+        if (logKey != null) {
+            try {
+                byte[] body = CacheMessageCodec.encode(message, true);
+                redisTemplate.execute(LOG_AND_PUBLISH_SCRIPT, RedisSerializer.byteArray(), RedisSerializer.string(),
+                        Collections.singletonList(logKey), body, logMaxLength, topic);
+                return;
+            } catch (Exception ex) {
+                // redis版本不支持stream等情况下退化为只发布消息
+                log.warn("缓存失效日志写入失败，cacheName:{}", cacheName, ex);
+            }
+        }
+        try {
+            byte[] body = CacheMessageCodec.encode(message);
+            redisTemplate.execute((RedisCallback<Long>) connection -> connection.publish(topic, body));
+        } catch (Exception ex) {
+            log.warn("缓存失效消息发送失败，cacheName:{}", cacheName, ex);
+        }
+    }
+
+    /**
+     * 按旧版本的格式发布：旧版本节点只能解析单个key的JSON消息，每个key一条，在一个pipeline中发送；
+     * 开启失效日志时二进制消息只写入日志，不发布
+     */
+    private void publishLegacy(CacheMessage message) {
+        List<byte[]> bodies = new ArrayList<>();
+        if (message.getKeys() == null) {
+            bodies.add(JSON.toJSONBytes(new CacheMessage(message.getCacheName(), null, message.getSender())));
+        } else {
+            for (Object key : message.getKeys()) {
+                bodies.add(JSON.toJSONBytes(new CacheMessage(message.getCacheName(), key, message.getSender())));
+            }
+        }
+        byte[] record = logKey == null ? null : CacheMessageCodec.encode(message);
+        try {
+            redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                if (record != null) {
+                    connection.execute("XADD", logKey.getBytes(StandardCharsets.UTF_8), XADD_MAXLEN, XADD_APPROXIMATE,
+                            logMaxLength, XADD_AUTO_ID, LOG_FIELD, record);
+                }
+                for (byte[] body : bodies) {
+                    connection.publish(topic, body);
+                }
+                return null;
+            });
+        } catch (Exception ex) {
+            log.warn("缓存失效消息发送失败，cacheName:{}", message.getCacheName(), ex);
+        }
+    }
+
+    /**
+     * 立即发送所有待发送的批次
+     */
+    public void flush() {
+        for (String cacheName : new ArrayList<>(batches.keySet())) {
+            flush(cacheName);
+        }
+    }
+
+    public void shutdown() {
+        flush();
+        ScheduledExecutorService scheduler = this.scheduler;
+        if (scheduler != null) {
+            scheduler.shutdown();
+        }
+    }
+
+    private ScheduledExecutorService getScheduler() {
+        if (scheduler == null) {
+            synchronized (this) {
+                if (scheduler == null) {
+                    CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("cache-message-publisher-");
+                    threadFactory.setDaemon(true);
+                    scheduler = Executors.newSingleThreadScheduledExecutor(threadFactory);
+                }
+            }
+        }
+        return scheduler;
+    }
+
+    private static class Batch {
+
+        private final Integer sender;
+
+        private final Set<Object> keys = new LinkedHashSet<>();
+
+        private boolean clear;
+
+        private boolean closed;
+
+        Batch(Integer sender) {
+            this.sender = sender;
+        }
+    }
+}
@@ -0,0 +1,355 @@
+package com.egova.cache;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 单个cache的运行指标。
+ * 计数都使用LongAdder，读写热点路径上只有一次无竞争的累加；
+ * 回源耗时按固定的毫秒区间统计分布，不保存单次的耗时。
+ */
+public class CacheMetrics {
+
+    /**
+     * 回源耗时分布的区间上限（毫秒），最后一个区间不设上限
+     */
+    public static final long[] LOAD_TIME_BOUNDS = {1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000, 10000};
+
+    private final LongAdder localHits = new LongAdder();
+
+    private final LongAdder localMisses = new LongAdder();
+
+    private final LongAdder remoteHits = new LongAdder();
+
+    private final LongAdder remoteMisses = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    private final LongAdder puts = new LongAdder();
+
+    private final LongAdder evictions = new LongAdder();
+
+    private final LongAdder loads = new LongAdder();
+
+    private final LongAdder loadFailures = new LongAdder();
+
+    private final LongAdder loadTime = new LongAdder();
+
+    private final AtomicLong maxLoadTime = new AtomicLong();
+
+    private final LongAdder[] loadTimeBuckets = new LongAdder[LOAD_TIME_BOUNDS.length + 1];
+
+    private final LongAdder invalidationsSent = new LongAdder();
+
+    private final LongAdder invalidationsReceived = new LongAdder();
+
+    private final LongAdder redisErrors = new LongAdder();
+
+    private final LongAdder bloomRejections = new LongAdder();
+
+    private final LongAdder warmups = new LongAdder();
+
+    private volatile LocalCache localCache;
+
+    private volatile CacheCircuitBreaker circuitBreaker;
+
+    private volatile CacheWriteBehind writeBehind;
+
+    public CacheMetrics() {
+        for (int i = 0; i < loadTimeBuckets.length; i++) {
+            loadTimeBuckets[i] = new LongAdder();
+        }
+    }
+
+    void localHit() {
+        localHits.increment();
+    }
+
+    void localMiss() {
+        localMisses.increment();
+    }
+
+    void remoteHit() {
+        remoteHits.increment();
+    }
+
+    void remoteMiss() {
+        remoteMisses.increment();
+    }
+
+    void miss(int count) {
+        misses.add(count);
+    }
+
+    void put(int count) {
+        puts.add(count);
+    }
+
+    void evict() {
+        evictions.increment();
+    }
+
+    void load(long nanos) {
+        loads.increment();
+        loadTime.add(nanos);
+        maxLoadTime.accumulateAndGet(nanos, Math::max);
+        long millis = TimeUnit.NANOSECONDS.toMillis(nanos);
+        int bucket = 0;
+        while (bucket < LOAD_TIME_BOUNDS.length && millis > LOAD_TIME_BOUNDS[bucket]) {
+            bucket++;
+        }
+        loadTimeBuckets[bucket].increment();
+    }
+
+    void loadFailure() {
+        loadFailures.increment();
+    }
+
+    void invalidationSent(int count) {
+        invalidationsSent.add(count);
+    }
+
+    void invalidationReceived(int count) {
+        invalidationsReceived.add(count);
+    }
+
+    void redisError() {
+        redisErrors.increment();
+    }
+
+    void bloomRejection() {
+        bloomRejections.increment();
+    }
+
+    void warmup(int count) {
+        warmups.add(count);
+    }
+
+    void setLocalCache(LocalCache localCache) {
+        this.localCache = localCache;
+    }
+
+    void setCircuitBreaker(CacheCircuitBreaker circuitBreaker) {
+        this.circuitBreaker = circuitBreaker;
+    }
+
+    void setWriteBehind(CacheWriteBehind writeBehind) {
+        this.writeBehind = writeBehind;
+    }
+
+    /**
+     * 一级缓存命中次数
+     */
+    public long getLocalHits() {
+        return localHits.sum();
+    }
+
+    /**
+     * 一级缓存未命中次数
+     */
+    public long getLocalMisses() {
+        return localMisses.sum();
+    }
+
+    /**
+     * 二级缓存命中次数
+     */
+    public long getRemoteHits() {
+        return remoteHits.sum();
+    }
+
+    /**
+     * 二级缓存未命中次数
+     */
+    public long getRemoteMisses() {
+        return remoteMisses.sum();
+    }
+
+    /**
+     * 任一级缓存命中的次数
+     */
+    public long getHits() {
+        return localHits.sum() + remoteHits.sum();
+    }
+
+    /**
+     * 各级缓存都未命中的次数
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getPuts() {
+        return puts.sum();
+    }
+
+    /**
+     * 主动删除的次数
+     */
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * 回源加载成功的次数
+     */
+    public long getLoads() {
+        return loads.sum();
+    }
+
+    public long getLoadFailures() {
+        return loadFailures.sum();
+    }
+
+    /**
+     * 回源加载的总耗时，单位纳秒
+     */
+    public long getLoadTime() {
+        return loadTime.sum();
+    }
+
+    /**
+     * 回源加载的最长耗时，单位纳秒
+     */
+    public long getMaxLoadTime() {
+        return maxLoadTime.get();
+    }
+
+    /**
+     * 回源耗时落在各区间的次数，与 {@link #LOAD_TIME_BOUNDS} 一一对应，多出的最后一个为超出上限的次数
+     */
+    public long[] getLoadTimeBuckets() {
+        long[] counts = new long[loadTimeBuckets.length];
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = loadTimeBuckets[i].sum();
+        }
+        return counts;
+    }
+
+    /**
+     * 发出的失效通知涉及的key数量，清空整个cache记为1
+     */
+    public long getInvalidationsSent() {
+        return invalidationsSent.sum();
+    }
+
+    /**
+     * 收到的失效通知涉及的key数量，清空整个cache记为1
+     */
+    public long getInvalidationsReceived() {
+        return invalidationsReceived.sum();
+    }
+
+    public long getRedisErrors() {
+        return redisErrors.sum();
+    }
+
+    /**
+     * 布隆过滤器判定不存在、直接返回null的次数
+     */
+    public long getBloomRejections() {
+        return bloomRejections.sum();
+    }
+
+    /**
+     * 启动预热回填到一级缓存的条目数
+     */
+    public long getWarmups() {
+        return warmups.sum();
+    }
+
+    /**
+     * 一级缓存当前的条目数，多层时以容量最大的一层为准
+     */
+    public long getLocalSize() {
+        LocalCache localCache = this.localCache;
+        return localCache == null ? 0 : localCache.getSize();
+    }
+
+    /**
+     * 一级缓存因容量不足淘汰的条目数
+     */
+    public long getLocalEvictions() {
+        LocalCache localCache = this.localCache;
+        return localCache == null ? 0 : localCache.getEvictions();
+    }
+
+    /**
+     * 一级缓存因过期移除的条目数
+     */
+    public long getLocalExpirations() {
+        LocalCache localCache = this.localCache;
+        return localCache == null ? 0 : localCache.getExpirations();
+    }
+
+    /**
+     * 是否开启了redis熔断
+     */
+    public boolean isCircuitBreakerEnabled() {
+        return this.circuitBreaker != null;
+    }
+
+    /**
+     * redis熔断器的状态：0正常，1熔断中，2探测中；未开启熔断时为0
+     */
+    public int getCircuitBreakerState() {
+        CacheCircuitBreaker circuitBreaker = this.circuitBreaker;
+        return circuitBreaker == null ? 0 : circuitBreaker.getState().ordinal();
+    }
+
+    /**
+     * 熔断期间直接跳过redis的次数
+     */
+    public long getCircuitBreakerRejections() {
+        CacheCircuitBreaker circuitBreaker = this.circuitBreaker;
+        return circuitBreaker == null ? 0 : circuitBreaker.getRejections();
+    }
+
+    /**
+     * 进入熔断的次数
+     */
+    public long getCircuitBreakerOpenings() {
+        CacheCircuitBreaker circuitBreaker = this.circuitBreaker;
+        return circuitBreaker == null ? 0 : circuitBreaker.getOpenings();
+    }
+
+    /**
+     * 熔断期间待补发的失效key数量
+     */
+    public long getPendingInvalidations() {
+        CacheCircuitBreaker circuitBreaker = this.circuitBreaker;
+        return circuitBreaker == null ? 0 : circuitBreaker.getPendingInvalidations();
+    }
+
+    /**
+     * 待补发的失效超过上限、改为清空整个cache的次数
+     */
+    public long getPendingInvalidationOverflows() {
+        CacheCircuitBreaker circuitBreaker = this.circuitBreaker;
+        return circuitBreaker == null ? 0 : circuitBreaker.getOverflows();
+    }
+
+    /**
+     * 是否开启了延迟写入
+     */
+    public boolean isWriteBehindEnabled() {
+        return this.writeBehind != null;
+    }
+
+    /**
+     * 延迟写入缓冲中待写入的key数量
+     */
+    public long getWriteBehindPending() {
+        CacheWriteBehind writeBehind = this.writeBehind;
+        return writeBehind == null ? 0 : writeBehind.size();
+    }
+
+    /**
+     * 延迟写入缓冲已满、改为同步写入的次数
+     */
+    public long getWriteBehindRejections() {
+        CacheWriteBehind writeBehind = this.writeBehind;
+        return writeBehind == null ? 0 : writeBehind.getRejections();
+    }
+}
@@ -0,0 +1,281 @@
+package com.egova.cache;
+
+import io.lettuce.core.RedisChannelHandler;
+import io.lettuce.core.RedisClient;
+import io.lettuce.core.RedisConnectionStateAdapter;
+import io.lettuce.core.RedisURI;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.codec.ByteArrayCodec;
+import io.lettuce.core.codec.RedisCodec;
+import io.lettuce.core.output.StatusOutput;
+import io.lettuce.core.protocol.CommandArgs;
+import io.lettuce.core.protocol.CommandType;
+import io.lettuce.core.pubsub.RedisPubSubAdapter;
+import io.lettuce.core.pubsub.StatefulRedisPubSubConnection;
+import io.lettuce.core.pubsub.api.sync.RedisPubSubCommands;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * redis失效通知监听（CLIENT TRACKING 广播模式）。
+ * 一条专用连接按cacheName前缀开启跟踪，并把失效通知转发给另一条订阅了 __redis__:invalidate 的连接，
+ * 无论谁修改了这些key（包括其他服务直接写redis），redis都会推送通知，这里据此清理本地缓存。
+ * 任一连接断线重连后，断线期间的通知已经丢失，重新开启跟踪并清空本地缓存。
+ * 本节点自己的写入同样会收到通知，写入后的第一次读取会回到二级缓存。
+ * 各cache在redis中的代数同样被跟踪，其它节点清空cache后据此切换代数。
+ */
+@Slf4j
+public class CacheTrackingListener implements InitializingBean, DisposableBean {
+
+    private static final byte[] CHANNEL = "__redis__:invalidate".getBytes(StandardCharsets.UTF_8);
+
+    private static final long RETRY_INTERVAL = 1000;
+
+    private final LettuceConnectionFactory connectionFactory;
+
+    private final RedisTemplate<Object, Object> redisTemplate;
+
+    private final RedisEhcacheCacheManager redisEhcacheCacheManager;
+
+    /**
+     * 已开启跟踪的cacheName，对应redis中 name: 开头的key
+     */
+    private final Set<String> cacheNames = ConcurrentHashMap.newKeySet();
+
+    /**
+     * 已开启跟踪的cacheName及其代数的key
+     */
+    private final Map<String, String> generationKeys = new ConcurrentHashMap<>();
+
+    private final InvalidationCodec invalidationCodec = new InvalidationCodec();
+
+    private RedisClient client;
+
+    private StatefulRedisPubSubConnection<byte[], byte[]> pubSubConnection;
+
+    private StatefulRedisConnection<byte[], byte[]> trackingConnection;
+
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * 接收失效通知的连接id
+     */
+    private volatile Long redirectId;
+
+    public CacheTrackingListener(RedisTemplate<Object, Object> redisTemplate, RedisEhcacheCacheManager redisEhcacheCacheManager) {
+        RedisConnectionFactory factory = redisTemplate.getConnectionFactory();
+        if (!(factory instanceof LettuceConnectionFactory)
+                || ((LettuceConnectionFactory) factory).isClusterAware()
+                || ((LettuceConnectionFactory) factory).isRedisSentinelAware()) {
+            throw new IllegalStateException("redis失效通知只支持lettuce单机连接，请改用topic方式维护一级缓存一致性");
+        }
+        this.connectionFactory = (LettuceConnectionFactory) factory;
+        this.redisTemplate = redisTemplate;
+        this.redisEhcacheCacheManager = redisEhcacheCacheManager;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("cache-tracking-");
+        threadFactory.setDaemon(true);
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(threadFactory);
+
+        RedisURI uri = RedisURI.builder()
+                .withHost(connectionFactory.getHostName())
+                .withPort(connectionFactory.getPort())
+                .withDatabase(connectionFactory.getDatabase())
+                .withSsl(connectionFactory.getClientConfiguration().isUseSsl())
+                .withTimeout(connectionFactory.getClientConfiguration().getCommandTimeout())
+                .build();
+        connectionFactory.getStandaloneConfiguration().getPassword().toOptional().ifPresent(uri::setPassword);
+        this.client = connectionFactory.getClientResources() != null
+                ? RedisClient.create(connectionFactory.getClientResources(), uri)
+                : RedisClient.create(uri);
+
+        this.pubSubConnection = client.connectPubSub(invalidationCodec, uri);
+        this.pubSubConnection.addListener(new RedisPubSubAdapter<byte[], byte[]>() {
+            @Override
+            public void message(byte[] channel, byte[] message) {
+                // 一条通知可能包含多个key，message只是其中最后一个，从解码器中取出全部的key
+                onInvalidate(invalidationCodec.drain());
+            }
+        });
+        this.trackingConnection = client.connect(ByteArrayCodec.INSTANCE, uri);
+        track();
+
+        client.addListener(new RedisConnectionStateAdapter() {
+            @Override
+            public void onRedisConnected(RedisChannelHandler<?, ?> connection, SocketAddress socketAddress) {
+                scheduler.execute(CacheTrackingListener.this::retrack);
+            }
+        });
+        redisEhcacheCacheManager.onCacheCreated(this::track);
+    }
+
+    @Override
+    public void destroy() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+        if (client != null) {
+            client.shutdown();
+        }
+    }
+
+    private void retrack() {
+        try {
+            track();
+        } catch (Exception ex) {
+            log.warn("redis失效通知跟踪开启失败，稍后重试", ex);
+            scheduler.schedule(this::retrack, RETRY_INTERVAL, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * 取得订阅连接的id，按已登记的cacheName重新开启跟踪，然后清空本地缓存
+     */
+    private synchronized void track() {
+        RedisPubSubCommands<byte[], byte[]> pubSub = pubSubConnection.sync();
+        // RESP2下处于订阅状态的连接不能执行其它命令，先退订再取连接id
+        pubSub.unsubscribe(CHANNEL);
+        long id = pubSub.clientId();
+        pubSub.subscribe(CHANNEL);
+
+        redirectId = id;
+        client(new CommandArgs<>(ByteArrayCodec.INSTANCE).add("TRACKING").add("off"));
+        for (String cacheName : cacheNames) {
+            enable(cacheName);
+        }
+        redisEhcacheCacheManager.clearAllLocal();
+        log.debug("redis失效通知跟踪已开启，redirect:{}, caches:{}", id, cacheNames);
+    }
+
+    private synchronized void track(RedisEhcacheCache cache) {
+        generationKeys.put(cache.getName(), cache.getGenerationKey());
+        if (cacheNames.add(cache.getName()) && redirectId != null) {
+            enable(cache.getName());
+        }
+    }
+
+    /**
+     * 追加cache的key和代数两个跟踪前缀
+     */
+    private void enable(String cacheName) {
+        enable(cacheName, cacheName.concat(":"));
+        String generationKey = generationKeys.get(cacheName);
+        if (generationKey != null) {
+            enable(cacheName, generationKey);
+        }
+    }
+
+    /**
+     * 追加一个跟踪前缀，与已有前缀重叠时redis会拒绝，重叠部分的key已被已有前缀覆盖
+     */
+    @SuppressWarnings("unchecked")
+    private void enable(String cacheName, String text) {
+        byte[] prefix = ((RedisSerializer<Object>) redisTemplate.getKeySerializer()).serialize(text);
+        try {
+            client(new CommandArgs<>(ByteArrayCodec.INSTANCE).add("TRACKING").add("on")
+                    .add("REDIRECT").add(redirectId).add("BCAST").add("PREFIX").add(prefix));
+        } catch (Exception ex) {
+            log.warn("redis失效通知跟踪前缀添加失败，cacheName:{}, prefix:{}", cacheName, text, ex);
+        }
+    }
+
+    private void client(CommandArgs<byte[], byte[]> args) {
+        trackingConnection.sync().dispatch(CommandType.CLIENT, new StatusOutput<>(ByteArrayCodec.INSTANCE), args);
+    }
+
+    /**
+     * 处理一条失效通知，按cache合并后批量清理本地缓存
+     *
+     * @param rawKeys 通知中的key，FLUSHDB / FLUSHALL 时通知中没有key
+     */
+    void onInvalidate(List<byte[]> rawKeys) {
+        if (rawKeys.isEmpty()) {
+            redisEhcacheCacheManager.clearAllLocal();
+            return;
+        }
+        Map<String, List<Object>> keysByCache = new HashMap<>();
+        for (byte[] rawKey : rawKeys) {
+            Object key = redisTemplate.getKeySerializer().deserialize(rawKey);
+            String text = String.valueOf(key);
+            String cleared = null;
+            for (Map.Entry<String, String> entry : generationKeys.entrySet()) {
+                if (text.equals(entry.getValue())) {
+                    cleared = entry.getKey();
+                    break;
+                }
+            }
+            if (cleared != null) {
+                // 其它节点清空了cache
+                redisEhcacheCacheManager.clearLocal(cleared, null, null);
+                continue;
+            }
+            for (String cacheName : cacheNames) {
+                if (text.length() > cacheName.length() && text.charAt(cacheName.length()) == ':' && text.startsWith(cacheName)) {
+                    keysByCache.computeIfAbsent(cacheName, name -> new ArrayList<>()).add(key);
+                }
+            }
+        }
+        for (Map.Entry<String, List<Object>> entry : keysByCache.entrySet()) {
+            redisEhcacheCacheManager.clearLocalKeys(entry.getKey(), entry.getValue(), null);
+        }
+    }
+
+    /**
+     * 订阅连接的编解码。lettuce把一条通知中的多个key依次解码到同一个值上，只保留最后一个，
+     * 这里把解码出的key收集起来，由监听器一次取出；解码和通知都在连接的IO线程上依次执行，不需要同步
+     */
+    private static final class InvalidationCodec implements RedisCodec<byte[], byte[]> {
+
+        private List<byte[]> keys = new ArrayList<>();
+
+        @Override
+        public byte[] decodeKey(ByteBuffer bytes) {
+            return ByteArrayCodec.INSTANCE.decodeKey(bytes);
+        }
+
+        @Override
+        public byte[] decodeValue(ByteBuffer bytes) {
+            byte[] key = ByteArrayCodec.INSTANCE.decodeValue(bytes);
+            keys.add(key);
+            return key;
+        }
+
+        @Override
+        public ByteBuffer encodeKey(byte[] key) {
+            return ByteArrayCodec.INSTANCE.encodeKey(key);
+        }
+
+        @Override
+        public ByteBuffer encodeValue(byte[] value) {
+            return ByteArrayCodec.INSTANCE.encodeValue(value);
+        }
+
+        List<byte[]> drain() {
+            List<byte[]> drained = keys;
+            keys = new ArrayList<>();
+            return drained;
+        }
+    }
+}
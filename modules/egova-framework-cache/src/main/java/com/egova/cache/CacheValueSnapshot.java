@@ -0,0 +1,51 @@
+package com.egova.cache;
+
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import java.io.Serializable;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 一级缓存按值存储时的条目值：只保存值序列化后的字节，每个读取方反序列化出自己的副本，修改副本不影响缓存和其它读取方。
+ * 从二级缓存读到的值本身就是刚反序列化出的对象，没有其它引用，作为第一个副本直接交给第一个读取方，省去一次反序列化。
+ */
+public final class CacheValueSnapshot implements Serializable {
+
+    private static final long serialVersionUID = 4387012955402186913L;
+
+    private final byte[] bytes;
+
+    /**
+     * 尚未交出的第一个副本，交出后为null
+     */
+    private final transient AtomicReference<Object> first;
+
+    /**
+     * @param bytes 值序列化后的字节
+     * @param first 可以直接交给第一个读取方的对象，没有时为null
+     */
+    public CacheValueSnapshot(byte[] bytes, Object first) {
+        this.bytes = bytes;
+        this.first = first == null ? null : new AtomicReference<>(first);
+    }
+
+    /**
+     * 取得一个读取方独有的副本
+     */
+    public Object copy(RedisSerializer<Object> serializer) {
+        if (first != null) {
+            Object value = first.getAndSet(null);
+            if (value != null) {
+                return value;
+            }
+        }
+        return serializer.deserialize(bytes);
+    }
+
+    /**
+     * 序列化后的字节数
+     */
+    public int size() {
+        return bytes.length;
+    }
+}
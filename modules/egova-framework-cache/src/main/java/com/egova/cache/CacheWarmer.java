@@ -0,0 +1,140 @@
+package com.egova.cache;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.core.Ordered;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 启动预热。
+ * 作为ApplicationRunner在应用就绪之前执行：按 {@link RedisEhcacheCache#warmupKeys} 取得各cache需要预热的key，
+ * 分批在固定数量的线程中从二级缓存读取并回填一级缓存。
+ * 超过预热时间后放弃剩余的批次，预热失败不影响启动。
+ */
+@Slf4j
+public class CacheWarmer implements ApplicationRunner, Ordered {
+
+    private final RedisEhcacheCacheManager cacheManager;
+
+    private final RedisEhcacheProperties.Warmup properties;
+
+    public CacheWarmer(RedisEhcacheCacheManager cacheManager, RedisEhcacheProperties.Warmup properties) {
+        this.cacheManager = cacheManager;
+        this.properties = properties;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        warmup();
+    }
+
+    @Override
+    public int getOrder() {
+        return Ordered.HIGHEST_PRECEDENCE;
+    }
+
+    public void warmup() {
+        if (properties.getCaches().isEmpty()) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        long deadline = start + properties.getTimeout().toMillis();
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("cache-warmup-");
+        threadFactory.setDaemon(true);
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, properties.getConcurrency()), threadFactory);
+        List<Progress> progresses = new ArrayList<>();
+        List<Future<?>> futures = new ArrayList<>();
+        try {
+            for (String name : properties.getCaches()) {
+                RedisEhcacheCache cache = (RedisEhcacheCache) cacheManager.getCache(name);
+                if (cache == null) {
+                    continue;
+                }
+                List<Object> keys;
+                try {
+                    keys = cache.warmupKeys(properties.getMaxKeys());
+                } catch (Exception ex) {
+                    log.warn("缓存预热的key读取失败，跳过预热，cacheName:{}", name, ex);
+                    continue;
+                }
+                if (keys.isEmpty()) {
+                    log.info("缓存预热跳过，没有可预热的key，cacheName:{}", name);
+                    continue;
+                }
+                int batchSize = Math.max(1, properties.getBatchSize());
+                Progress progress = new Progress(name, keys.size(), (keys.size() + batchSize - 1) / batchSize, start);
+                progresses.add(progress);
+                for (int i = 0; i < keys.size(); i += batchSize) {
+                    List<Object> batch = keys.subList(i, Math.min(i + batchSize, keys.size()));
+                    futures.add(executor.submit(() -> progress.done(cache.warmup(batch))));
+                }
+            }
+
+            for (Future<?> future : futures) {
+                long remaining = deadline - System.currentTimeMillis();
+                try {
+                    future.get(Math.max(0, remaining), TimeUnit.MILLISECONDS);
+                } catch (TimeoutException e) {
+                    log.warn("缓存预热超时，放弃剩余的批次，超时时间:{}ms", properties.getTimeout().toMillis());
+                    break;
+                } catch (ExecutionException e) {
+                    log.warn("缓存预热的批次读取失败", e.getCause());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            executor.shutdownNow();
+        }
+
+        int loaded = 0;
+        for (Progress progress : progresses) {
+            loaded += progress.loaded.get();
+            if (progress.remaining.get() > 0) {
+                log.warn("缓存预热未完成，cacheName:{}, 回填:{}/{}", progress.name, progress.loaded.get(), progress.total);
+            }
+        }
+        log.info("缓存预热结束，cache:{}, 回填:{}, 耗时:{}ms", progresses.size(), loaded, System.currentTimeMillis() - start);
+    }
+
+    /**
+     * 单个cache的预热进度，最后一个批次完成时输出日志
+     */
+    private static class Progress {
+
+        private final String name;
+
+        private final int total;
+
+        private final long start;
+
+        private final AtomicInteger remaining;
+
+        private final AtomicInteger loaded = new AtomicInteger();
+
+        Progress(String name, int total, int batches, long start) {
+            this.name = name;
+            this.total = total;
+            this.start = start;
+            this.remaining = new AtomicInteger(batches);
+        }
+
+        void done(int count) {
+            loaded.addAndGet(count);
+            if (remaining.decrementAndGet() == 0) {
+                log.info("缓存预热完成，cacheName:{}, 回填:{}/{}, 耗时:{}ms", name, loaded.get(), total, System.currentTimeMillis() - start);
+            }
+        }
+    }
+}
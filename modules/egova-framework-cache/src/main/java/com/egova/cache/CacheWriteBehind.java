@@ -0,0 +1,230 @@
+package com.egova.cache;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 二级缓存的延迟写入。
+ * 写入和删除先放入有界的待写缓冲，同一个key只保留最后一次操作；后台每隔flushInterval或攒够batchSize个key时，
+ * 按写入顺序在一个pipeline中写入redis，并发送一条失效消息。
+ * 缓冲已满时最多等待maxWait，仍然没有空位则由调用方同步写入。
+ * 后台写入在同一个线程上依次执行，同一个key的多次写入不会乱序；关闭时写完缓冲中剩余的数据。
+ */
+@Slf4j
+public class CacheWriteBehind {
+
+    /**
+     * 待删除的占位
+     */
+    static final Object REMOVED = new Object();
+
+    /**
+     * 批量写入redis，值为 {@link #REMOVED} 的key需要删除
+     */
+    @FunctionalInterface
+    public interface Writer {
+
+        void write(Map<Object, Object> values);
+    }
+
+    private final String name;
+
+    private final int capacity;
+
+    private final int batchSize;
+
+    private final long flushInterval;
+
+    private final long maxWait;
+
+    private final Writer writer;
+
+    /**
+     * 待写入的key和存储值，每个key对应order中的一个位置
+     */
+    private final ConcurrentMap<Object, Object> pending = new ConcurrentHashMap<>();
+
+    private final Queue<Object> order = new ConcurrentLinkedQueue<>();
+
+    private final Semaphore permits;
+
+    /**
+     * 写入redis和丢弃缓冲互斥，保证清空cache之后不会再写入清空前的数据
+     */
+    private final ReentrantLock flushLock = new ReentrantLock();
+
+    private final AtomicBoolean flushRequested = new AtomicBoolean();
+
+    private final LongAdder rejections = new LongAdder();
+
+    private volatile ScheduledExecutorService scheduler;
+
+    private ScheduledFuture<?> task;
+
+    public CacheWriteBehind(String name, RedisEhcacheProperties.Policy policy, Writer writer) {
+        this.name = name;
+        this.capacity = Math.max(1, policy.getWriteBehindBufferSize());
+        this.batchSize = Math.max(1, policy.getWriteBehindBatchSize());
+        this.flushInterval = policy.getWriteBehindFlushInterval().toMillis();
+        this.maxWait = policy.getWriteBehindMaxWait().toMillis();
+        this.writer = writer;
+        this.permits = new Semaphore(this.capacity);
+    }
+
+    /**
+     * 开始定时写入，未开始时 {@link #offer} 总是返回false
+     */
+    public synchronized void start(ScheduledExecutorService scheduler) {
+        if (this.scheduler != null) {
+            return;
+        }
+        this.task = scheduler.scheduleWithFixedDelay(this::flush, flushInterval, Math.max(1, flushInterval), TimeUnit.MILLISECONDS);
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * 放入待写缓冲
+     *
+     * @param key   缓存key
+     * @param value 存储值，删除时为 {@link #REMOVED}
+     * @return 缓冲已满或未开始时返回false，由调用方同步写入
+     */
+    public boolean offer(Object key, Object value) {
+        ScheduledExecutorService scheduler = this.scheduler;
+        if (scheduler == null) {
+            return false;
+        }
+        if (pending.computeIfPresent(key, (k, v) -> value) != null) {
+            return true;
+        }
+        try {
+            if (!permits.tryAcquire(maxWait, TimeUnit.MILLISECONDS)) {
+                rejections.increment();
+                return false;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            rejections.increment();
+            return false;
+        }
+        while (true) {
+            if (pending.computeIfPresent(key, (k, v) -> value) != null) {
+                // 等待期间其它线程已放入同一个key
+                permits.release();
+                return true;
+            }
+            if (pending.putIfAbsent(key, value) == null) {
+                order.add(key);
+                break;
+            }
+        }
+        if (size() >= batchSize && flushRequested.compareAndSet(false, true)) {
+            try {
+                scheduler.execute(this::flush);
+            } catch (RejectedExecutionException e) {
+                flushRequested.set(false);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 待写入的存储值，不在缓冲中时返回null，待删除时返回 {@link #REMOVED}
+     */
+    public Object get(Object key) {
+        return pending.get(key);
+    }
+
+    /**
+     * 按写入顺序分批写入缓冲中的数据
+     */
+    public void flush() {
+        flushRequested.set(false);
+        flushLock.lock();
+        try {
+            Map<Object, Object> batch;
+            do {
+                batch = poll();
+                if (batch.isEmpty()) {
+                    return;
+                }
+                try {
+                    writer.write(batch);
+                } catch (Exception ex) {
+                    log.warn("缓存延迟写入失败，cacheName:{}, keys:{}", name, batch.size(), ex);
+                }
+            } while (batch.size() >= batchSize);
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    /**
+     * 丢弃缓冲中的数据，正在进行的写入完成后才返回
+     */
+    public void discard() {
+        flushLock.lock();
+        try {
+            while (!poll().isEmpty()) {
+                // 继续丢弃
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    private Map<Object, Object> poll() {
+        Map<Object, Object> batch = new LinkedHashMap<>();
+        Object key;
+        while (batch.size() < batchSize && (key = order.poll()) != null) {
+            Object value = pending.remove(key);
+            if (value != null) {
+                batch.put(key, value);
+                permits.release();
+            }
+        }
+        return batch;
+    }
+
+    /**
+     * 停止定时写入，并写完缓冲中剩余的数据
+     */
+    public void close() {
+        synchronized (this) {
+            if (task != null) {
+                task.cancel(false);
+                task = null;
+            }
+            this.scheduler = null;
+        }
+        flush();
+    }
+
+    /**
+     * 缓冲中待写入的key数量
+     */
+    public int size() {
+        return capacity - permits.availablePermits();
+    }
+
+    /**
+     * 缓冲已满、改为同步写入的次数
+     */
+    public long getRejections() {
+        return rejections.sum();
+    }
+}
@@ -0,0 +1,274 @@
+package com.egova.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.CacheLoader;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.github.benmanes.caffeine.cache.stats.StatsCounter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 基于caffeine的一级缓存，按W-TinyLFU淘汰，只有堆内一层。
+ * 配置了堆内字节数时按值序列化后的字节数估算占用，否则按条数限制；
+ * 配置了刷新间隔时，写入超过该间隔的条目在下一次读取时由二级缓存在后台刷新，读取不等待刷新结果。
+ * caffeine本身按访问频率保留高频key，热点key统计只用于延长存活时间，不参与淘汰。
+ */
+@Slf4j
+public class CaffeineLocalCacheProvider implements LocalCacheProvider {
+
+    /**
+     * 估算条目占用时在序列化字节数之外计入的对象开销
+     */
+    private static final int ENTRY_OVERHEAD = 64;
+
+    private final RedisEhcacheProperties.Ehcache ehcache;
+
+    /**
+     * 估算条目占用的序列化，为null时不能按字节数限制
+     */
+    private final RedisSerializer<Object> serializer;
+
+    /**
+     * 后台刷新使用的线程池
+     */
+    private final Executor refreshExecutor;
+
+    public CaffeineLocalCacheProvider(RedisEhcacheProperties.Ehcache ehcache, RedisSerializer<Object> serializer, Executor refreshExecutor) {
+        this.ehcache = ehcache;
+        this.serializer = serializer;
+        this.refreshExecutor = refreshExecutor;
+    }
+
+    @Override
+    public LocalCache createCache(String name, CacheHotKeys hotKeys) {
+        RedisEhcacheProperties.Pool pool = ehcache.getCaches().get(name);
+        long timeToLive = TimeUnit.MILLISECONDS.toNanos(ehcache.getExpireAfterWrite(name));
+        Counter counter = new Counter();
+        Caffeine<Object, Object> builder = Caffeine.newBuilder()
+                .expireAfter(new Expiry<Object, Object>() {
+                    @Override
+                    public long expireAfterCreate(Object key, Object value, long currentTime) {
+                        if (value instanceof CacheEntry) {
+                            return TimeUnit.MILLISECONDS.toNanos(Math.max(0, ((CacheEntry) value).getEvictTime() - System.currentTimeMillis()));
+                        }
+                        return timeToLive;
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(Object key, Object value, long currentTime, long currentDuration) {
+                        return expireAfterCreate(key, value, currentTime);
+                    }
+
+                    @Override
+                    public long expireAfterRead(Object key, Object value, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .recordStats(() -> counter);
+
+        if (pool == null) {
+            builder.maximumSize(ehcache.getMaxEntry());
+        } else if (pool.getHeapSize() != null && serializer != null) {
+            builder.maximumWeight(pool.getHeapSize().toBytes()).weigher((key, value) -> weigh(value));
+        } else {
+            if (pool.getHeapSize() != null) {
+                log.warn("cache {} 没有可用的序列化，无法按字节数估算一级缓存占用，改为按条数限制", name);
+            }
+            builder.maximumSize(pool.getHeapEntries());
+        }
+        if (pool != null && (pool.getOffHeapSize() != null || pool.getDiskSize() != null)) {
+            log.warn("cache {} 的一级缓存使用caffeine，不支持堆外和磁盘层，相关配置已忽略", name);
+        }
+
+        boolean refreshable = pool != null && pool.getRefreshAfterWrite() != null;
+        if (refreshable) {
+            builder.refreshAfterWrite(pool.getRefreshAfterWrite().toNanos(), TimeUnit.NANOSECONDS);
+        }
+        return new CaffeineLocalCache(builder, counter, refreshable);
+    }
+
+    /**
+     * 条目的估算占用：值序列化后的字节数加上固定的对象开销
+     */
+    private int weigh(Object value) {
+        Object storeValue = value instanceof CacheEntry ? ((CacheEntry) value).getValue() : value;
+        if (storeValue instanceof CacheValueSnapshot) {
+            return ENTRY_OVERHEAD + ((CacheValueSnapshot) storeValue).size();
+        }
+        try {
+            byte[] bytes = serializer.serialize(storeValue);
+            return ENTRY_OVERHEAD + (bytes == null ? 0 : bytes.length);
+        } catch (Exception e) {
+            return ENTRY_OVERHEAD;
+        }
+    }
+
+    @Override
+    public void close() {
+        // caffeine没有需要释放的资源
+    }
+
+    private class CaffeineLocalCache implements LocalCache {
+
+        private final Cache<Object, Object> cache;
+
+        private final Counter counter;
+
+        private final boolean refreshable;
+
+        private volatile Loader loader;
+
+        CaffeineLocalCache(Caffeine<Object, Object> builder, Counter counter, boolean refreshable) {
+            this.cache = refreshable ? builder.build(new Reloader()) : builder.build();
+            this.counter = counter;
+            this.refreshable = refreshable;
+        }
+
+        @Override
+        public Object get(Object key) {
+            return cache.getIfPresent(key);
+        }
+
+        @Override
+        public Map<Object, Object> getAll(Set<?> keys) {
+            return cache.getAllPresent(keys);
+        }
+
+        @Override
+        public void put(Object key, Object value) {
+            cache.put(key, value);
+        }
+
+        @Override
+        public Object putIfAbsent(Object key, Object value) {
+            return cache.asMap().putIfAbsent(key, value);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public void putAll(Map<?, ?> values) {
+            cache.putAll((Map<Object, Object>) values);
+        }
+
+        @Override
+        public void remove(Object key) {
+            cache.invalidate(key);
+        }
+
+        @Override
+        public void removeAll(Set<?> keys) {
+            cache.invalidateAll(keys);
+        }
+
+        @Override
+        public void clear() {
+            cache.invalidateAll();
+        }
+
+        @Override
+        public long getSize() {
+            return cache.estimatedSize();
+        }
+
+        @Override
+        public long getEvictions() {
+            return counter.evictions.sum();
+        }
+
+        @Override
+        public long getExpirations() {
+            return counter.expirations.sum();
+        }
+
+        @Override
+        public Object getNativeCache() {
+            return cache;
+        }
+
+        @Override
+        public void setLoader(Loader loader) {
+            if (refreshable) {
+                this.loader = loader;
+            }
+        }
+
+        /**
+         * 后台刷新，在刷新线程池中执行；没有设置刷新方式时保留原条目
+         */
+        private class Reloader implements CacheLoader<Object, Object> {
+
+            @Override
+            public Object load(Object key) throws Exception {
+                Loader loader = CaffeineLocalCache.this.loader;
+                return loader == null ? null : loader.load(key);
+            }
+
+            @Override
+            public Object reload(Object key, Object oldValue) throws Exception {
+                Loader loader = CaffeineLocalCache.this.loader;
+                return loader == null ? oldValue : loader.load(key);
+            }
+
+            @Override
+            public CompletableFuture<Object> asyncReload(Object key, Object oldValue, Executor executor) {
+                return CacheLoader.super.asyncReload(key, oldValue, refreshExecutor);
+            }
+        }
+    }
+
+    /**
+     * 只统计淘汰和过期的次数，命中率由 {@link CacheMetrics} 统计
+     */
+    private static class Counter implements StatsCounter {
+
+        private final LongAdder evictions = new LongAdder();
+
+        private final LongAdder expirations = new LongAdder();
+
+        @Override
+        public void recordHits(int count) {
+        }
+
+        @Override
+        public void recordMisses(int count) {
+        }
+
+        @Override
+        public void recordLoadSuccess(long loadTime) {
+        }
+
+        @Override
+        public void recordLoadFailure(long loadTime) {
+        }
+
+        @Override
+        @SuppressWarnings("deprecation")
+        public void recordEviction() {
+            evictions.increment();
+        }
+
+        @Override
+        public void recordEviction(int weight, RemovalCause cause) {
+            if (cause == RemovalCause.EXPIRED) {
+                expirations.increment();
+            } else {
+                evictions.increment();
+            }
+        }
+
+        @Override
+        public CacheStats snapshot() {
+            return new CacheStats(0, 0, 0, 0, 0, evictions.sum() + expirations.sum(), 0);
+        }
+    }
+}
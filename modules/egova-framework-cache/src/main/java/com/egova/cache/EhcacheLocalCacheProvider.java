@@ -0,0 +1,183 @@
+package com.egova.cache;
+
+import org.ehcache.Cache;
+import org.ehcache.CacheManager;
+import org.ehcache.config.CacheConfiguration;
+import org.ehcache.config.builders.CacheConfigurationBuilder;
+import org.ehcache.config.builders.CacheManagerBuilder;
+import org.ehcache.config.builders.ResourcePoolsBuilder;
+import org.ehcache.config.units.MemoryUnit;
+import org.ehcache.core.spi.service.StatisticsService;
+import org.ehcache.core.statistics.CacheStatistics;
+import org.ehcache.core.statistics.DefaultStatisticsService;
+import org.ehcache.core.statistics.TierStatistics;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 基于ehcache的一级缓存，按 {@link RedisEhcacheProperties.Pool} 配置堆内、堆外和磁盘层
+ */
+public class EhcacheLocalCacheProvider implements LocalCacheProvider {
+
+    private final RedisEhcacheProperties.Ehcache ehcache;
+
+    /**
+     * 堆外和磁盘层的序列化，为null时不能使用堆外和磁盘层
+     */
+    private final RedisSerializer<Object> serializer;
+
+    private final StatisticsService statisticsService = new DefaultStatisticsService();
+
+    private final CacheConfiguration<Object, Object> configuration;
+
+    private final CacheManager ehCacheManager;
+
+    public EhcacheLocalCacheProvider(RedisEhcacheProperties.Ehcache ehcache, RedisSerializer<Object> serializer) {
+        this.ehcache = ehcache;
+        this.serializer = serializer;
+        this.configuration =
+                CacheConfigurationBuilder
+                        .newCacheConfigurationBuilder(Object.class, Object.class, ResourcePoolsBuilder.heap(ehcache.getMaxEntry()))
+                        .withExpiry(new CacheEntryExpiry(Duration.ofMillis(ehcache.getExpireAfterWrite())))
+                        .build();
+        // 配置了磁盘层时才需要指定存储目录
+        if (ehcache.getCaches().values().stream().anyMatch(pool -> pool.getDiskSize() != null)) {
+            this.ehCacheManager = CacheManagerBuilder
+                    .newCacheManagerBuilder()
+                    .with(CacheManagerBuilder.persistence(ehcache.getDiskPath()))
+                    .using(statisticsService)
+                    .build();
+        } else {
+            this.ehCacheManager = CacheManagerBuilder
+                    .newCacheManagerBuilder()
+                    .using(statisticsService)
+                    .build();
+        }
+        this.ehCacheManager.init();
+    }
+
+    @Override
+    public synchronized LocalCache createCache(String name, CacheHotKeys hotKeys) {
+        Cache<Object, Object> cache = ehCacheManager.getCache(name, Object.class, Object.class);
+        if (cache == null) {
+            cache = ehCacheManager.createCache(name, getConfiguration(name, hotKeys));
+        }
+        return new EhcacheLocalCache(cache, statisticsService.getCacheStatistics(name));
+    }
+
+    /**
+     * 获取cache的一级缓存配置，单独配置了容量的cache按其配置的各层构建
+     */
+    private CacheConfiguration<Object, Object> getConfiguration(String name, CacheHotKeys hotKeys) {
+        RedisEhcacheProperties.Pool pool = ehcache.getCaches().get(name);
+        if (pool == null) {
+            return hotKeys == null ? configuration
+                    : CacheConfigurationBuilder.newCacheConfigurationBuilder(configuration).withEvictionAdvisor(hotKeys).build();
+        }
+
+        ResourcePoolsBuilder resourcePools = pool.getHeapSize() != null
+                ? ResourcePoolsBuilder.newResourcePoolsBuilder().heap(pool.getHeapSize().toBytes(), MemoryUnit.B)
+                : ResourcePoolsBuilder.heap(pool.getHeapEntries());
+        if (pool.getOffHeapSize() != null) {
+            resourcePools = resourcePools.offheap(pool.getOffHeapSize().toMegabytes(), MemoryUnit.MB);
+        }
+        if (pool.getDiskSize() != null) {
+            resourcePools = resourcePools.disk(pool.getDiskSize().toMegabytes(), MemoryUnit.MB, false);
+        }
+
+        CacheConfigurationBuilder<Object, Object> builder = CacheConfigurationBuilder
+                .newCacheConfigurationBuilder(Object.class, Object.class, resourcePools)
+                .withExpiry(new CacheEntryExpiry(Duration.ofMillis(ehcache.getExpireAfterWrite(name))))
+                .withEvictionAdvisor(hotKeys);
+        // 堆外和磁盘层需要序列化，沿用redis的序列化方式，缓存对象无需实现Serializable
+        if ((pool.getOffHeapSize() != null || pool.getDiskSize() != null) && serializer != null) {
+            EhcacheValueSerializer valueSerializer = new EhcacheValueSerializer(serializer);
+            builder = builder.withKeySerializer(valueSerializer).withValueSerializer(valueSerializer);
+        }
+        return builder.build();
+    }
+
+    @Override
+    public void close() {
+        ehCacheManager.close();
+    }
+
+    private static class EhcacheLocalCache implements LocalCache {
+
+        private final Cache<Object, Object> cache;
+
+        private final CacheStatistics statistics;
+
+        EhcacheLocalCache(Cache<Object, Object> cache, CacheStatistics statistics) {
+            this.cache = cache;
+            this.statistics = statistics;
+        }
+
+        @Override
+        public Object get(Object key) {
+            return cache.get(key);
+        }
+
+        @Override
+        public Map<Object, Object> getAll(Set<?> keys) {
+            return cache.getAll(keys);
+        }
+
+        @Override
+        public void put(Object key, Object value) {
+            cache.put(key, value);
+        }
+
+        @Override
+        public Object putIfAbsent(Object key, Object value) {
+            return cache.putIfAbsent(key, value);
+        }
+
+        @Override
+        public void putAll(Map<?, ?> values) {
+            cache.putAll(values);
+        }
+
+        @Override
+        public void remove(Object key) {
+            cache.remove(key);
+        }
+
+        @Override
+        public void removeAll(Set<?> keys) {
+            cache.removeAll(keys);
+        }
+
+        @Override
+        public void clear() {
+            cache.clear();
+        }
+
+        @Override
+        public long getSize() {
+            long size = 0;
+            for (TierStatistics tier : statistics.getTierStatistics().values()) {
+                size = Math.max(size, tier.getMappings());
+            }
+            return size;
+        }
+
+        @Override
+        public long getEvictions() {
+            return statistics.getCacheEvictions();
+        }
+
+        @Override
+        public long getExpirations() {
+            return statistics.getCacheExpirations();
+        }
+
+        @Override
+        public Object getNativeCache() {
+            return cache;
+        }
+    }
+}
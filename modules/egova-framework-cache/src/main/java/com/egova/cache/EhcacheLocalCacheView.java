@@ -0,0 +1,158 @@
+package com.egova.cache;
+
+import org.ehcache.Cache;
+import org.ehcache.config.CacheRuntimeConfiguration;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * {@link RedisEhcacheCache#getLocalCache()} 返回的一级缓存视图：读取时去掉 {@link CacheEntry} 的包装，返回缓存的存储值，
+ * 已清空或已过期的条目视为不存在，与升级前直接读取ehcache的结果一致。
+ * 写入需要生成 {@link CacheEntry}，只能通过 {@link RedisEhcacheCache} 完成，视图的写入方法抛出 {@link UnsupportedOperationException}；
+ * 删除和清空直接作用于底层的ehcache。
+ */
+class EhcacheLocalCacheView implements Cache<Object, Object> {
+
+    private final Cache<Object, Object> cache;
+
+    private final RedisEhcacheCache owner;
+
+    EhcacheLocalCacheView(Cache<Object, Object> cache, RedisEhcacheCache owner) {
+        this.cache = cache;
+        this.owner = owner;
+    }
+
+    @Override
+    public Object get(Object key) {
+        return owner.unwrapLocal(cache.get(key));
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return get(key) != null;
+    }
+
+    @Override
+    public Map<Object, Object> getAll(Set<?> keys) {
+        Map<Object, Object> values = cache.getAll(keys);
+        Map<Object, Object> result = new HashMap<>(values.size());
+        for (Map.Entry<Object, Object> entry : values.entrySet()) {
+            result.put(entry.getKey(), owner.unwrapLocal(entry.getValue()));
+        }
+        return result;
+    }
+
+    @Override
+    public void remove(Object key) {
+        cache.remove(key);
+    }
+
+    @Override
+    public void removeAll(Set<?> keys) {
+        cache.removeAll(keys);
+    }
+
+    @Override
+    public void clear() {
+        cache.clear();
+    }
+
+    @Override
+    public void put(Object key, Object value) {
+        throw readOnly();
+    }
+
+    @Override
+    public void putAll(Map<?, ?> entries) {
+        throw readOnly();
+    }
+
+    @Override
+    public Object putIfAbsent(Object key, Object value) {
+        throw readOnly();
+    }
+
+    @Override
+    public boolean remove(Object key, Object value) {
+        throw readOnly();
+    }
+
+    @Override
+    public Object replace(Object key, Object value) {
+        throw readOnly();
+    }
+
+    @Override
+    public boolean replace(Object key, Object oldValue, Object newValue) {
+        throw readOnly();
+    }
+
+    @Override
+    public CacheRuntimeConfiguration<Object, Object> getRuntimeConfiguration() {
+        return cache.getRuntimeConfiguration();
+    }
+
+    /**
+     * 遍历时跳过已清空或已过期的条目
+     */
+    @Override
+    public Iterator<Entry<Object, Object>> iterator() {
+        Iterator<Entry<Object, Object>> entries = cache.iterator();
+        return new Iterator<Entry<Object, Object>>() {
+
+            private Entry<Object, Object> next;
+
+            @Override
+            public boolean hasNext() {
+                while (next == null && entries.hasNext()) {
+                    Entry<Object, Object> entry = entries.next();
+                    Object value = owner.unwrapLocal(entry.getValue());
+                    if (value != null) {
+                        next = new ValueEntry(entry.getKey(), value);
+                    }
+                }
+                return next != null;
+            }
+
+            @Override
+            public Entry<Object, Object> next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                Entry<Object, Object> entry = next;
+                next = null;
+                return entry;
+            }
+        };
+    }
+
+    private static UnsupportedOperationException readOnly() {
+        return new UnsupportedOperationException("一级缓存的条目由RedisEhcacheCache写入，请使用RedisEhcacheCache的put/putIfAbsent");
+    }
+
+    private static final class ValueEntry implements Entry<Object, Object> {
+
+        private final Object key;
+
+        private final Object value;
+
+        ValueEntry(Object key, Object value) {
+            this.key = key;
+            this.value = value;
+        }
+
+        @Override
+        public Object getKey() {
+            return key;
+        }
+
+        @Override
+        public Object getValue() {
+            return value;
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package com.egova.cache;
+
+import org.ehcache.spi.serialization.Serializer;
+import org.ehcache.spi.serialization.SerializerException;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import java.nio.ByteBuffer;
+import java.util.Objects;
+
+/**
+ * ehcache堆外和磁盘层使用的序列化器，复用redis的值序列化方式，
+ * 缓存对象不需要实现Serializable，且与二级缓存中的存储格式一致。
+ */
+public class EhcacheValueSerializer implements Serializer<Object> {
+
+    private final RedisSerializer<Object> serializer;
+
+    public EhcacheValueSerializer(RedisSerializer<Object> serializer) {
+        this.serializer = serializer;
+    }
+
+    @Override
+    public ByteBuffer serialize(Object object) throws SerializerException {
+        try {
+            byte[] bytes = serializer.serialize(object);
+            return ByteBuffer.wrap(bytes == null ? new byte[0] : bytes);
+        } catch (Exception e) {
+            throw new SerializerException(e);
+        }
+    }
+
+    @Override
+    public Object read(ByteBuffer binary) throws SerializerException {
+        byte[] bytes = new byte[binary.remaining()];
+        binary.get(bytes);
+        try {
+            return serializer.deserialize(bytes);
+        } catch (Exception e) {
+            throw new SerializerException(e);
+        }
+    }
+
+    @Override
+    public boolean equals(Object object, ByteBuffer binary) throws SerializerException {
+        return Objects.equals(object, read(binary));
+    }
+}
@@ -0,0 +1,68 @@
+package com.egova.cache;
+
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 一级缓存，存放 {@link CacheEntry}，条目按自身的移除时间过期。
+ * 由 {@link LocalCacheProvider} 创建，{@link RedisEhcacheCache} 只通过本接口访问一级缓存。
+ */
+public interface LocalCache {
+
+    Object get(Object key);
+
+    /**
+     * 批量读取，未命中的key不在结果中或值为null
+     */
+    Map<Object, Object> getAll(Set<?> keys);
+
+    void put(Object key, Object value);
+
+    /**
+     * @return 已存在的值，不存在时返回null并写入
+     */
+    Object putIfAbsent(Object key, Object value);
+
+    void putAll(Map<?, ?> values);
+
+    void remove(Object key);
+
+    void removeAll(Set<?> keys);
+
+    void clear();
+
+    /**
+     * 当前的条目数，多层时以容量最大的一层为准
+     */
+    long getSize();
+
+    /**
+     * 因容量不足淘汰的条目数
+     */
+    long getEvictions();
+
+    /**
+     * 因过期移除的条目数
+     */
+    long getExpirations();
+
+    /**
+     * 底层的缓存实现
+     */
+    Object getNativeCache();
+
+    /**
+     * 设置条目的后台刷新方式，不支持后台刷新的实现忽略
+     */
+    default void setLoader(Loader loader) {
+    }
+
+    /**
+     * 一级缓存条目的后台刷新，返回新的条目，返回null时移除该条目
+     */
+    @FunctionalInterface
+    interface Loader {
+
+        Object load(Object key) throws Exception;
+    }
+}
@@ -0,0 +1,17 @@
+package com.egova.cache;
+
+/**
+ * 一级缓存的实现，按cacheName创建 {@link LocalCache}，随cacheManager销毁而关闭
+ */
+public interface LocalCacheProvider {
+
+    /**
+     * 创建cache的一级缓存
+     *
+     * @param name    cacheName
+     * @param hotKeys 热点key统计，未开启时为null；实现可据此在容量不足时优先保留热点key
+     */
+    LocalCache createCache(String name, CacheHotKeys hotKeys);
+
+    void close();
+}
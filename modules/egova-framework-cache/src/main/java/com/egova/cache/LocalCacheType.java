@@ -0,0 +1,17 @@
+package com.egova.cache;
+
+/**
+ * 一级缓存的实现
+ */
+public enum LocalCacheType
+{
+	/**
+	 * ehcache，支持堆外和磁盘层，容量不足时按LRU淘汰并保留热点key
+	 */
+	ehcache,
+
+	/**
+	 * caffeine，按W-TinyLFU淘汰，命中率通常更高，只有堆内一层，需要引入caffeine依赖
+	 */
+	caffeine
+}
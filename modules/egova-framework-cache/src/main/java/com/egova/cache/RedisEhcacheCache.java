@@ -4,23 +4,44 @@ package com.egova.cache;
 import com.egova.web.rest.ResponseResult;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
-import org.ehcache.Cache;
 import org.springframework.cache.support.AbstractValueAdaptingCache;
+import org.springframework.cache.support.NullValue;
+import org.springframework.cache.support.SimpleValueWrapper;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.connection.DefaultTuple;
+import org.springframework.data.redis.connection.ReactiveRedisConnection;
+import org.springframework.data.redis.connection.ReactiveRedisConnectionFactory;
+import org.springframework.data.redis.connection.ReactiveZSetCommands;
 import org.springframework.data.redis.connection.RedisConnection;
-import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.connection.RedisZSetCommands;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.RedisTemplate;
-import org.springframework.data.redis.core.ScanOptions;
-
-import java.io.IOException;
-import java.lang.reflect.Constructor;
+import org.springframework.data.redis.core.types.Expiration;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.util.ByteUtils;
+import reactor.core.publisher.Mono;
+
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.time.Duration;
-import java.time.LocalDateTime;
 import java.util.*;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReentrantLock;
-import java.util.function.Consumer;
 import java.util.regex.Pattern;
 
 @Slf4j
@@ -30,60 +51,274 @@ public class RedisEhcacheCache extends AbstractValueAdaptingCache {
             Pattern.compile("([-+]?)P(?:([-+]?[0-9]+)D)?" +
                             "(T(?:([-+]?[0-9]+)H)?(?:([-+]?[0-9]+)M)?(?:([-+]?[0-9]+)(?:[.,]([0-9]{0,9}))?S)?)?",
                     Pattern.CASE_INSENSITIVE);
+
+    private static final long INDEX_TRIM_INTERVAL = 60 * 1000;
+
+    private static final long GENERATION_CHECK_INTERVAL = 10 * 1000;
+
+    private static final long GENERATION_RETRY_INTERVAL = 1000;
+
+    private static final byte[] ZADD_XX = "XX".getBytes(StandardCharsets.UTF_8);
+
+    private static final RedisScript<Long> UNLOCK_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('get', KEYS[1]) == ARGV[1] then return redis.call('del', KEYS[1]) else return 0 end", Long.class);
+
+    private static final byte[] ZADD_NX = "NX".getBytes(StandardCharsets.UTF_8);
+
+    /**
+     * 不存在时写入，返回已有的值；KEYS: 缓存key，ARGV: 值、过期时间。
+     * 脚本只访问一个key，redis集群下也不会跨slot，索引的登记在同一个pipeline中完成
+     */
+    private static final byte[] PUT_IF_ABSENT_SCRIPT = ("local v = redis.call('get', KEYS[1]) if v then return v end " +
+            "redis.call('set', KEYS[1], ARGV[1], 'px', ARGV[2]) " +
+            "return false").getBytes(StandardCharsets.UTF_8);
+
     private String name;
 
     private String expireKey;
 
     private RedisTemplate<Object, Object> redisTemplate;
 
-    private org.ehcache.Cache<Object, Object> ehcacheCache;
+    /**
+     * 二级缓存值的序列化，默认与redisTemplate一致
+     */
+    private RedisSerializer<Object> valueSerializer;
+
+    private LocalCache localCache;
 
     private String cachePrefix;
 
+    /**
+     * 不带代数的key前缀 如：name:cachePrefix:
+     */
+    private String basePrefix;
+
+    /**
+     * 过长key的压缩，未开启时为null
+     */
+    private CacheKeyHasher keyHasher;
+
+    /**
+     * 压缩后的key对应的原始key（redis hash），未开启记录时为null
+     */
+    private String originalKeysKey;
+
     private CacheType cacheType;
 
     private Duration defaultExpiration = Duration.ofSeconds(5 * 60);
 
     private Map<String, Duration> expires;
 
-    private String topic = "cache:redis:ehcache:topic";
+    /**
+     * 二级缓存的过期时间，单位毫秒，构造时由expireKey解析一次
+     */
+    private long ttl;
 
-    private CacheKeys cacheKeys;
+    /**
+     * 过期时间的随机延长比例，0表示不开启
+     */
+    private double ttlJitter;
 
-    public static class CacheKeys {
-        private Set<Object> keys;
-        private LocalDateTime expireTime;
+    /**
+     * 是否在读取二级缓存时顺延过期时间
+     */
+    private boolean slidingExpiration;
 
-        public CacheKeys(Set<Object> keys ) {
-            this.keys = keys;
-            expireTime = LocalDateTime.now().minusMinutes(5);
-        }
+    private CacheMessagePublisher publisher;
 
-        private boolean expired() {
-            return LocalDateTime.now().isBefore(this.expireTime);
-        }
-    }
+    /**
+     * 消息发布器是否由本cache创建，是时关闭cache时一并关闭
+     */
+    private boolean ownedPublisher;
+
+    /**
+     * 当前cache的代数（redis中的计数器），清空时加一；二级缓存的key和索引都带有代数，旧代数的key由过期时间清理
+     */
+    private String generationKey;
+
+    /**
+     * 本节点使用的代数及对应的key前缀、索引，为null时从redis读取
+     */
+    private volatile Namespace namespace;
+
+    private final ReentrantLock namespaceLock = new ReentrantLock();
+
+    /**
+     * 停机时保存的热点key快照（redis sorted set，score为估算的读取次数）
+     */
+    private String hotKeysKey;
+
+    /**
+     * 下一次清理索引中已过期key的时间
+     */
+    private volatile long nextIndexTrimTime;
+
+    private boolean distributedLoad;
+
+    private Duration loadLockTimeout = Duration.ofSeconds(10);
+
+    private Duration loadWaitInterval = Duration.ofMillis(50);
+
+    private String metaPrefix = "cache:redis:ehcache";
+
+    /**
+     * 一级缓存的存活时间，单位毫秒
+     */
+    private long localTtl;
+
+    /**
+     * 提前刷新比例，0表示不开启
+     */
+    private double refreshAheadRatio;
+
+    /**
+     * 过期后仍可返回旧值的宽限时间，单位毫秒，0表示不开启
+     */
+    private long staleGrace;
+
+    private Executor refreshExecutor;
+
+    /**
+     * 空值的缓存时间，单位毫秒，0表示不开启空值占位
+     */
+    private long nullTtl;
+
+    /**
+     * 已存在key的布隆过滤器，未开启时为null
+     */
+    private volatile CacheBloomFilter bloomFilter;
+
+    /**
+     * 重建中的布隆过滤器，重建期间的登记同时写入，加载完成后替换bloomFilter
+     */
+    private volatile CacheBloomFilter seedingBloomFilter;
+
+    /**
+     * 热点key统计，未开启时为null
+     */
+    private CacheHotKeys hotKeys;
+
+    /**
+     * 热点key在一级缓存中的存活时间，单位毫秒，0表示与其它key相同
+     */
+    private long hotKeyLocalTtl;
+
+    private CacheCoherence coherence = CacheCoherence.topic;
+
+    /**
+     * redis熔断器，未开启时为null
+     */
+    private CacheCircuitBreaker circuitBreaker;
+
+    /**
+     * 二级缓存的延迟写入，未开启时为null
+     */
+    private CacheWriteBehind writeBehind;
+
+    /**
+     * 一级缓存是否按值存储，开启时条目中保存序列化后的快照，每个读取方拿到各自的副本
+     */
+    private boolean storeByValue;
+
+    /**
+     * 本地缓存被清理的次数，读取二级缓存期间有清理时不回填一级缓存
+     */
+    private final AtomicLong localVersion = new AtomicLong();
+
+    /**
+     * 一级缓存的代数，清空时加一，清空前开始、清空后才写入的条目视为不存在
+     */
+    private final AtomicLong localGeneration = new AtomicLong();
+
+    private final CacheMetrics metrics = new CacheMetrics();
+
+    private volatile ReactiveRedisConnection reactiveConnection;
+
+    /**
+     * 正在加载中的key，同一个key的并发加载共享同一个结果
+     */
+    private final ConcurrentMap<Object, CompletableFuture<Object>> loadings = new ConcurrentHashMap<>();
 
     protected RedisEhcacheCache(boolean allowNullValues) {
         super(allowNullValues);
     }
 
-    public RedisEhcacheCache(String name, String expireKey, RedisTemplate<Object, Object> redisTemplate, Cache<Object, Object> ehcacheCache, RedisEhcacheProperties redisEhcacheProperties) {
+    /**
+     * 使用自己的消息发布器，发布器在 {@link #close()} 时关闭
+     */
+    public RedisEhcacheCache(String name, String expireKey, RedisTemplate<Object, Object> redisTemplate, LocalCache localCache, RedisEhcacheProperties redisEhcacheProperties) {
+        this(name, expireKey, redisTemplate, localCache, redisEhcacheProperties,
+                new CacheMessagePublisher(redisTemplate, redisEhcacheProperties.getRedis()));
+        this.ownedPublisher = true;
+    }
+
+    @SuppressWarnings("unchecked")
+    public RedisEhcacheCache(String name, String expireKey, RedisTemplate<Object, Object> redisTemplate, LocalCache localCache,
+                             RedisEhcacheProperties redisEhcacheProperties, CacheMessagePublisher publisher) {
         super(redisEhcacheProperties.isCacheNullValues());
         this.name = name;
         this.expireKey = expireKey;
         this.redisTemplate = redisTemplate;
-        this.ehcacheCache = ehcacheCache;
+        this.valueSerializer = redisTemplate == null ? null : (RedisSerializer<Object>) redisTemplate.getValueSerializer();
+        this.localCache = localCache;
+        this.metrics.setLocalCache(localCache);
         this.cacheType = redisEhcacheProperties.getCacheType();
         this.cachePrefix = redisEhcacheProperties.getCachePrefix();
+        this.basePrefix = name.concat(":").concat(StringUtils.isEmpty(cachePrefix) ? "" : cachePrefix.concat(":"));
         this.defaultExpiration = redisEhcacheProperties.getRedis().getDefaultExpiration();
         this.expires = redisEhcacheProperties.getRedis().getExpires();
-        this.topic = redisEhcacheProperties.getRedis().getTopic();
+        this.ttl = resolveTtl();
+        this.publisher = publisher;
+        this.distributedLoad = redisEhcacheProperties.getRedis().isDistributedLoad();
+        this.loadLockTimeout = redisEhcacheProperties.getRedis().getLoadLockTimeout();
+        this.loadWaitInterval = redisEhcacheProperties.getRedis().getLoadWaitInterval();
+        this.metaPrefix = redisEhcacheProperties.getRedis().getMetaPrefix();
+        this.generationKey = this.metaPrefix.concat(":generation:").concat(name);
+        this.hotKeysKey = this.metaPrefix.concat(":hotkeys:").concat(name);
+        this.coherence = redisEhcacheProperties.getRedis().getCoherence();
+        if (this.cacheType == CacheType.all && redisEhcacheProperties.getRedis().getCircuitBreaker().isEnabled()) {
+            this.circuitBreaker = new CacheCircuitBreaker(name, redisEhcacheProperties.getRedis().getCircuitBreaker(), this::replayInvalidations);
+            this.metrics.setCircuitBreaker(this.circuitBreaker);
+        }
+        this.localTtl = redisEhcacheProperties.getEhcache().getExpireAfterWrite(name);
+        RedisEhcacheProperties.Policy policy = redisEhcacheProperties.getCaches().get(name);
+        if (policy != null) {
+            this.refreshAheadRatio = policy.getRefreshAheadRatio();
+            this.staleGrace = policy.getStaleGrace() == null ? 0 : policy.getStaleGrace().toMillis();
+            this.nullTtl = policy.getNullTtl() == null ? 0 : policy.getNullTtl().toMillis();
+            this.hotKeyLocalTtl = policy.getHotKeyLocalTtl() == null ? 0 : policy.getHotKeyLocalTtl().toMillis();
+            this.ttlJitter = Math.max(0, policy.getTtlJitter());
+            this.slidingExpiration = policy.isSlidingExpiration() && this.cacheType != CacheType.ehcache;
+            if (policy.getCompactKeyLength() > 0 && this.cacheType != CacheType.ehcache) {
+                this.keyHasher = new CacheKeyHasher(policy.getCompactKeyLength());
+                if (policy.isCompactKeyOriginals()) {
+                    this.originalKeysKey = this.metaPrefix.concat(":keynames:").concat(name);
+                }
+            }
+            // 堆外和磁盘层的条目要经过ehcache的序列化器，不使用快照
+            RedisEhcacheProperties.Pool pool = redisEhcacheProperties.getEhcache().getCaches().get(name);
+            boolean serialized = pool != null && (pool.getOffHeapSize() != null || pool.getDiskSize() != null);
+            this.storeByValue = policy.isStoreByValue() && this.valueSerializer != null && !serialized;
+            if (policy.isBloomFilter() && this.coherence == CacheCoherence.tracking && this.cacheType != CacheType.ehcache) {
+                // 失效通知模式不发送消息，删除不存在的key时redis也不推送通知，其它节点的过滤器登记不到新写入的key
+                log.warn("cache {} 由redis失效通知维护一致性，不支持布隆过滤器，过滤器不会生效", name);
+            } else if (policy.isBloomFilter()) {
+                this.bloomFilter = new CacheBloomFilter(policy.getBloomExpectedInsertions(), policy.getBloomFalsePositiveRate());
+            }
+            if (policy.isWriteBehind() && this.cacheType == CacheType.all) {
+                this.writeBehind = new CacheWriteBehind(name, policy, this::writeRemote);
+                this.metrics.setWriteBehind(this.writeBehind);
+            }
+        }
+        // 一级缓存的key在消息模式下就是业务key，可以直接从二级缓存刷新
+        if (localCache != null && this.cacheType == CacheType.all && this.coherence == CacheCoherence.topic) {
+            localCache.setLoader(this::reloadLocal);
+        }
     }
 
-    public RedisEhcacheCache(String name, RedisTemplate<Object, Object> redisTemplate, Cache<Object, Object> ehcacheCache, RedisEhcacheProperties redisEhcacheProperties) {
+    public RedisEhcacheCache(String name, RedisTemplate<Object, Object> redisTemplate, LocalCache localCache, RedisEhcacheProperties redisEhcacheProperties) {
 
-        this(name, name, redisTemplate, ehcacheCache, redisEhcacheProperties);
+        this(name, name, redisTemplate, localCache, redisEhcacheProperties);
     }
 
     public String getExpireKey() {
@@ -95,6 +330,53 @@ public class RedisEhcacheCache extends AbstractValueAdaptingCache {
 
     public void setExpireKey(String expireKey) {
         this.expireKey = expireKey;
+        if (this.expires != null) {
+            this.ttl = resolveTtl();
+        }
+    }
+
+    /**
+     * 设置异步刷新使用的线程池，未设置时不做提前刷新，过期值也不会作为旧值返回
+     */
+    public void setRefreshExecutor(Executor refreshExecutor) {
+        this.refreshExecutor = refreshExecutor;
+        if (this.circuitBreaker != null) {
+            this.circuitBreaker.setExecutor(refreshExecutor);
+        }
+    }
+
+    /**
+     * 设置延迟写入使用的线程，未设置时即使开启了延迟写入也同步写入
+     */
+    public void setWriteBehindScheduler(ScheduledExecutorService scheduler) {
+        if (this.writeBehind != null) {
+            this.writeBehind.start(scheduler);
+        }
+    }
+
+    /**
+     * 设置热点key统计，与一级缓存的淘汰建议是同一个对象
+     */
+    public void setHotKeys(CacheHotKeys hotKeys) {
+        this.hotKeys = hotKeys;
+    }
+
+    /**
+     * 当前的热点key，按估算的读取次数从高到低排列；未开启统计时返回空列表
+     *
+     * @param limit 最多返回的数量
+     */
+    public List<CacheHotKeys.HotKey> getHotKeys(int limit) {
+        return hotKeys == null ? Collections.emptyList() : hotKeys.getHotKeys(limit);
+    }
+
+    /**
+     * 设置二级缓存值的序列化，如 CompactRedisSerializer；为null时沿用redisTemplate的序列化
+     */
+    public void setValueSerializer(RedisSerializer<Object> valueSerializer) {
+        if (valueSerializer != null) {
+            this.valueSerializer = valueSerializer;
+        }
     }
 
     @Override
@@ -108,63 +390,256 @@ public class RedisEhcacheCache extends AbstractValueAdaptingCache {
     }
 
 
+    /**
+     * 带加载器的读取，对应 {@code @Cacheable(sync = true)}。
+     * 同一个key的并发请求只会有一个线程回源加载，其余线程等待该次加载的结果；
+     * 开启分布式加载锁后，集群内同一个key也只有一个节点回源，其余节点轮询二级缓存。
+     * 配置了读取策略时，到达刷新时间或处于过期宽限期的值直接返回，同时提交一次异步刷新。
+     */
     @Override
+    @SuppressWarnings("unchecked")
     public <T> T get(Object key, Callable<T> valueLoader) {
-        Object value = lookup(key);
-        if (value != null) {
+        if (rejected(key)) {
+            return null;
+        }
+        recordAccess(key);
+        CacheEntry entry = lookupEntry(key);
+        if (entry != null) {
+            long now = System.currentTimeMillis();
+            if (!entry.expired(now)) {
+                if (entry.refreshable(now)) {
+                    refresh(key, valueLoader, entry);
+                }
+                return (T) fromStoreValue(valueOf(entry));
+            }
+            if (this.refreshExecutor != null) {
+                refresh(key, valueLoader, entry);
+                return (T) fromStoreValue(valueOf(entry));
+            }
+        }
+        metrics.miss(1);
+
+        CompletableFuture<Object> future = new CompletableFuture<>();
+        CompletableFuture<Object> loading = loadings.putIfAbsent(key, future);
+        if (loading != null) {
+            // 已有线程在加载该key，直接等待其结果
+            try {
+                return (T) loading.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ValueRetrievalException(key, valueLoader, e);
+            } catch (ExecutionException e) {
+                throw new ValueRetrievalException(key, valueLoader, e.getCause());
+            }
+        }
+
+        try {
+            Object value = load(key, valueLoader);
+            future.complete(value);
             return (T) value;
+        } catch (Throwable e) {
+            future.completeExceptionally(e);
+            throw new ValueRetrievalException(key, valueLoader, e);
+        } finally {
+            loadings.remove(key, future);
+        }
+    }
+
+    /**
+     * 回源加载，返回的是业务值（不是存储值）
+     */
+    private Object load(Object key, Callable<?> valueLoader) throws Exception {
+        // 获得加载权之后再检查一次，避免上一次加载刚好在lookup之后完成
+        Object value = lookupValue(key);
+        if (value != null) {
+            return fromStoreValue(value);
         }
+        if (this.distributedLoad && this.cacheType != CacheType.ehcache) {
+            return loadWithLock(key, valueLoader);
+        }
+        return loadAndPut(key, valueLoader);
+    }
 
-        ReentrantLock lock = new ReentrantLock();
-        lock.lock();
+    private Object loadAndPut(Object key, Callable<?> valueLoader) throws Exception {
+        long start = System.nanoTime();
+        Object value;
         try {
-            value = lookup(key);
-            if (value != null) {
-                return (T) value;
-            }
             value = valueLoader.call();
-            Object storeValue = toStoreValue(valueLoader.call());
-            put(key, storeValue);
-            return (T) value;
         } catch (Exception e) {
+            metrics.loadFailure();
+            throw e;
+        }
+        metrics.load(System.nanoTime() - start);
+        put(key, value);
+        return value;
+    }
+
+    /**
+     * 提交异步刷新，该key已在加载或刷新中时不重复提交；线程池队列已满时放弃本次刷新，由之后的读取再次触发
+     */
+    private void refresh(Object key, Callable<?> valueLoader, CacheEntry current) {
+        Executor executor = this.refreshExecutor;
+        if (executor == null) {
+            return;
+        }
+        CompletableFuture<Object> future = new CompletableFuture<>();
+        if (loadings.putIfAbsent(key, future) != null) {
+            return;
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    future.complete(reload(key, valueLoader, current));
+                } catch (Throwable e) {
+                    log.warn("缓存异步刷新失败，key:{}", key, e);
+                    future.completeExceptionally(e);
+                } finally {
+                    loadings.remove(key, future);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            loadings.remove(key, future);
+            future.completeExceptionally(e);
+            log.debug("缓存刷新队列已满，放弃本次刷新，key:{}", key);
+        }
+    }
+
+    /**
+     * 异步刷新回源。开启分布式加载锁时只尝试一次加锁，没抢到说明其它节点正在刷新，保留当前值
+     */
+    private Object reload(Object key, Callable<?> valueLoader, CacheEntry current) throws Exception {
+        if (!this.distributedLoad || this.cacheType == CacheType.ehcache) {
+            return loadAndPut(key, valueLoader);
+        }
+        String lockKey = getLockKey(key);
+        String token = UUID.randomUUID().toString();
+        if (!tryLock(lockKey, token)) {
+            return fromStoreValue(valueOf(current));
+        }
+        try {
+            return loadAndPut(key, valueLoader);
+        } finally {
+            unlock(lockKey, token);
+        }
+    }
+
+    /**
+     * 集群内单节点加载：抢到redis锁的节点回源，其余节点轮询二级缓存直到有值或锁释放；
+     * 等待超过锁的持有时间后不再等待，直接自行加载。
+     */
+    private Object loadWithLock(Object key, Callable<?> valueLoader) throws Exception {
+        String lockKey = getLockKey(key);
+        String token = UUID.randomUUID().toString();
+        long deadline = System.currentTimeMillis() + loadLockTimeout.toMillis();
+        while (true) {
+            if (tryLock(lockKey, token)) {
+                try {
+                    Object value = lookupValue(key);
+                    if (value != null) {
+                        return fromStoreValue(value);
+                    }
+                    return loadAndPut(key, valueLoader);
+                } finally {
+                    unlock(lockKey, token);
+                }
+            }
+
             try {
-                Class<?> c = Class.forName("org.springframework.cache.Cache$ValueRetrievalException");
-                Constructor<?> constructor = c.getConstructor(Object.class, Callable.class, Throwable.class);
-                throw (RuntimeException) constructor.newInstance(key, valueLoader, e.getCause());
-            } catch (Exception e1) {
-                throw new IllegalStateException(e1);
+                Thread.sleep(loadWaitInterval.toMillis());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return loadAndPut(key, valueLoader);
             }
-        } finally {
-            lock.unlock();
+
+            Object value = lookupValue(key);
+            if (value != null) {
+                return fromStoreValue(value);
+            }
+            if (System.currentTimeMillis() > deadline) {
+                log.warn("等待其它节点加载缓存超时，本节点直接加载，key:{}", key);
+                return loadAndPut(key, valueLoader);
+            }
+        }
+    }
+
+    private String getLockKey(Object key) {
+        return this.metaPrefix.concat(":lock:").concat(getBaseKey(key));
+    }
+
+    private boolean tryLock(String lockKey, String token) {
+        if (!remoteAllowed()) {
+            // 熔断期间退化为本节点加载
+            return true;
+        }
+        long start = System.nanoTime();
+        try {
+            Boolean locked = redisTemplate.opsForValue().setIfAbsent(lockKey, token, loadLockTimeout.toMillis(), TimeUnit.MILLISECONDS);
+            remoteSucceeded(start);
+            return Boolean.TRUE.equals(locked);
+        } catch (Exception ex) {
+            remoteFailed();
+            // redis不可用时退化为本节点加载
+            log.warn("redis加载锁获取失败", ex);
+            return true;
+        }
+    }
+
+    private void unlock(String lockKey, String token) {
+        if (!remoteAllowed()) {
+            // 锁到期后自动释放
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            redisTemplate.execute(UNLOCK_SCRIPT, Collections.singletonList(lockKey), token);
+            remoteSucceeded(start);
+        } catch (Exception ex) {
+            remoteFailed();
+            log.warn("redis加载锁释放失败", ex);
         }
     }
 
     //从持久层读取value，然后存入缓存。允许value = null
     @Override
     public void put(Object key, Object value) {
-        if (!super.isAllowNullValues() && value == null) {
-            this.evict(key);
+        if (!super.isAllowNullValues() && value == null && this.nullTtl <= 0) {
+            this.remove(key);
             return;
         }
         // 检测值是否有必要缓存
         if (!checkValue(value)) {
             return;
         }
-        Duration expire = getExpire();
+        metrics.put(1);
+        if (value != null) {
+            markExisting(key);
+        }
+        Object storeValue = toStoreValue(value);
+        long expire = this.cacheType == CacheType.ehcache ? -1 : getRemoteTtl(storeValue);
 
         // redis 缓存存储策略
-        if (this.cacheType != CacheType.ehcache) {
-            log.info("redis缓存，key:{},value:{}", key, value);
-
+        if (this.writeBehind != null && this.writeBehind.offer(key, storeValue)) {
+            log.debug("redis延迟缓存，key:{},value:{}", key, value);
+        } else if (this.cacheType != CacheType.ehcache && !remoteAllowed()) {
+            deferInvalidation(key);
+        } else if (this.cacheType != CacheType.ehcache) {
+            log.debug("redis缓存，key:{},value:{}", key, value);
+
+            long start = System.nanoTime();
             try {
-                Object cacheKey = getKey(key);
-                if (expire.toMillis() > 0) {
-                    redisTemplate.opsForValue().set(cacheKey, toStoreValue(value), expire.toMillis(), TimeUnit.MILLISECONDS);
-                } else {
-                    redisTemplate.opsForValue().set(cacheKey, toStoreValue(value), defaultExpiration.toMillis(), TimeUnit.MILLISECONDS);
-                }
-                addCacheKey(cacheKey);
+                byte[] rawKey = rawKey(getKey(key));
+                byte[] rawValue = rawValue(storeValue);
+                byte[] rawIndexKey = rawKey(getIndexKey());
+                // 写值和维护索引在同一个pipeline里完成
+                redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                    connection.set(rawKey, rawValue, Expiration.milliseconds(expire), RedisStringCommands.SetOption.upsert());
+                    index(connection, rawIndexKey, rawKey, expire);
+                    recordOriginal(connection, key);
+                    return null;
+                });
+                remoteSucceeded(start);
             } catch (Exception ex) {
+                remoteFailed();
                 if (this.cacheType == CacheType.redis) {
                     throw ex;
                 }
@@ -172,186 +647,570 @@ public class RedisEhcacheCache extends AbstractValueAdaptingCache {
 
             // 通过redis推送消息，使其他服务的ehcache失效。
             // 原来的有个缺点：服务1给缓存put完KV后推送给redis的消息，服务1本身也会接收到该消息，
-            // 然后会将刚刚put的KV删除。这里把ehcacheCache的hashcode传过去，避免这个问题。
-            push(new CacheMessage(this.name, key, this.ehcacheCache.hashCode()));
-            if (value == null) {
-                return;
-            }
+            // 然后会将刚刚put的KV删除。这里把localCache的hashcode传过去，避免这个问题。
+            push(new CacheMessage(this.name, key, this.localCache.hashCode()));
         }
 
         if (this.cacheType != CacheType.redis) {
-            log.info("ehcache缓层，key:{},value:{}", key, value);
-            ehcacheCache.put(key, value);
+            log.debug("ehcache缓层，key:{},value:{}", key, value);
+            localCache.put(localKey(key), newEntry(key, storeValue, expire));
         }
     }
 
     /**
-     * key的生成 如：name:cachePrefix:key
+     * 二级缓存key的生成 如：name:cachePrefix:key，清空过的cache为 name:g{代数}:cachePrefix:key，开启压缩时key为压缩后的形式
      *
      * @param key
      * @return
      */
     private Object getKey(Object key) {
-        return this.name.concat(":").concat(StringUtils.isEmpty(cachePrefix) ? key.toString() : cachePrefix.concat(":").concat(key.toString()));
+        return getNamespace().keyPrefix.concat(encode(key));
     }
 
-    private Duration getExpire() {
-
-        Duration expire = defaultExpiration;
-        Duration cacheNameExpire = expires.get(this.getExpireKey());
-        if (DURATION_PATTERN.matcher(this.getExpireKey()).matches()) {
-            return Duration.parse(this.getExpireKey());
-        }
-        return cacheNameExpire == null ? expire : cacheNameExpire;
+    /**
+     * 不带代数的key 如：name:cachePrefix:key，用于失效通知模式下一级缓存的key、布隆过滤器和加载锁
+     */
+    private String getBaseKey(Object key) {
+        return this.basePrefix.concat(encode(key));
     }
 
+    /**
+     * redis中使用的key，开启压缩时过长的key替换为 前缀#哈希
+     */
+    private String encode(Object key) {
+        String text = key.toString();
+        return this.keyHasher == null ? text : this.keyHasher.encode(text);
+    }
 
-    @Override
-    public ValueWrapper putIfAbsent(Object key, Object value) {
-        Object cacheKey = getKey(key);
-        Object prevValue = null;
+    /**
+     * 在pipeline中记录压缩后的key对应的原始key，已有的记录不覆盖；记录的保留时间随最后一次写入顺延
+     */
+    private void recordOriginal(RedisConnection connection, Object key) {
+        if (this.originalKeysKey == null) {
+            return;
+        }
+        String original = key.toString();
+        String encoded = this.keyHasher.encode(original);
+        if (encoded.equals(original)) {
+            return;
+        }
+        byte[] rawOriginalKeysKey = rawKey(this.originalKeysKey);
+        connection.hSetNX(rawOriginalKeysKey, rawKey(encoded), rawKey(original));
+        connection.pExpire(rawOriginalKeysKey, getMaxRemoteTtl());
+    }
 
-        // 检测值是否有必要缓存
-        if (!checkValue(value)) {
-            return toValueWrapper(null);
+    /**
+     * 压缩后的key对应的原始key，没有记录时返回null
+     *
+     * @param compactKey 压缩后的key，不带cache名称和代数
+     */
+    public String getOriginalKey(String compactKey) {
+        if (this.originalKeysKey == null) {
+            return null;
         }
+        byte[] rawOriginalKeysKey = rawKey(this.originalKeysKey);
+        byte[] rawField = rawKey(compactKey);
+        byte[] value = redisTemplate.execute((RedisCallback<byte[]>) connection -> connection.hGet(rawOriginalKeysKey, rawField));
+        Object original = value == null ? null : redisTemplate.getKeySerializer().deserialize(value);
+        return original == null ? null : original.toString();
+    }
 
-        // 考虑使用分布式锁，或者将redis的setIfAbsent改为原子性操作
-        synchronized (key) {
-            boolean isAbsent = false;
+    /**
+     * 当前代数的key索引（redis sorted set，score为过期时间）
+     */
+    private String getIndexKey() {
+        return getNamespace().indexKey;
+    }
 
-            if (this.cacheType != CacheType.ehcache) {
-                try {
-                    prevValue = redisTemplate.opsForValue().get(cacheKey);
-
-                    if (prevValue == null) {
-                        Duration expire = getExpire();
-                        log.info("插入redis库，key:{},value:{}", key, value);
-
-                        if (expire.toMillis() > 0) {
-                            redisTemplate.opsForValue().setIfAbsent(cacheKey, toStoreValue(value), expire.toMillis(), TimeUnit.MILLISECONDS);
-                        } else {
-                            redisTemplate.opsForValue().setIfAbsent(cacheKey, toStoreValue(value), defaultExpiration.toMillis(), TimeUnit.MILLISECONDS);
-                        }
-                        isAbsent = true;
-                    }
-                    this.addCacheKey(cacheKey);
-                } catch (Exception ex) {
-                    if (this.cacheType == CacheType.redis) {
+    /**
+     * 当前的代数。首次使用时从redis读取；之后每隔一段时间由一个线程重新读取，错过清空消息的节点也能切换到新的代数，
+     * 其余线程在读取期间沿用当前的代数；收到清空消息后其余线程等待读取完成，避免读到旧代数的值。
+     * 读取受熔断器控制，熔断或读取失败时沿用已知的代数，稍后重试
+     */
+    private Namespace getNamespace() {
+        Namespace namespace = this.namespace;
+        if (namespace != null && System.currentTimeMillis() < namespace.checkTime) {
+            return namespace;
+        }
+        if (namespace == null || namespace.checkTime == 0) {
+            namespaceLock.lock();
+        } else if (!namespaceLock.tryLock()) {
+            return namespace;
+        }
+        try {
+            Namespace current = this.namespace;
+            if (current != null && System.currentTimeMillis() < current.checkTime) {
+                return current;
+            }
+            long generation;
+            if (this.cacheType == CacheType.ehcache) {
+                generation = 0;
+            } else if (current != null && !remoteAllowed()) {
+                current = current.retryLater();
+                this.namespace = current;
+                return current;
+            } else {
+                long start = System.nanoTime();
+                try {
+                    generation = readGeneration();
+                    remoteSucceeded(start);
+                } catch (RuntimeException ex) {
+                    remoteFailed();
+                    if (current == null) {
+                        // 还没有已知的代数，无法确定key，由调用方按redis异常处理
                         throw ex;
-                    } else {
-                        log.warn("redis缓存操作异常", ex);
                     }
+                    log.warn("读取缓存代数失败，沿用当前代数，cacheName:{}, generation:{}", this.name, current.generation, ex);
+                    current = current.retryLater();
+                    this.namespace = current;
+                    return current;
                 }
             }
-
-            if (this.cacheType != CacheType.redis) {
-                prevValue = ehcacheCache.get(cacheKey);
-                if (prevValue == null) {
-                    log.info("插入ehcache库，key:{},value:{}", key, value);
-                    ehcacheCache.putIfAbsent(key, toStoreValue(value));
-                    isAbsent = true;
-                }
+            if (current != null && current.generation != generation) {
+                log.info("cache已被其它节点清空，切换代数，cacheName:{}, generation:{}", this.name, generation);
+                dropLocal();
             }
-            if (isAbsent) {
-                push(new CacheMessage(this.name, key, this.ehcacheCache.hashCode()));
+            current = newNamespace(generation);
+            this.namespace = current;
+            return current;
+        } finally {
+            namespaceLock.unlock();
+        }
+    }
+
+    private long readGeneration() {
+        byte[] rawGenerationKey = rawKey(this.generationKey);
+        byte[] value = redisTemplate.execute((RedisCallback<byte[]>) connection -> connection.get(rawGenerationKey));
+        return value == null ? 0 : Long.parseLong(new String(value, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 第0代（从未清空过的cache）沿用旧版本的key和索引：name:cachePrefix:key、metaPrefix:keys:name，
+     * 升级前写入的值仍然有效，滚动升级期间新旧节点读写同一份数据；清空后代数加一，key中带上代数
+     */
+    private Namespace newNamespace(long generation) {
+        String keyPrefix = this.basePrefix;
+        String indexKey = this.metaPrefix.concat(":keys:").concat(this.name);
+        if (generation != 0) {
+            String segment = ":g" + generation;
+            keyPrefix = this.name.concat(segment).concat(":").concat(StringUtils.isEmpty(cachePrefix) ? "" : cachePrefix.concat(":"));
+            indexKey = indexKey.concat(segment);
+        }
+        long checkTime = this.cacheType == CacheType.ehcache ? Long.MAX_VALUE : System.currentTimeMillis() + GENERATION_CHECK_INTERVAL;
+        return new Namespace(generation, keyPrefix, indexKey, checkTime);
+    }
+
+    /**
+     * 清空二级缓存：代数加一，之后的读写都使用新代数的key
+     */
+    private void nextGeneration() {
+        byte[] rawGenerationKey = rawKey(this.generationKey);
+        Long generation = redisTemplate.execute((RedisCallback<Long>) connection -> connection.incr(rawGenerationKey));
+        namespaceLock.lock();
+        try {
+            this.namespace = newNamespace(generation == null ? 0 : generation);
+        } finally {
+            namespaceLock.unlock();
+        }
+    }
+
+    /**
+     * 标记本节点的代数需要重新读取，读取失败时仍沿用当前的代数
+     */
+    private void resetGeneration() {
+        namespaceLock.lock();
+        try {
+            Namespace current = this.namespace;
+            if (current != null) {
+                this.namespace = current.refreshNow();
             }
+        } finally {
+            namespaceLock.unlock();
+        }
+    }
+
+    /**
+     * 清空一级缓存。先将代数加一，清空期间仍在读取的线程随后写入的旧条目也视为不存在
+     */
+    private void dropLocal() {
+        localVersion.incrementAndGet();
+        localGeneration.incrementAndGet();
+        localCache.clear();
+    }
+
+    /**
+     * 一级缓存中的条目，清空之前写入的条目视为不存在
+     */
+    private CacheEntry current(Object value) {
+        CacheEntry entry = (CacheEntry) value;
+        return entry != null && entry.getGeneration() == localGeneration.get() ? entry : null;
+    }
+
+    private Duration getExpire() {
+
+        Duration expire = defaultExpiration;
+        Duration cacheNameExpire = expires.get(this.getExpireKey());
+        if (DURATION_PATTERN.matcher(this.getExpireKey()).matches()) {
+            return Duration.parse(this.getExpireKey());
+        }
+        return cacheNameExpire == null ? expire : cacheNameExpire;
+    }
+
+    /**
+     * 解析二级缓存的过期时间，单位毫秒；只在构造和修改expireKey时调用
+     */
+    private long resolveTtl() {
+        Duration expire = getExpire();
+        return expire.toMillis() > 0 ? expire.toMillis() : defaultExpiration.toMillis();
+    }
+
+    /**
+     * 二级缓存的过期时间，单位毫秒
+     */
+    private long getTtl() {
+        return this.ttl;
+    }
+
+    /**
+     * 在过期时间上随机增加0到ttlJitter比例的时间，只延长不缩短，配置的过期时间仍是下限
+     */
+    private long jitter(long ttl) {
+        if (this.ttlJitter <= 0) {
+            return ttl;
+        }
+        return ttl + (long) (ThreadLocalRandom.current().nextDouble() * ttl * this.ttlJitter);
+    }
+
+    private boolean isRefreshable() {
+        return refreshAheadRatio > 0 || staleGrace > 0;
+    }
+
+    /**
+     * 是否为空值占位，占位只保留较短的时间，也不参与提前刷新
+     */
+    private boolean isNullSentinel(Object storeValue) {
+        return this.nullTtl > 0 && storeValue instanceof NullValue;
+    }
+
+    /**
+     * 写入二级缓存的过期时间，单位毫秒，包含过期后的宽限时间
+     */
+    private long getRemoteTtl(Object storeValue) {
+        return isNullSentinel(storeValue) ? this.nullTtl : jitter(getTtl()) + staleGrace;
+    }
+
+    /**
+     * 空值占位的一级缓存条目，无论从哪一级读到，一级缓存中都不超过空值的缓存时间
+     */
+    private CacheEntry nullEntry(Object storeValue, long now) {
+        return new CacheEntry(storeValue, Long.MAX_VALUE, Long.MAX_VALUE, now + Math.min(this.nullTtl, localTtl), localGeneration.get());
+    }
+
+    /**
+     * 新写入的值对应的一级缓存条目，只有一级缓存时以一级缓存的存活时间作为值的过期时间
+     */
+    private CacheEntry newEntry(Object key, Object storeValue) {
+        return newEntry(key, storeValue, -1);
+    }
+
+    /**
+     * @param remoteTtl 本次写入二级缓存的过期时间（含宽限时间），单位毫秒；没有写入二级缓存时为-1
+     */
+    private CacheEntry newEntry(Object key, Object storeValue, long remoteTtl) {
+        long now = System.currentTimeMillis();
+        if (isNullSentinel(storeValue)) {
+            return nullEntry(storeValue, now);
+        }
+        boolean pinned = isPinned(key);
+        long localTtl = pinned ? this.hotKeyLocalTtl : jitter(this.localTtl);
+        long remoteEvictTime = remoteTtl < 0 || pinned ? Long.MAX_VALUE : now + remoteTtl;
+        if (!isRefreshable()) {
+            return localEntry(storeValue, false, Long.MAX_VALUE, Long.MAX_VALUE, now, localTtl, remoteEvictTime);
+        }
+        long ttl = this.cacheType == CacheType.ehcache ? localTtl : remoteTtl < 0 ? getTtl() : remoteTtl - staleGrace;
+        long refreshTime = refreshAheadRatio > 0 ? now + (long) (ttl * refreshAheadRatio) : Long.MAX_VALUE;
+        return localEntry(storeValue, false, refreshTime, now + ttl, now, localTtl, remoteEvictTime);
+    }
+
+    /**
+     * 由二级缓存的剩余过期时间还原值的刷新和过期时间，一级缓存的存活时间不超过二级缓存的剩余时间
+     */
+    private CacheEntry remoteEntry(Object key, Object storeValue, Long pttl, long now) {
+        if (isNullSentinel(storeValue)) {
+            return nullEntry(storeValue, now);
+        }
+        boolean pinned = isPinned(key);
+        long localTtl = pinned ? this.hotKeyLocalTtl : jitter(this.localTtl);
+        boolean known = pttl != null && pttl >= 0;
+        long remoteEvictTime = !known || pinned ? Long.MAX_VALUE : now + pttl;
+        if (!isRefreshable() || !known) {
+            return localEntry(storeValue, true, Long.MAX_VALUE, Long.MAX_VALUE, now, localTtl, remoteEvictTime);
+        }
+        long ttl = getTtl();
+        long expireTime = now + pttl - staleGrace;
+        long refreshTime = refreshAheadRatio > 0 ? expireTime - ttl + (long) (ttl * refreshAheadRatio) : Long.MAX_VALUE;
+        return localEntry(storeValue, true, refreshTime, expireTime, now, localTtl, remoteEvictTime);
+    }
+
+    /**
+     * 一级缓存条目在值过期并经过宽限期后移除；有二级缓存时，存活时间不超过一级缓存的配置，也不超过二级缓存的剩余时间，
+     * 避免二级缓存过期后一级缓存仍长时间保留旧值
+     *
+     * @param owned 值是否只被本次读取持有（从二级缓存刚反序列化出的对象），按值存储时可以直接交给第一个读取方
+     */
+    private CacheEntry localEntry(Object storeValue, boolean owned, long refreshTime, long expireTime, long now, long localTtl, long remoteEvictTime) {
+        long evictTime = expireTime == Long.MAX_VALUE ? Long.MAX_VALUE : expireTime + staleGrace;
+        if (this.cacheType != CacheType.ehcache || expireTime == Long.MAX_VALUE) {
+            evictTime = Math.min(evictTime, now + localTtl);
+        }
+        return new CacheEntry(freeze(storeValue, owned), refreshTime, expireTime, Math.min(evictTime, remoteEvictTime), localGeneration.get());
+    }
+
+    /**
+     * 按值存储时把值转为序列化后的快照；null、空值和不可变的基本类型不会被修改，原样保存；只有redis缓存时条目不会进入一级缓存
+     */
+    private Object freeze(Object storeValue, boolean owned) {
+        if (!this.storeByValue || this.cacheType == CacheType.redis || storeValue == null || storeValue instanceof NullValue || isImmutable(storeValue)) {
+            return storeValue;
+        }
+        return new CacheValueSnapshot(rawValue(storeValue), owned ? storeValue : null);
+    }
+
+    private static boolean isImmutable(Object value) {
+        return value instanceof String || value instanceof Boolean || value instanceof Character || value instanceof Enum
+                || value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte
+                || value instanceof Double || value instanceof Float;
+    }
+
+    /**
+     * 一级缓存条目中的存储值，按值存储时每次返回一个读取方独有的副本
+     */
+    private Object valueOf(CacheEntry entry) {
+        Object value = entry.getValue();
+        return value instanceof CacheValueSnapshot ? ((CacheValueSnapshot) value).copy(valueSerializer) : value;
+    }
+
+    /**
+     * 热点key使用单独配置的一级缓存存活时间，不受二级缓存剩余时间的限制
+     */
+    private boolean isPinned(Object key) {
+        return this.hotKeys != null && this.hotKeyLocalTtl > 0 && this.hotKeys.isHot(localKey(key));
+    }
+
+    private void recordAccess(Object key) {
+        if (this.hotKeys != null) {
+            this.hotKeys.record(localKey(key));
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private byte[] rawKey(Object key) {
+        return ((RedisSerializer<Object>) redisTemplate.getKeySerializer()).serialize(key);
+    }
+
+    private byte[] rawValue(Object value) {
+        return valueSerializer.serialize(value);
+    }
+
+    /**
+     * 在pipeline中把key登记到索引，索引本身的过期时间顺延为可能的最长过期时间，不会因为一次较短的写入而早于其中的key过期；
+     * 每分钟顺带清理一次索引中已过期的key。索引key在pipeline之外取得，pipeline中不再读取代数
+     */
+    private void index(RedisConnection connection, byte[] rawIndexKey, byte[] rawKey, long ttl) {
+        long now = System.currentTimeMillis();
+        connection.zAdd(rawIndexKey, now + ttl, rawKey);
+        connection.pExpire(rawIndexKey, getIndexTtl(ttl));
+        if (now >= nextIndexTrimTime) {
+            nextIndexTrimTime = now + INDEX_TRIM_INTERVAL;
+            connection.zRemRangeByScore(rawIndexKey, 0, now);
         }
-        return toValueWrapper(prevValue);
     }
 
+
+    /**
+     * 不存在时写入，返回已有的值。
+     * 有二级缓存时以redis为准，判断和写入由一个lua脚本完成，与登记索引、记录原始key在同一个pipeline中，只有一次往返；
+     * 只有一级缓存或redis不可用时，由一级缓存原子地判断和写入。不在JVM内对key加锁
+     */
     @Override
-    public void evict(Object key) {
-        if (this.cacheType != CacheType.ehcache) {
-            log.info("删除redis库，key:{}", key);
+    public ValueWrapper putIfAbsent(Object key, Object value) {
+        // 检测值是否有必要缓存
+        if (!checkValue(value)) {
+            return toValueWrapper(null);
+        }
+        Object storeValue = toStoreValue(value);
+        long expire = this.cacheType == CacheType.ehcache ? -1 : getRemoteTtl(storeValue);
+
+        if (this.writeBehind != null) {
+            Object pending = this.writeBehind.get(key);
+            if (pending != null && pending != CacheWriteBehind.REMOVED) {
+                // 尚未写入二级缓存的值以缓冲为准
+                return toValueWrapper(pending);
+            }
+        }
+
+        boolean remote = this.cacheType != CacheType.ehcache && remoteAllowed();
+        if (remote) {
+            long start = System.nanoTime();
             try {
-                Object cacheKey = getKey(key);
-                // 先清除redis中缓存数据，然后清除ehcache中的缓存，避免短时间内如果先清除ehcache缓存后其他请求会再从redis里加载到ehcache中
-                redisTemplate.delete(cacheKey);
-                this.delCacheKey(key);
+                Object prevValue = putIfAbsentRemote(key, storeValue, expire);
+                remoteSucceeded(start);
+                if (prevValue != null) {
+                    return toValueWrapper(prevValue);
+                }
+                log.debug("插入redis库，key:{},value:{}", key, value);
+                recordPut(key, value);
+                push(new CacheMessage(this.name, key, this.localCache.hashCode()));
+                if (this.cacheType != CacheType.redis) {
+                    localCache.put(localKey(key), newEntry(key, storeValue, expire));
+                }
+                return toValueWrapper(null);
             } catch (Exception ex) {
+                remoteFailed();
                 if (this.cacheType == CacheType.redis) {
                     throw ex;
                 } else {
                     log.warn("redis缓存操作异常", ex);
                 }
             }
+        }
+        if (this.cacheType == CacheType.redis) {
+            return toValueWrapper(null);
+        }
 
-            push(new CacheMessage(this.name, key, this.ehcacheCache.hashCode()));
+        CacheEntry entry = newEntry(key, storeValue, expire);
+        Object prevValue = localCache.putIfAbsent(localKey(key), entry);
+        if (prevValue != null) {
+            CacheEntry prevEntry = current(prevValue);
+            if (prevEntry != null) {
+                return toValueWrapper(valueOf(prevEntry));
+            }
+            // 清空之前的条目视为不存在
+            localCache.put(localKey(key), entry);
         }
-        if (this.cacheType != CacheType.redis) {
-            log.info("删除ehcache库，key:{}", key);
-            ehcacheCache.remove(key);
+        log.debug("插入ehcache库，key:{},value:{}", key, value);
+        recordPut(key, value);
+        if (this.cacheType != CacheType.ehcache && !remote) {
+            deferInvalidation(key);
+        } else {
+            push(new CacheMessage(this.name, key, this.localCache.hashCode()));
         }
+        return toValueWrapper(null);
     }
 
     /**
-     * scan 实现
-     *
-     * @param pattern  表达式
-     * @param consumer 对迭代到的key进行操作
+     * putIfAbsent写入成功后的统计和布隆过滤器登记
      */
-    public void scan(String pattern, Consumer<byte[]> consumer) {
-        this.redisTemplate.execute((RedisConnection connection) -> {
-            try (Cursor<byte[]> cursor = connection.scan(ScanOptions.scanOptions().count(Long.MAX_VALUE).match(pattern).build())) {
-                cursor.forEachRemaining(consumer);
-                return null;
-            } catch (IOException e) {
-                e.printStackTrace();
-                throw new RuntimeException(e);
-            }
-        });
+    private void recordPut(Object key, Object value) {
+        metrics.put(1);
+        if (value != null) {
+            markExisting(key);
+        }
     }
 
     /**
-     * 获取符合条件的key
-     *
-     * @return
+     * 二级缓存中不存在时写入并登记索引，返回已有的存储值，不存在时返回null。
+     * 索引用ZADD NX登记，key已存在时不改变其中的过期时间；原始key的记录本身不会覆盖已有记录，两者都不依赖脚本的结果。
+     * 脚本在pipeline中以EVAL发送，不经过EVALSHA，避免pipeline中无法处理NOSCRIPT
      */
-    public Set<Object> cacheKeys() {
-        if (this.cacheKeys == null || this.cacheKeys.expired()) {
-            synchronized (this) {
-                Set<Object> keys = new HashSet<>();
-                this.scan(this.name.concat(":*"), item -> {
-                    //符合条件的key
-                    String key = new String(item, StandardCharsets.UTF_8);
-                    keys.add(key);
-                });
-                this.cacheKeys = new CacheKeys(keys);
-            }
-        }
-        return cacheKeys.keys;
+    private Object putIfAbsentRemote(Object key, Object storeValue, long expire) {
+        byte[] rawKey = rawKey(getKey(key));
+        byte[] rawValue = rawValue(storeValue);
+        byte[] ttl = String.valueOf(expire).getBytes(StandardCharsets.UTF_8);
+        byte[] score = String.valueOf(System.currentTimeMillis() + expire).getBytes(StandardCharsets.UTF_8);
+        byte[] rawIndexKey = rawKey(getIndexKey());
+        List<Object> results = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            connection.eval(PUT_IF_ABSENT_SCRIPT, ReturnType.VALUE, 1, rawKey, rawValue, ttl);
+            connection.execute("ZADD", rawIndexKey, ZADD_NX, score, rawKey);
+            connection.pExpire(rawIndexKey, getIndexTtl(expire));
+            recordOriginal(connection, key);
+            return null;
+        }, valueSerializer);
+        return results.get(0);
     }
 
-    public void addCacheKey(Object cacheKey) {
-        this.cacheKeys().add(cacheKey);
+    /**
+     * 删除缓存。数据新增后也应当删除对应的key，以清除空值占位，并把key登记到各节点的布隆过滤器
+     */
+    @Override
+    public void evict(Object key) {
+        markExisting(key);
+        remove(key);
     }
 
-    public void delCacheKey(Object cacheKey) {
-        this.cacheKeys().remove(cacheKey);
-    }
+    private void remove(Object key) {
+        metrics.evict();
+        if (this.writeBehind != null && this.writeBehind.offer(key, CacheWriteBehind.REMOVED)) {
+            log.debug("redis延迟删除，key:{}", key);
+        } else if (this.cacheType != CacheType.ehcache && !remoteAllowed()) {
+            deferInvalidation(key);
+        } else if (this.cacheType != CacheType.ehcache) {
+            log.debug("删除redis库，key:{}", key);
+            long start = System.nanoTime();
+            try {
+                byte[] rawKey = rawKey(getKey(key));
+                byte[] rawIndexKey = rawKey(getIndexKey());
+                // 先清除redis中缓存数据，然后清除ehcache中的缓存，避免短时间内如果先清除ehcache缓存后其他请求会再从redis里加载到ehcache中
+                redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                    connection.del(rawKey);
+                    connection.zRem(rawIndexKey, rawKey);
+                    return null;
+                });
+                remoteSucceeded(start);
+            } catch (Exception ex) {
+                remoteFailed();
+                if (this.cacheType == CacheType.redis) {
+                    throw ex;
+                } else {
+                    log.warn("redis缓存操作异常", ex);
+                }
+            }
 
+            push(new CacheMessage(this.name, key, this.localCache.hashCode()));
+        }
+        if (this.cacheType != CacheType.redis) {
+            log.debug("删除ehcache库，key:{}", key);
+            localCache.remove(localKey(key));
+        }
+    }
 
-    public void clearCacheKeys() {
-        synchronized (this) {
-            this.cacheKeys = null;
+    /**
+     * 获取当前cache在redis中未过期的key
+     *
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+    public Set<Object> cacheKeys() {
+        byte[] rawIndexKey = rawKey(getIndexKey());
+        Set<byte[]> members = redisTemplate.execute((RedisCallback<Set<byte[]>>) connection ->
+                connection.zRangeByScore(rawIndexKey, RedisZSetCommands.Range.range().gte(System.currentTimeMillis())));
+        Set<Object> keys = new LinkedHashSet<>();
+        if (members != null) {
+            RedisSerializer<Object> keySerializer = (RedisSerializer<Object>) redisTemplate.getKeySerializer();
+            for (byte[] member : members) {
+                keys.add(keySerializer.deserialize(member));
+            }
         }
+        return keys;
     }
 
     @Override
     public void clear() {
-        if (this.cacheType != CacheType.ehcache) {
+        if (this.writeBehind != null) {
+            // 丢弃尚未写入的数据，避免清空后再写入
+            this.writeBehind.discard();
+        }
+        if (this.cacheType != CacheType.ehcache && !remoteAllowed()) {
+            this.circuitBreaker.deferClear();
+        } else if (this.cacheType != CacheType.ehcache) {
+            long start = System.nanoTime();
             try {
-                // 先清除redis中缓存数据，然后清除ehcache中的缓存，避免短时间内如果先清除ehcache缓存后其他请求会再从redis里加载到ehcache中
-                Set<Object> keys = this.cacheKeys();
-                if (keys != null && keys.size() > 0) {
-                    for (Object key : keys) {
-                        redisTemplate.delete(key);
-                    }
-                    this.clearCacheKeys();
-                }
-
+                // 先切换redis中的代数，然后清除ehcache中的缓存，避免短时间内如果先清除ehcache缓存后其他请求会再从redis里加载到ehcache中
+                nextGeneration();
+                remoteSucceeded(start);
             } catch (Exception ex) {
+
+                remoteFailed();
                 if (this.cacheType == CacheType.redis) {
                     throw ex;
                 } else {
@@ -362,35 +1221,70 @@ public class RedisEhcacheCache extends AbstractValueAdaptingCache {
             push(new CacheMessage(this.name, null, null));
         }
         if (this.cacheType != CacheType.redis) {
-            ehcacheCache.clear();
+            dropLocal();
         }
     }
 
     // 获根据key取缓存,如果返回null，则要读取持久层
     @Override
     protected Object lookup(Object key) {
-        Object cacheKey = getKey(key);
-        Object value = null;
+        if (rejected(key)) {
+            // 按缓存了null返回，调用方不会再回源
+            return NullValue.INSTANCE;
+        }
+        recordAccess(key);
+        Object value = lookupValue(key);
+        if (value == null) {
+            metrics.miss(1);
+        }
+        return value;
+    }
+
+    private Object lookupValue(Object key) {
+        CacheEntry entry = lookupEntry(key);
+        // 已过期的旧值只在带加载器的读取中返回
+        if (entry == null || entry.expired(System.currentTimeMillis())) {
+            return null;
+        }
+        return valueOf(entry);
+    }
 
+    private CacheEntry lookupEntry(Object key) {
         if (this.cacheType != CacheType.redis) {
-            value = ehcacheCache.get(key);
-            if (value != null) {
-                return value;
+            CacheEntry entry = current(localCache.get(localKey(key)));
+            if (entry != null) {
+                metrics.localHit();
+                return entry;
             }
+            metrics.localMiss();
         }
 
-        if (this.cacheType != CacheType.ehcache) {
+        if (this.writeBehind != null) {
+            Object storeValue = this.writeBehind.get(key);
+            if (storeValue != null) {
+                // 尚未写入二级缓存的值以缓冲为准
+                return storeValue == CacheWriteBehind.REMOVED ? null : newEntry(key, storeValue);
+            }
+        }
+
+        if (this.cacheType != CacheType.ehcache && remoteAllowed()) {
+            long start = System.nanoTime();
             try {
-                value = redisTemplate.opsForValue().get(cacheKey);
-                if (value != null) {
-                    this.addCacheKey(cacheKey);
-                    if (this.cacheType != CacheType.redis) {
+                long version = localVersion.get();
+                CacheEntry entry = lookupRemote(Collections.singletonList(key)).get(0);
+                remoteSucceeded(start);
+                if (entry == null) {
+                    metrics.remoteMiss();
+                } else {
+                    metrics.remoteHit();
+                    if (this.cacheType != CacheType.redis && localVersion.get() == version) {
                         // 将二级缓存重新复制到一级缓存。原理是最近访问的key很可能再次被访问
-                        ehcacheCache.put(key, value);
+                        localCache.put(localKey(key), entry);
                     }
-                    return value;
+                    return entry;
                 }
             } catch (Exception ex) {
+                remoteFailed();
                 if (this.cacheType == CacheType.redis) {
                     throw ex;
                 } else {
@@ -399,60 +1293,1128 @@ public class RedisEhcacheCache extends AbstractValueAdaptingCache {
             }
         }
 
-        log.info("can not get data from cache , the key is : {}", cacheKey);
-        return value;
+        log.debug("can not get data from cache {}, the key is : {}", this.name, key);
+        return null;
     }
 
-
     /**
-     * 缓存变更时，利用redis的消息订阅功能，通知其他节点清理本地缓存。
-     *
-     * @param message
+     * 从二级缓存批量读取，未命中的位置为null。
+     * 值和剩余过期时间在同一个pipeline中读取，剩余时间用于还原刷新时间，并限制一级缓存的存活时间；
+     * 滑动过期时以PEXPIRE代替PTTL顺延过期时间，同时顺延索引，空值占位随后恢复为空值的缓存时间
      */
-    private void push(CacheMessage message) {
-        try {
-            redisTemplate.convertAndSend(topic, message);
-        } catch (Exception ex) {
-            if (this.cacheType == CacheType.redis) {
-                throw ex;
-            } else {
-                log.warn("redis缓存操作异常", ex);
+    private List<CacheEntry> lookupRemote(List<?> keys) {
+        byte[][] rawKeys = new byte[keys.size()][];
+        for (int i = 0; i < rawKeys.length; i++) {
+            rawKeys[i] = rawKey(getKey(keys.get(i)));
+        }
+        long now = System.currentTimeMillis();
+        long[] slides = this.slidingExpiration ? new long[rawKeys.length] : null;
+        byte[] rawIndexKey = this.slidingExpiration ? rawKey(getIndexKey()) : null;
+        List<Object> results = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (int i = 0; i < rawKeys.length; i++) {
+                connection.get(rawKeys[i]);
+                if (slides == null) {
+                    connection.pTtl(rawKeys[i]);
+                } else {
+                    slides[i] = jitter(getTtl()) + staleGrace;
+                    connection.pExpire(rawKeys[i], slides[i]);
+                }
+            }
+            if (slides != null) {
+                slideIndex(connection, rawIndexKey, rawKeys, slides, now);
             }
+            return null;
+        }, valueSerializer);
+
+        List<CacheEntry> entries = new ArrayList<>(rawKeys.length);
+        List<byte[]> sentinels = new ArrayList<>();
+        for (int i = 0; i < rawKeys.length; i++) {
+            Object value = results.get(2 * i);
+            Object ttl = results.get(2 * i + 1);
+            Long pttl = slides == null ? (Long) ttl : Boolean.TRUE.equals(ttl) ? Long.valueOf(slides[i]) : null;
+            if (slides != null && isNullSentinel(value)) {
+                sentinels.add(rawKeys[i]);
+            }
+            entries.add(value == null ? null : remoteEntry(keys.get(i), value, pttl, now));
+        }
+        if (!sentinels.isEmpty()) {
+            redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                for (byte[] rawKey : sentinels) {
+                    connection.pExpire(rawKey, this.nullTtl);
+                }
+                return null;
+            });
         }
+        return entries;
     }
 
     /**
-     * 清理本地缓存
-     *
-     * @param key
+     * 滑动过期时在pipeline中顺延索引中的过期时间。ZADD XX只更新已登记的key，未命中的key不会登记到索引
      */
-    public void clearLocal(Object key) {
-        log.debug("clear local cache, the key is : {}", key);
-        if (key == null) {
-            ehcacheCache.clear();
-        } else {
-            ehcacheCache.remove(key);
+    private void slideIndex(RedisConnection connection, byte[] rawIndexKey, byte[][] rawKeys, long[] slides, long now) {
+        for (int i = 0; i < rawKeys.length; i++) {
+            byte[] score = String.valueOf(now + slides[i]).getBytes(StandardCharsets.UTF_8);
+            connection.execute("ZADD", rawIndexKey, ZADD_XX, score, rawKeys[i]);
         }
+        connection.pExpire(rawIndexKey, getMaxRemoteTtl());
     }
 
-    public Cache<Object, Object> getLocalCache() {
-        return ehcacheCache;
+    /**
+     * 二级缓存可能的最长过期时间，包含随机延长和宽限时间
+     */
+    private long getMaxRemoteTtl() {
+        return getTtl() + (long) (getTtl() * this.ttlJitter) + staleGrace;
     }
 
+    /**
+     * 索引的过期时间，不短于本次写入的key
+     */
+    private long getIndexTtl(long ttl) {
+        return Math.max(getMaxRemoteTtl(), ttl);
+    }
 
     /**
-     * 检测值是否有必要缓存
+     * 一级缓存条目的后台刷新，从二级缓存重新读取；读取期间本地缓存被清理过时返回null，由一级缓存移除该条目
      *
-     * @param value 检测对象
-     * @return
+     * @param key 一级缓存的key
      */
-    public boolean checkValue(Object value) {
-        if (value == null) {
-            return true;
+    private Object reloadLocal(Object key) {
+        if (!remoteAllowed()) {
+            // 熔断期间保留当前条目
+            return localCache.get(key);
         }
-        if (value instanceof ResponseResult) {
-            return !((ResponseResult) value).getHasError();
+        long version = localVersion.get();
+        long start = System.nanoTime();
+        CacheEntry entry;
+        try {
+            entry = lookupRemote(Collections.singletonList(key)).get(0);
+            remoteSucceeded(start);
+        } catch (Exception ex) {
+            remoteFailed();
+            throw ex;
+        }
+        return localVersion.get() == version ? entry : null;
+    }
+
+    /**
+     * 批量读取：先读一级缓存，未命中的key通过一个pipeline从二级缓存读取，并批量回填一级缓存
+     *
+     * @param keys 缓存key
+     * @return 命中的key和值，未命中的key不在结果中；缓存了空值或布隆过滤器判定不存在的key，值为null
+     */
+    public Map<Object, Object> getAll(Collection<?> keys) {
+        Map<Object, Object> result = new LinkedHashMap<>(keys.size());
+        List<Object> misses = lookupPending(lookupLocal(keys, result), result);
+
+        if (this.cacheType != CacheType.ehcache && !misses.isEmpty() && remoteAllowed()) {
+            long start = System.nanoTime();
+            try {
+                long version = localVersion.get();
+                List<CacheEntry> entries = lookupRemote(misses);
+                remoteSucceeded(start);
+                fillRemote(misses, entries, version, result);
+            } catch (Exception ex) {
+                remoteFailed();
+                if (this.cacheType == CacheType.redis) {
+                    throw ex;
+                } else {
+                    log.warn("redis缓存操作异常", ex);
+                }
+            }
+        }
+        metrics.miss(keys.size() - result.size());
+        return result;
+    }
+
+    /**
+     * 批量读取一级缓存，命中的值放入结果，返回需要读取二级缓存的key
+     */
+    private List<Object> lookupLocal(Collection<?> keys, Map<Object, Object> result) {
+        List<Object> candidates = new ArrayList<>(keys.size());
+        for (Object key : keys) {
+            if (rejected(key)) {
+                result.put(key, null);
+            } else {
+                recordAccess(key);
+                candidates.add(key);
+            }
+        }
+        if (this.cacheType == CacheType.redis || candidates.isEmpty()) {
+            return candidates;
+        }
+
+        Set<Object> localKeys = new HashSet<>(candidates.size());
+        for (Object key : candidates) {
+            localKeys.add(localKey(key));
+        }
+        Map<Object, Object> values = localCache.getAll(localKeys);
+        long now = System.currentTimeMillis();
+        List<Object> misses = new ArrayList<>();
+        for (Object key : candidates) {
+            CacheEntry entry = current(values.get(localKey(key)));
+            if (entry != null && !entry.expired(now)) {
+                metrics.localHit();
+                result.put(key, fromStoreValue(valueOf(entry)));
+            } else {
+                metrics.localMiss();
+                misses.add(key);
+            }
+        }
+        return misses;
+    }
+
+    /**
+     * 延迟写入缓冲中有的key以缓冲为准，返回仍需要读取二级缓存的key
+     */
+    private List<Object> lookupPending(List<Object> keys, Map<Object, Object> result) {
+        if (this.writeBehind == null || keys.isEmpty()) {
+            return keys;
+        }
+        List<Object> misses = new ArrayList<>(keys.size());
+        for (Object key : keys) {
+            Object storeValue = this.writeBehind.get(key);
+            if (storeValue == null) {
+                misses.add(key);
+            } else if (storeValue != CacheWriteBehind.REMOVED) {
+                result.put(key, fromStoreValue(storeValue));
+            }
+        }
+        return misses;
+    }
+
+    /**
+     * 把二级缓存读到的值放入结果，并在读取期间本地缓存没有被清理时回填一级缓存
+     */
+    private void fillRemote(List<Object> keys, List<CacheEntry> entries, long version, Map<Object, Object> result) {
+        Map<Object, Object> loaded = new HashMap<>();
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < entries.size(); i++) {
+            CacheEntry entry = entries.get(i);
+            if (entry == null) {
+                metrics.remoteMiss();
+            } else {
+                metrics.remoteHit();
+                loaded.put(localKey(keys.get(i)), entry);
+                if (!entry.expired(now)) {
+                    result.put(keys.get(i), fromStoreValue(valueOf(entry)));
+                }
+            }
+        }
+        if (this.cacheType != CacheType.redis && !loaded.isEmpty() && localVersion.get() == version) {
+            localCache.putAll(loaded);
+        }
+    }
+
+    /**
+     * 批量写入：二级缓存的写入在一个pipeline中完成，只发送一条失效消息
+     *
+     * @param values 缓存key和值
+     */
+    public void putAll(Map<?, ?> values) {
+        Map<Object, Object> localValues = new HashMap<>(values.size());
+        List<Object> removedKeys = new ArrayList<>();
+        for (Map.Entry<?, ?> entry : values.entrySet()) {
+            if (entry.getValue() == null && !isNullCacheable()) {
+                removedKeys.add(entry.getKey());
+            } else if (checkValue(entry.getValue())) {
+                localValues.put(entry.getKey(), toStoreValue(entry.getValue()));
+                if (entry.getValue() != null) {
+                    markExisting(entry.getKey());
+                }
+            }
+        }
+        if (localValues.isEmpty() && removedKeys.isEmpty()) {
+            return;
+        }
+
+        // 一级缓存条目与写入二级缓存使用同一个过期时间
+        Map<Object, Long> expires = new HashMap<>(localValues.size());
+        if (this.cacheType != CacheType.ehcache) {
+            for (Map.Entry<Object, Object> entry : localValues.entrySet()) {
+                expires.put(entry.getKey(), getRemoteTtl(entry.getValue()));
+            }
+        }
+
+        // 延迟写入时只有未能放入缓冲的key需要同步写入二级缓存
+        Map<Object, Object> remoteValues = this.writeBehind == null ? localValues : offerAll(localValues);
+        List<Object> remoteRemovedKeys = this.writeBehind == null ? removedKeys : offerRemovals(removedKeys);
+
+        boolean remote = this.cacheType != CacheType.ehcache && (!remoteValues.isEmpty() || !remoteRemovedKeys.isEmpty());
+        if (remote && !remoteAllowed()) {
+            for (Object key : remoteValues.keySet()) {
+                deferInvalidation(key);
+            }
+            for (Object key : remoteRemovedKeys) {
+                deferInvalidation(key);
+            }
+        } else if (remote) {
+            log.debug("redis批量缓存，keys:{}", remoteValues.keySet());
+            long start = System.nanoTime();
+            try {
+                byte[] rawIndexKey = rawKey(getIndexKey());
+                List<Object> writtenKeys = new ArrayList<>(remoteValues.size());
+                List<byte[]> rawKeys = new ArrayList<>(remoteValues.size());
+                List<byte[]> rawValues = new ArrayList<>(remoteValues.size());
+                List<Long> rawExpires = new ArrayList<>(remoteValues.size());
+                for (Map.Entry<Object, Object> entry : remoteValues.entrySet()) {
+                    writtenKeys.add(entry.getKey());
+                    rawKeys.add(rawKey(getKey(entry.getKey())));
+                    rawValues.add(rawValue(entry.getValue()));
+                    rawExpires.add(expires.get(entry.getKey()));
+                }
+                List<byte[]> rawRemovedKeys = new ArrayList<>(remoteRemovedKeys.size());
+                for (Object key : remoteRemovedKeys) {
+                    rawRemovedKeys.add(rawKey(getKey(key)));
+                }
+                redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                    for (int i = 0; i < rawKeys.size(); i++) {
+                        connection.set(rawKeys.get(i), rawValues.get(i), Expiration.milliseconds(rawExpires.get(i)), RedisStringCommands.SetOption.upsert());
+                        index(connection, rawIndexKey, rawKeys.get(i), rawExpires.get(i));
+                        recordOriginal(connection, writtenKeys.get(i));
+                    }
+                    for (byte[] rawKey : rawRemovedKeys) {
+                        connection.del(rawKey);
+                        connection.zRem(rawIndexKey, rawKey);
+                    }
+                    return null;
+                });
+                remoteSucceeded(start);
+            } catch (Exception ex) {
+                remoteFailed();
+                if (this.cacheType == CacheType.redis) {
+                    throw ex;
+                } else {
+                    log.warn("redis缓存操作异常", ex);
+                }
+            }
+
+            List<Object> keys = new ArrayList<>(remoteValues.keySet());
+            keys.addAll(remoteRemovedKeys);
+            push(new CacheMessage(this.name, null, this.localCache.hashCode(), keys));
+        }
+
+        if (this.cacheType != CacheType.redis) {
+            Map<Object, Object> entries = new HashMap<>(localValues.size());
+            for (Map.Entry<Object, Object> entry : localValues.entrySet()) {
+                entries.put(localKey(entry.getKey()), newEntry(entry.getKey(), entry.getValue(), expires.getOrDefault(entry.getKey(), -1L)));
+            }
+            localCache.putAll(entries);
+            if (!removedKeys.isEmpty()) {
+                Set<Object> localKeys = new HashSet<>(removedKeys.size());
+                for (Object key : removedKeys) {
+                    localKeys.add(localKey(key));
+                }
+                localCache.removeAll(localKeys);
+            }
+        }
+    }
+
+
+    /**
+     * 放入延迟写入缓冲，返回缓冲已满、需要同步写入的key和值
+     */
+    private Map<Object, Object> offerAll(Map<Object, Object> values) {
+        Map<Object, Object> rejected = new HashMap<>();
+        for (Map.Entry<Object, Object> entry : values.entrySet()) {
+            if (!this.writeBehind.offer(entry.getKey(), entry.getValue())) {
+                rejected.put(entry.getKey(), entry.getValue());
+            }
+        }
+        return rejected;
+    }
+
+    private List<Object> offerRemovals(List<Object> keys) {
+        List<Object> rejected = new ArrayList<>();
+        for (Object key : keys) {
+            if (!this.writeBehind.offer(key, CacheWriteBehind.REMOVED)) {
+                rejected.add(key);
+            }
+        }
+        return rejected;
+    }
+
+    /**
+     * 延迟写入的后台批量写入：写值、删除和维护索引在一个pipeline中完成，只发送一条失效消息
+     */
+    private void writeRemote(Map<Object, Object> values) {
+        if (!remoteAllowed()) {
+            for (Object key : values.keySet()) {
+                deferInvalidation(key);
+            }
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            byte[] rawIndexKey = rawKey(getIndexKey());
+            Map<Object, byte[]> rawKeys = new HashMap<>(values.size());
+            for (Object key : values.keySet()) {
+                rawKeys.put(key, rawKey(getKey(key)));
+            }
+            redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                for (Map.Entry<Object, Object> entry : values.entrySet()) {
+                    byte[] rawKey = rawKeys.get(entry.getKey());
+                    if (entry.getValue() == CacheWriteBehind.REMOVED) {
+                        connection.del(rawKey);
+                        connection.zRem(rawIndexKey, rawKey);
+                    } else {
+                        long expire = getRemoteTtl(entry.getValue());
+                        connection.set(rawKey, rawValue(entry.getValue()), Expiration.milliseconds(expire), RedisStringCommands.SetOption.upsert());
+                        index(connection, rawIndexKey, rawKey, expire);
+                        recordOriginal(connection, entry.getKey());
+                    }
+                }
+                return null;
+            });
+            remoteSucceeded(start);
+        } catch (Exception ex) {
+            remoteFailed();
+            log.warn("redis缓存操作异常", ex);
+        }
+        push(new CacheMessage(this.name, null, this.localCache.hashCode(), new ArrayList<>(values.keySet())));
+    }
+
+    /**
+     * 异步读取，对应 {@link #get(Object)}。一级缓存命中时返回已完成的future，
+     * 二级缓存通过lettuce的异步连接读取，不占用调用线程；future的回调在lettuce的IO线程上执行，其中不应有阻塞操作。
+     * 连接工厂不支持异步时退化为同步读取。
+     */
+    public CompletableFuture<ValueWrapper> getAsync(Object key) {
+        if (!isAsyncSupported()) {
+            return CompletableFuture.completedFuture(get(key));
+        }
+        if (rejected(key)) {
+            return CompletableFuture.completedFuture(toValueWrapper(NullValue.INSTANCE));
+        }
+        recordAccess(key);
+        if (this.cacheType != CacheType.redis) {
+            CacheEntry entry = current(localCache.get(localKey(key)));
+            if (entry != null && !entry.expired(System.currentTimeMillis())) {
+                metrics.localHit();
+                return CompletableFuture.completedFuture(toValueWrapper(valueOf(entry)));
+            }
+            metrics.localMiss();
+        }
+        if (this.writeBehind != null && this.writeBehind.get(key) != null) {
+            return CompletableFuture.completedFuture(get(key));
+        }
+        if (!remoteAllowed()) {
+            metrics.miss(1);
+            return CompletableFuture.completedFuture(null);
+        }
+
+        List<Object> keys = Collections.singletonList(key);
+        long version = localVersion.get();
+        return recover(lookupRemoteAsync(keys), null).thenApply(entries -> {
+            Map<Object, Object> result = new HashMap<>(2);
+            if (entries != null) {
+                fillRemote(keys, entries, version, result);
+            }
+            if (!result.containsKey(key)) {
+                metrics.miss(1);
+                return null;
+            }
+            return new SimpleValueWrapper(result.get(key));
+        });
+    }
+
+    /**
+     * 异步批量读取，对应 {@link #getAll(Collection)}。全部命中一级缓存时返回已完成的future，
+     * 其余key在同一条连接上连续发出读取，不等待前一条的结果
+     */
+    public CompletableFuture<Map<Object, Object>> getAllAsync(Collection<?> keys) {
+        if (!isAsyncSupported()) {
+            return CompletableFuture.completedFuture(getAll(keys));
+        }
+        Map<Object, Object> result = new LinkedHashMap<>(keys.size());
+        List<Object> misses = lookupPending(lookupLocal(keys, result), result);
+        if (misses.isEmpty() || !remoteAllowed()) {
+            metrics.miss(keys.size() - result.size());
+            return CompletableFuture.completedFuture(result);
+        }
+
+        long version = localVersion.get();
+        return recover(lookupRemoteAsync(misses), null).thenApply(entries -> {
+            if (entries != null) {
+                fillRemote(misses, entries, version, result);
+            }
+            metrics.miss(keys.size() - result.size());
+            return result;
+        });
+    }
+
+    /**
+     * 异步写入，对应 {@link #put(Object, Object)}。二级缓存写入完成后再写一级缓存并发送失效消息
+     */
+    public CompletableFuture<Void> putAsync(Object key, Object value) {
+        if (!isAsyncSupported() || this.writeBehind != null) {
+            put(key, value);
+            return CompletableFuture.completedFuture(null);
+        }
+        if (!super.isAllowNullValues() && value == null && this.nullTtl <= 0) {
+            return removeAsync(key);
+        }
+        if (!checkValue(value)) {
+            return CompletableFuture.completedFuture(null);
+        }
+        metrics.put(1);
+        if (value != null) {
+            markExisting(key);
+        }
+        Object storeValue = toStoreValue(value);
+        long expire = getRemoteTtl(storeValue);
+        if (!remoteAllowed()) {
+            deferInvalidation(key);
+            localCache.put(localKey(key), newEntry(key, storeValue, expire));
+            return CompletableFuture.completedFuture(null);
+        }
+
+        CompletableFuture<Void> future;
+        try {
+            ReactiveRedisConnection connection = getReactiveConnection();
+            byte[] rawKey = rawKey(getKey(key));
+            future = CompletableFuture.allOf(
+                    connection.stringCommands().set(ByteBuffer.wrap(rawKey), ByteBuffer.wrap(rawValue(storeValue)),
+                            Expiration.milliseconds(expire), RedisStringCommands.SetOption.upsert()).toFuture(),
+                    indexAsync(connection, rawKey, expire),
+                    recordOriginalAsync(connection, key));
+        } catch (Exception ex) {
+            future = failedFuture(ex);
+        }
+        return recover(future, null).thenRun(() -> {
+            push(new CacheMessage(this.name, key, this.localCache.hashCode()));
+            if (this.cacheType != CacheType.redis) {
+                localCache.put(localKey(key), newEntry(key, storeValue, expire));
+            }
+        });
+    }
+
+    /**
+     * 异步删除，对应 {@link #evict(Object)}。二级缓存删除完成后再清理一级缓存并发送失效消息
+     */
+    public CompletableFuture<Void> evictAsync(Object key) {
+        markExisting(key);
+        return removeAsync(key);
+    }
+
+    private CompletableFuture<Void> removeAsync(Object key) {
+        if (!isAsyncSupported() || this.writeBehind != null) {
+            remove(key);
+            return CompletableFuture.completedFuture(null);
+        }
+        metrics.evict();
+        if (!remoteAllowed()) {
+            deferInvalidation(key);
+            localCache.remove(localKey(key));
+            return CompletableFuture.completedFuture(null);
+        }
+
+        CompletableFuture<Void> future;
+        try {
+            ReactiveRedisConnection connection = getReactiveConnection();
+            byte[] rawKey = rawKey(getKey(key));
+            future = CompletableFuture.allOf(
+                    connection.keyCommands().del(ByteBuffer.wrap(rawKey)).toFuture(),
+                    connection.zSetCommands().zRem(ByteBuffer.wrap(rawKey(getIndexKey())), ByteBuffer.wrap(rawKey)).toFuture());
+        } catch (Exception ex) {
+            future = failedFuture(ex);
+        }
+        return recover(future, null).thenRun(() -> {
+            push(new CacheMessage(this.name, key, this.localCache.hashCode()));
+            if (this.cacheType != CacheType.redis) {
+                localCache.remove(localKey(key));
+            }
+        });
+    }
+
+    /**
+     * 异步读取二级缓存，与 {@link #lookupRemote(List)} 一致；各命令在同一条连接上连续发出，不等待前一条的结果，
+     * 过期时间和索引的顺延同样包含在返回的future中，失败时与同步读取一样按redis异常处理
+     */
+    private CompletableFuture<List<CacheEntry>> lookupRemoteAsync(List<?> keys) {
+        try {
+            ReactiveRedisConnection connection = getReactiveConnection();
+            List<byte[]> rawKeys = new ArrayList<>(keys.size());
+            for (Object key : keys) {
+                rawKeys.add(rawKey(getKey(key)));
+            }
+            long now = System.currentTimeMillis();
+            ByteBuffer rawIndexKey = ByteBuffer.wrap(rawKey(getIndexKey()));
+            List<CompletableFuture<CacheEntry>> futures = new ArrayList<>(rawKeys.size());
+            List<CompletableFuture<?>> renewals = new ArrayList<>();
+            for (int i = 0; i < rawKeys.size(); i++) {
+                Object key = keys.get(i);
+                ByteBuffer rawKey = ByteBuffer.wrap(rawKeys.get(i));
+                CompletableFuture<ByteBuffer> value = connection.stringCommands().get(rawKey.duplicate()).toFuture();
+                CompletableFuture<Long> pttl;
+                if (!this.slidingExpiration) {
+                    pttl = connection.keyCommands().pTtl(rawKey.duplicate()).toFuture();
+                } else {
+                    long slide = jitter(getTtl()) + staleGrace;
+                    pttl = connection.keyCommands().pExpire(rawKey.duplicate(), Duration.ofMillis(slide)).toFuture()
+                            .thenApply(extended -> Boolean.TRUE.equals(extended) ? slide : null);
+                    renewals.add(connection.zSetCommands().zAdd(Mono.just(ReactiveZSetCommands.ZAddCommand
+                            .tuple(new DefaultTuple(rawKeys.get(i), (double) (now + slide))).xx().to(rawIndexKey.duplicate())))
+                            .then().toFuture());
+                }
+                CompletableFuture<Object> storeValue = value.thenApply(buffer ->
+                        buffer == null ? null : valueSerializer.deserialize(ByteUtils.getBytes(buffer)));
+                if (this.slidingExpiration) {
+                    renewals.add(storeValue.thenCompose(v -> isNullSentinel(v)
+                            ? connection.keyCommands().pExpire(rawKey.duplicate(), Duration.ofMillis(this.nullTtl)).toFuture()
+                            : CompletableFuture.completedFuture(null)));
+                }
+                futures.add(storeValue.thenCombine(pttl, (v, ttl) -> v == null ? null : remoteEntry(key, v, ttl, now)));
+            }
+            if (this.slidingExpiration) {
+                renewals.add(connection.keyCommands().pExpire(rawIndexKey.duplicate(), Duration.ofMillis(getMaxRemoteTtl())).toFuture());
+            }
+            renewals.addAll(futures);
+            return CompletableFuture.allOf(renewals.toArray(new CompletableFuture[0])).thenApply(v -> {
+                List<CacheEntry> entries = new ArrayList<>(futures.size());
+                for (CompletableFuture<CacheEntry> future : futures) {
+                    entries.add(future.join());
+                }
+                return entries;
+            });
+        } catch (Exception ex) {
+            return failedFuture(ex);
+        }
+    }
+
+    /**
+     * 与 {@link #index(RedisConnection, byte[], long)} 一致的异步版本
+     */
+    private CompletableFuture<Void> indexAsync(ReactiveRedisConnection connection, byte[] rawKey, long ttl) {
+        ByteBuffer rawIndexKey = ByteBuffer.wrap(rawKey(getIndexKey()));
+        long now = System.currentTimeMillis();
+        List<CompletableFuture<?>> futures = new ArrayList<>(3);
+        futures.add(connection.zSetCommands().zAdd(rawIndexKey.duplicate(), (double) (now + ttl), ByteBuffer.wrap(rawKey)).toFuture());
+        futures.add(connection.keyCommands().pExpire(rawIndexKey.duplicate(), Duration.ofMillis(getIndexTtl(ttl))).toFuture());
+        if (now >= nextIndexTrimTime) {
+            nextIndexTrimTime = now + INDEX_TRIM_INTERVAL;
+            futures.add(connection.zSetCommands().zRemRangeByScore(rawIndexKey.duplicate(), Range.closed(0d, (double) now)).toFuture());
+        }
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]));
+    }
+
+    /**
+     * 与 {@link #recordOriginal(RedisConnection, Object)} 一致的异步版本
+     */
+    private CompletableFuture<Void> recordOriginalAsync(ReactiveRedisConnection connection, Object key) {
+        if (this.originalKeysKey == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        String original = key.toString();
+        String encoded = this.keyHasher.encode(original);
+        if (encoded.equals(original)) {
+            return CompletableFuture.completedFuture(null);
+        }
+        ByteBuffer rawOriginalKeysKey = ByteBuffer.wrap(rawKey(this.originalKeysKey));
+        return connection.hashCommands().hSetNX(rawOriginalKeysKey.duplicate(), ByteBuffer.wrap(rawKey(encoded)), ByteBuffer.wrap(rawKey(original)))
+                .then(connection.keyCommands().pExpire(rawOriginalKeysKey.duplicate(), Duration.ofMillis(getMaxRemoteTtl())))
+                .then().toFuture();
+    }
+
+    /**
+     * 异步操作的redis异常处理，与同步操作一致：只有redis缓存时向调用方抛出，否则记录日志后按fallback继续
+     */
+    private <T> CompletableFuture<T> recover(CompletableFuture<T> future, T fallback) {
+        long start = System.nanoTime();
+        return future.whenComplete((value, ex) -> {
+            if (ex == null) {
+                remoteSucceeded(start);
+            }
+        }).exceptionally(ex -> {
+            remoteFailed();
+            if (this.cacheType == CacheType.redis) {
+                throw ex instanceof CompletionException ? (CompletionException) ex : new CompletionException(ex);
+            }
+            log.warn("redis缓存操作异常", ex);
+            return fallback;
+        });
+    }
+
+    private static <T> CompletableFuture<T> failedFuture(Throwable ex) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        future.completeExceptionally(ex);
+        return future;
+    }
+
+    private boolean isAsyncSupported() {
+        return this.cacheType != CacheType.ehcache && redisTemplate.getConnectionFactory() instanceof ReactiveRedisConnectionFactory;
+    }
+
+    /**
+     * 异步操作共用的连接。lettuce默认共享一条原生连接，命令在其上多路复用
+     */
+    private ReactiveRedisConnection getReactiveConnection() {
+        ReactiveRedisConnection connection = this.reactiveConnection;
+        if (connection == null) {
+            synchronized (this) {
+                if (this.reactiveConnection == null) {
+                    this.reactiveConnection = ((ReactiveRedisConnectionFactory) redisTemplate.getConnectionFactory()).getReactiveConnection();
+                }
+                connection = this.reactiveConnection;
+            }
+        }
+        return connection;
+    }
+
+    /**
+     * 写完延迟写入缓冲中的数据，并关闭异步操作的连接和本cache创建的消息发布器；
+     * 由cacheManager销毁时调用，不经过cacheManager创建的cache在不再使用时调用
+     */
+    public void close() {
+        if (this.writeBehind != null) {
+            this.writeBehind.close();
+        }
+        if (this.ownedPublisher) {
+            this.publisher.shutdown();
+        }
+        ReactiveRedisConnection connection = this.reactiveConnection;
+        if (connection != null) {
+            this.reactiveConnection = null;
+            connection.close();
+        }
+    }
+
+    /**
+     * 熔断器是否允许访问redis，未开启熔断时总是允许
+     */
+    private boolean remoteAllowed() {
+        return this.circuitBreaker == null || this.circuitBreaker.allowRequest();
+    }
+
+    private void remoteSucceeded(long start) {
+        if (this.circuitBreaker != null) {
+            this.circuitBreaker.onSuccess(System.nanoTime() - start);
+        }
+    }
+
+    private void remoteFailed() {
+        metrics.redisError();
+        if (this.circuitBreaker != null) {
+            this.circuitBreaker.onError();
+        }
+    }
+
+    /**
+     * 熔断期间跳过的二级缓存写入和删除，恢复时删除redis中的旧值并通知其它节点
+     */
+    private void deferInvalidation(Object key) {
+        this.circuitBreaker.deferInvalidation(key);
+    }
+
+    /**
+     * 熔断恢复前补发失效，任何redis异常都向熔断器抛出，由熔断器继续熔断
+     */
+    private void replayInvalidations(Collection<Object> keys, boolean clear) {
+        if (clear) {
+            nextGeneration();
+            push(new CacheMessage(this.name, null, null));
+            return;
+        }
+        if (keys.isEmpty()) {
+            redisTemplate.execute((RedisCallback<String>) RedisConnection::ping);
+            return;
+        }
+        byte[] rawIndexKey = rawKey(getIndexKey());
+        List<byte[]> rawKeys = new ArrayList<>(keys.size());
+        for (Object key : keys) {
+            rawKeys.add(rawKey(getKey(key)));
+        }
+        redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (byte[] rawKey : rawKeys) {
+                connection.del(rawKey);
+                connection.zRem(rawIndexKey, rawKey);
+            }
+            return null;
+        });
+        push(new CacheMessage(this.name, null, this.localCache.hashCode(), new ArrayList<>(keys)));
+    }
+
+    /**
+     * 缓存变更时，利用redis的消息订阅功能，通知其他节点清理本地缓存。
+     * 消息由发布器按cacheName合并后批量发送。
+     *
+     * @param message
+     */
+    private void push(CacheMessage message) {
+        // 由redis失效通知维护一致性时不需要发送消息
+        if (this.coherence == CacheCoherence.tracking) {
+            return;
+        }
+        metrics.invalidationSent(message.getKeys() != null ? message.getKeys().size() : 1);
+        publisher.publish(message);
+    }
+
+    /**
+     * 一级缓存的key。由redis失效通知维护一致性时，通知中只有redis的key，一级缓存以不带代数的redis key存储
+     */
+    private Object localKey(Object key) {
+        return this.coherence == CacheCoherence.tracking ? getBaseKey(key) : key;
+    }
+
+    /**
+     * 失效通知中的redis key去掉代数，得到一级缓存的key。
+     * 只处理当前代数的key，其它代数的一级缓存条目在切换代数时已整体失效
+     */
+    private Object localKeyOf(Object redisKey) {
+        Namespace current = this.namespace;
+        String text = redisKey.toString();
+        if (current == null || current.generation == 0 || !text.startsWith(current.keyPrefix)) {
+            return redisKey;
+        }
+        return this.basePrefix.concat(text.substring(current.keyPrefix.length()));
+    }
+
+    /**
+     * 清理本地缓存。清空整个cache时重新读取redis中的代数，并清空一级缓存
+     *
+     * @param key 一级缓存的key，失效通知模式下是redis的key
+     */
+    public void clearLocal(Object key) {
+        log.debug("clear local cache, the key is : {}", key);
+        localVersion.incrementAndGet();
+        metrics.invalidationReceived(1);
+        if (key == null) {
+            resetGeneration();
+            dropLocal();
+        } else {
+            Object localKey = this.coherence == CacheCoherence.tracking ? localKeyOf(key) : key;
+            markExisting(localKey);
+            localCache.remove(localKey);
+        }
+    }
+
+    /**
+     * 批量清理本地缓存
+     *
+     * @param keys 一级缓存的key，失效通知模式下是redis的key
+     */
+    public void clearLocalKeys(Collection<?> keys) {
+        log.debug("clear local cache, the keys are : {}", keys);
+        localVersion.incrementAndGet();
+        metrics.invalidationReceived(keys.size());
+        Set<Object> localKeys = new HashSet<>(keys.size());
+        for (Object key : keys) {
+            Object localKey = this.coherence == CacheCoherence.tracking ? localKeyOf(key) : key;
+            markExisting(localKey);
+            localKeys.add(localKey);
+        }
+        localCache.removeAll(localKeys);
+    }
+
+    /**
+     * redis中保存代数的key，失效通知模式下需要跟踪该key
+     */
+    public String getGenerationKey() {
+        return this.generationKey;
+    }
+
+    /**
+     * 布隆过滤器判定key不存在，此时不读取任何一级缓存，也不回源
+     */
+    private boolean rejected(Object key) {
+        if (this.bloomFilter == null || this.bloomFilter.mightContain(getBaseKey(key))) {
+            return false;
+        }
+        metrics.bloomRejection();
+        return true;
+    }
+
+    /**
+     * 把key登记到布隆过滤器。写入和删除都会登记，删除通常意味着数据有变更，之后可能存在；
+     * 其它节点变更的key同样登记到本节点的过滤器
+     */
+    private void markExisting(Object key) {
+        if (this.bloomFilter == null) {
+            return;
+        }
+        String baseKey = getBaseKey(key);
+        // 先写重建中的过滤器再写当前的过滤器，替换前后都不会漏掉
+        CacheBloomFilter seeding = this.seedingBloomFilter;
+        if (seeding != null) {
+            seeding.put(baseKey);
+        }
+        this.bloomFilter.put(baseKey);
+    }
+
+    /**
+     * 用已存在的全部key加载布隆过滤器。首次加载完成后过滤器开始拦截；
+     * 之后再次调用时加载到一个新的过滤器，完成后替换当前的过滤器，加载期间仍按当前的过滤器拦截，
+     * 绕过缓存写入的key和已删除的key在重建后得到更新
+     */
+    public synchronized void seedBloomFilter(CacheBloomFilterSeeder seeder) {
+        CacheBloomFilter current = this.bloomFilter;
+        if (current == null) {
+            return;
+        }
+        CacheBloomFilter target = current.isReady() ? current.emptyCopy() : current;
+        if (target != current) {
+            this.seedingBloomFilter = target;
+        }
+        long start = System.currentTimeMillis();
+        long count = 0;
+        try {
+            for (Object key : seeder.loadKeys()) {
+                target.put(getBaseKey(key));
+                count++;
+            }
+        } catch (Exception ex) {
+            this.seedingBloomFilter = null;
+            log.warn("布隆过滤器加载失败，沿用当前的过滤器，cacheName:{}", this.name, ex);
+            return;
+        }
+        target.setReady(true);
+        this.bloomFilter = target;
+        this.seedingBloomFilter = null;
+        log.info("布隆过滤器加载完成，cacheName:{}, keys:{}, 耗时:{}ms", this.name, count, System.currentTimeMillis() - start);
+    }
+
+    public CacheBloomFilter getBloomFilter() {
+        return bloomFilter;
+    }
+
+    /**
+     * 预热使用的key：优先使用停机节点保存的热点key快照，没有快照时使用key索引中最近写入且未过期的key。
+     * redis中只有字符串形式的key，以非字符串key写入的缓存预热后无法以原来的key命中一级缓存；
+     * 索引中压缩过的key按记录的原始key还原，没有记录时跳过
+     *
+     * @param limit 最多返回的数量
+     */
+    @SuppressWarnings("unchecked")
+    public List<Object> warmupKeys(int limit) {
+        if (this.cacheType != CacheType.all || limit <= 0) {
+            return Collections.emptyList();
+        }
+        byte[] rawHotKeysKey = rawKey(this.hotKeysKey);
+        byte[] rawIndexKey = rawKey(getIndexKey());
+        Set<byte[]> members = redisTemplate.execute((RedisCallback<Set<byte[]>>) connection -> {
+            Set<byte[]> hot = connection.zRevRange(rawHotKeysKey, 0, limit - 1);
+            if (hot != null && !hot.isEmpty()) {
+                return hot;
+            }
+            return connection.zRevRangeByScore(rawIndexKey, RedisZSetCommands.Range.range().gte(System.currentTimeMillis()),
+                    RedisZSetCommands.Limit.limit().count(limit));
+        });
+        if (members == null) {
+            return Collections.emptyList();
+        }
+        RedisSerializer<Object> keySerializer = (RedisSerializer<Object>) redisTemplate.getKeySerializer();
+        // 快照中是不带代数的原始key，索引中是当前代数的key
+        String prefix = getNamespace().keyPrefix;
+        List<Object> keys = new ArrayList<>(members.size());
+        List<byte[]> compactKeys = new ArrayList<>();
+        for (byte[] member : members) {
+            Object redisKey = keySerializer.deserialize(member);
+            String text = redisKey == null ? "" : redisKey.toString();
+            String key;
+            if (text.startsWith(prefix)) {
+                key = text.substring(prefix.length());
+            } else if (text.startsWith(this.basePrefix)) {
+                key = text.substring(this.basePrefix.length());
+            } else {
+                continue;
+            }
+            if (this.keyHasher != null && this.keyHasher.isEncoded(key)) {
+                compactKeys.add(rawKey(key));
+            } else {
+                keys.add(key);
+            }
+        }
+        if (!compactKeys.isEmpty() && this.originalKeysKey != null) {
+            byte[] rawOriginalKeysKey = rawKey(this.originalKeysKey);
+            List<byte[]> originals = redisTemplate.execute((RedisCallback<List<byte[]>>) connection ->
+                    connection.hMGet(rawOriginalKeysKey, compactKeys.toArray(new byte[0][])));
+            if (originals != null) {
+                for (byte[] original : originals) {
+                    if (original != null) {
+                        keys.add(keySerializer.deserialize(original).toString());
+                    }
+                }
+            }
+        }
+        return keys;
+    }
+
+    /**
+     * 从二级缓存读取指定的key并回填一级缓存，不计入命中统计，也不记录热点；不在二级缓存中的key不回源
+     *
+     * @return 回填的数量
+     */
+    public int warmup(List<Object> keys) {
+        if (this.cacheType != CacheType.all || keys.isEmpty()) {
+            return 0;
+        }
+        long version = localVersion.get();
+        List<CacheEntry> entries = lookupRemote(keys);
+        Map<Object, Object> loaded = new HashMap<>(entries.size());
+        for (int i = 0; i < entries.size(); i++) {
+            if (entries.get(i) != null) {
+                loaded.put(localKey(keys.get(i)), entries.get(i));
+            }
+        }
+        if (loaded.isEmpty() || localVersion.get() != version) {
+            return 0;
+        }
+        localCache.putAll(loaded);
+        metrics.warmup(loaded.size());
+        return loaded.size();
+    }
+
+    /**
+     * 把当前的热点key合并到redis中的快照，供之后启动的节点预热；快照只保留读取次数最高的部分
+     *
+     * @param limit 快照保留的key数量
+     * @param ttl   快照的保留时间
+     */
+    public void saveHotKeys(int limit, Duration ttl) {
+        if (this.hotKeys == null || this.cacheType == CacheType.ehcache || limit <= 0) {
+            return;
+        }
+        List<CacheHotKeys.HotKey> keys = this.hotKeys.getHotKeys(limit);
+        if (keys.isEmpty()) {
+            return;
+        }
+        try {
+            byte[] rawHotKeysKey = rawKey(this.hotKeysKey);
+            redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                for (CacheHotKeys.HotKey hotKey : keys) {
+                    // 快照中保存不带代数、不压缩的key，清空cache后仍然可用；一级缓存的key在失效通知模式下已经是不带代数的形式
+                    Object baseKey = this.coherence == CacheCoherence.tracking ? hotKey.getKey() : this.basePrefix.concat(hotKey.getKey().toString());
+                    connection.zAdd(rawHotKeysKey, hotKey.getFrequency(), rawKey(baseKey));
+                }
+                connection.zRemRange(rawHotKeysKey, 0, -limit - 1);
+                connection.pExpire(rawHotKeysKey, ttl.toMillis());
+                return null;
+            });
+        } catch (Exception ex) {
+            remoteFailed();
+            log.warn("热点key快照保存失败，cacheName:{}", this.name, ex);
+        }
+    }
+
+    /**
+     * 开启空值占位时，null以 {@link NullValue} 存储
+     */
+    @Override
+    protected Object toStoreValue(Object userValue) {
+        if (userValue == null && this.nullTtl > 0) {
+            return NullValue.INSTANCE;
+        }
+        return super.toStoreValue(userValue);
+    }
+
+    /**
+     * 从redis反序列化得到的NullValue不一定是同一个实例，按类型判断
+     */
+    @Override
+    protected Object fromStoreValue(Object storeValue) {
+        if (storeValue instanceof NullValue) {
+            return null;
+        }
+        return super.fromStoreValue(storeValue);
+    }
+
+    /**
+     * 一级缓存，条目的值为 {@link CacheEntry}
+     */
+    public LocalCache getLocalStore() {
+        return localCache;
+    }
+
+    /**
+     * 一级缓存底层ehcache的视图，读取到的是缓存的存储值，已清空或已过期的条目视为不存在；
+     * 写入方法抛出 {@link UnsupportedOperationException}，需要改为调用本类的 {@link #put}。一级缓存不是ehcache时返回null
+     *
+     * @deprecated 使用 {@link #getLocalStore()}
+     */
+    @Deprecated
+    @SuppressWarnings("unchecked")
+    public org.ehcache.Cache<Object, Object> getLocalCache() {
+        Object nativeCache = localCache.getNativeCache();
+        return nativeCache instanceof org.ehcache.Cache ? new EhcacheLocalCacheView((org.ehcache.Cache<Object, Object>) nativeCache, this) : null;
+    }
+
+    /**
+     * 一级缓存条目中的存储值，条目不存在、已被清空或已过期时返回null
+     */
+    Object unwrapLocal(Object value) {
+        CacheEntry entry = current(value);
+        return entry == null || entry.expired(System.currentTimeMillis()) ? null : valueOf(entry);
+    }
+
+    public CacheMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * redis熔断器，未开启时返回null
+     */
+    public CacheCircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+
+    /**
+     * 是否可以缓存null：允许缓存null或开启了空值占位；不可以时写入null等同于删除
+     */
+    public boolean isNullCacheable() {
+        return super.isAllowNullValues() || this.nullTtl > 0;
+    }
+
+    /**
+     * 检测值是否有必要缓存
+     *
+     * @param value 检测对象
+     * @return
+     */
+    public boolean checkValue(Object value) {
+        if (value == null) {
+            return true;
+        }
+        if (value instanceof ResponseResult) {
+            return !((ResponseResult) value).getHasError();
+        }
+        return true;
+    }
+
+    /**
+     * 某一代的二级缓存key前缀和索引
+     */
+    private static final class Namespace {
+
+        private final long generation;
+
+        private final String keyPrefix;
+
+        private final String indexKey;
+
+        /**
+         * 超过该时间后重新读取redis中的代数，为0时必须读取后才能使用
+         */
+        private final long checkTime;
+
+        Namespace(long generation, String keyPrefix, String indexKey, long checkTime) {
+            this.generation = generation;
+            this.keyPrefix = keyPrefix;
+            this.indexKey = indexKey;
+            this.checkTime = checkTime;
+        }
+
+        /**
+         * 读取代数失败或熔断时沿用当前代数，稍后重试
+         */
+        Namespace retryLater() {
+            return new Namespace(generation, keyPrefix, indexKey, System.currentTimeMillis() + GENERATION_RETRY_INTERVAL);
+        }
+
+        /**
+         * 收到清空消息，下一次使用前必须重新读取
+         */
+        Namespace refreshNow() {
+            return new Namespace(generation, keyPrefix, indexKey, 0);
         }
-        return true;
     }
 }
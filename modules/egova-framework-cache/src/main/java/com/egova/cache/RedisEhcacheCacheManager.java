@@ -3,24 +3,35 @@ package com.egova.cache;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
-import org.ehcache.config.CacheConfiguration;
-import org.ehcache.config.builders.CacheConfigurationBuilder;
-import org.ehcache.config.builders.CacheManagerBuilder;
-import org.ehcache.config.builders.ExpiryPolicyBuilder;
-import org.ehcache.config.builders.ResourcePoolsBuilder;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.cache.Cache;
 import org.springframework.cache.CacheManager;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.util.ClassUtils;
 
-import java.time.Duration;
 import java.util.Collection;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 
-public class RedisEhcacheCacheManager implements CacheManager {
+public class RedisEhcacheCacheManager implements CacheManager, DisposableBean {
     private static final Log log = LogFactory.getLog(RedisEhcacheCacheManager.class);
 
     private ConcurrentMap<String, Cache> cacheMap = new ConcurrentHashMap<>();
@@ -33,11 +44,36 @@ public class RedisEhcacheCacheManager implements CacheManager {
 
     private Set<String> cacheNames;
 
-    private org.ehcache.CacheManager ehCacheManager;
-    private CacheConfiguration<Object, Object> configuration;
+    private final Map<LocalCacheType, LocalCacheProvider> localCacheProviders = new ConcurrentHashMap<>();
 
     private ReentrantLock lock = new ReentrantLock();
 
+    private CacheMessagePublisher publisher;
+
+    /**
+     * 提前刷新和过期旧值刷新共用的线程池
+     */
+    private ThreadPoolExecutor refreshExecutor;
+
+    /**
+     * 延迟写入共用的线程，各cache的写入依次执行；布隆过滤器的定时重新加载也由它触发，加载在刷新线程池中执行
+     */
+    private ScheduledExecutorService writeBehindScheduler;
+
+    private final List<Consumer<RedisEhcacheCache>> cacheCreatedListeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * 各cache的热点key统计，同时作为一级缓存的淘汰建议，需要在创建一级缓存之前确定
+     */
+    private final ConcurrentMap<String, CacheHotKeys> hotKeysMap = new ConcurrentHashMap<>();
+
+    private ObjectProvider<CacheBloomFilterSeeder> bloomFilterSeeders;
+
+    /**
+     * 二级缓存值的序列化，为null时沿用redisTemplate的序列化
+     */
+    private RedisSerializer<Object> valueSerializer;
+
     public RedisEhcacheCacheManager(RedisEhcacheProperties redisEhcacheProperties,
                                     RedisTemplate<Object, Object> redisTemplate) {
         super();
@@ -51,22 +87,41 @@ public class RedisEhcacheCacheManager implements CacheManager {
         this.redisTemplate = redisTemplate;
         this.dynamic = redisEhcacheProperties.isDynamic();
         this.cacheNames = redisEhcacheProperties.getCacheNames();
+        this.publisher = new CacheMessagePublisher(redisTemplate, redisEhcacheProperties.getRedis());
+
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("cache-refresh-");
+        threadFactory.setDaemon(true);
+        this.refreshExecutor = new ThreadPoolExecutor(redisEhcacheProperties.getRefreshPoolSize(), redisEhcacheProperties.getRefreshPoolSize(),
+                60L, TimeUnit.SECONDS, new LinkedBlockingQueue<>(redisEhcacheProperties.getRefreshQueueSize()), threadFactory);
+        this.refreshExecutor.allowCoreThreadTimeOut(true);
+
+        CustomizableThreadFactory writeBehindThreadFactory = new CustomizableThreadFactory("cache-write-behind-");
+        writeBehindThreadFactory.setDaemon(true);
+        this.writeBehindScheduler = Executors.newSingleThreadScheduledExecutor(writeBehindThreadFactory);
 
-        setAboutEhCache();
+    }
 
+    /**
+     * 一级缓存的实现，首次使用时创建
+     */
+    private LocalCacheProvider getLocalCacheProvider(LocalCacheType type) {
+        return localCacheProviders.computeIfAbsent(type, this::createLocalCacheProvider);
     }
 
-    private void setAboutEhCache() {
-        long ehcacheExpire = redisEhcacheProperties.getEhcache().getExpireAfterWrite();
-        this.configuration =
-                CacheConfigurationBuilder
-                        .newCacheConfigurationBuilder(Object.class, Object.class, ResourcePoolsBuilder.heap(redisEhcacheProperties.getEhcache().getMaxEntry()))
-                        .withExpiry(ExpiryPolicyBuilder.timeToLiveExpiration(Duration.ofMillis(ehcacheExpire)))
-                        .build();
-        this.ehCacheManager = CacheManagerBuilder
-                .newCacheManagerBuilder()
-                .build();
-        this.ehCacheManager.init();
+    /**
+     * 创建一级缓存的实现，子类可以覆盖以替换内置实现
+     */
+    @SuppressWarnings("unchecked")
+    protected LocalCacheProvider createLocalCacheProvider(LocalCacheType type) {
+        RedisSerializer<Object> serializer = valueSerializer != null || redisTemplate == null
+                ? valueSerializer : (RedisSerializer<Object>) redisTemplate.getValueSerializer();
+        if (type == LocalCacheType.caffeine) {
+            if (!ClassUtils.isPresent("com.github.benmanes.caffeine.cache.Caffeine", getClass().getClassLoader())) {
+                throw new IllegalStateException("一级缓存配置为caffeine，但没有引入caffeine依赖");
+            }
+            return new CaffeineLocalCacheProvider(redisEhcacheProperties.getEhcache(), serializer, refreshExecutor);
+        }
+        return new EhcacheLocalCacheProvider(redisEhcacheProperties.getEhcache(), serializer);
     }
 
     @Override
@@ -75,10 +130,7 @@ public class RedisEhcacheCacheManager implements CacheManager {
         String[] arr = name.split("#");
         name = arr[0];
 
-        String expireKey = "";
-        if (arr.length > 1) {
-            expireKey = arr[1];
-        }
+        String expireKey = arr.length > 1 ? arr[1] : "";
         Cache cache = cacheMap.get(name);
         if (cache != null) {
             return cache;
@@ -87,23 +139,151 @@ public class RedisEhcacheCacheManager implements CacheManager {
             return cache;
         }
 
-        cache = new RedisEhcacheCache(name, expireKey, redisTemplate, getEhcache(name), redisEhcacheProperties);
+        // 在computeIfAbsent中创建，并发获取同一个cache时只创建一个实例：
+        // 实例创建时会把一级缓存的加载器绑定到自己，并启动延迟写入的定时任务
+        RedisEhcacheCache[] created = new RedisEhcacheCache[1];
+        cache = cacheMap.computeIfAbsent(name, key -> created[0] = createCache(key, expireKey));
+        if (created[0] != null) {
+            log.debug(String.format("create cache instance, the cache name is : %s", name));
+            seedBloomFilter(created[0]);
+            scheduleBloomReseed(created[0]);
+            for (Consumer<RedisEhcacheCache> listener : cacheCreatedListeners) {
+                listener.accept(created[0]);
+            }
+        }
+        return cache;
+    }
 
-        Cache oldCache = cacheMap.putIfAbsent(name, cache);
-        log.debug(String.format("create cache instance, the cache name is : %s", name));
-        return oldCache == null ? cache : oldCache;
+    private RedisEhcacheCache createCache(String name, String expireKey) {
+        RedisEhcacheCache redisEhcacheCache = new RedisEhcacheCache(name, expireKey, redisTemplate, getLocalCache(name), redisEhcacheProperties, publisher);
+        redisEhcacheCache.setRefreshExecutor(refreshExecutor);
+        redisEhcacheCache.setWriteBehindScheduler(writeBehindScheduler);
+        redisEhcacheCache.setValueSerializer(valueSerializer);
+        redisEhcacheCache.setHotKeys(getHotKeys(name));
+        return redisEhcacheCache;
     }
 
-    private org.ehcache.Cache<Object, Object> getEhcache(String name) {
+    /**
+     * 按实体归一化的缓存，实体和id列表分别保存在两个cache中
+     *
+     * @param entityCacheName 保存实体的cacheName
+     * @param listCacheName   保存id列表的cacheName
+     * @param idOf            取得实体的id
+     * @param idParser        由id的字符串形式还原id，如 Long::valueOf
+     * @param loader          按id批量回源，不存在的id不在结果中
+     */
+    public <K, T> CacheEntityStore<K, T> getEntityStore(String entityCacheName, String listCacheName, Function<T, K> idOf,
+                                                        Function<String, K> idParser, Function<Collection<K>, Map<K, T>> loader) {
+        RedisEhcacheCache entityCache = (RedisEhcacheCache) getCache(entityCacheName);
+        RedisEhcacheCache listCache = (RedisEhcacheCache) getCache(listCacheName);
+        if (entityCache == null || listCache == null) {
+            throw new IllegalStateException("cache未配置，entityCacheName:" + entityCacheName + ", listCacheName:" + listCacheName);
+        }
+        return new CacheEntityStore<>(entityCache, listCache, idOf, idParser, loader);
+    }
 
-        lock.lock();
+    /**
+     * cache的热点key统计，未开启时返回null
+     */
+    private CacheHotKeys getHotKeys(String name) {
+        RedisEhcacheProperties.Policy policy = redisEhcacheProperties.getCaches().get(name);
+        if (policy == null || policy.getHotKeyThreshold() <= 0) {
+            return null;
+        }
+        return hotKeysMap.computeIfAbsent(name, key -> new CacheHotKeys(policy.getHotKeyThreshold(), policy.getHotKeyCapacity()));
+    }
+
+    /**
+     * 各cache当前的热点key，按估算的读取次数从高到低排列，未开启统计的cache不在结果中
+     *
+     * @param limit 每个cache最多返回的数量
+     */
+    public Map<String, List<CacheHotKeys.HotKey>> getHotKeys(int limit) {
+        Map<String, List<CacheHotKeys.HotKey>> result = new TreeMap<>();
+        for (Map.Entry<String, CacheHotKeys> entry : hotKeysMap.entrySet()) {
+            result.put(entry.getKey(), entry.getValue().getHotKeys(limit));
+        }
+        return result;
+    }
+
+    /**
+     * 设置二级缓存值的序列化，只影响缓存数据，不影响redisTemplate的其它用途
+     */
+    public void setValueSerializer(RedisSerializer<Object> valueSerializer) {
+        this.valueSerializer = valueSerializer;
+    }
+
+    /**
+     * 设置布隆过滤器的初始数据来源，cache创建时才按cacheName查找，避免与业务bean循环依赖
+     */
+    public void setBloomFilterSeeders(ObjectProvider<CacheBloomFilterSeeder> bloomFilterSeeders) {
+        this.bloomFilterSeeders = bloomFilterSeeders;
+    }
+
+    /**
+     * 在刷新线程池中异步加载布隆过滤器，不阻塞第一次访问cache的请求
+     *
+     * @return 是否提交了加载任务
+     */
+    private boolean seedBloomFilter(RedisEhcacheCache cache) {
+        if (cache.getBloomFilter() == null) {
+            return false;
+        }
+        CacheBloomFilterSeeder seeder = bloomFilterSeeders == null ? null : bloomFilterSeeders.orderedStream()
+                .filter(s -> cache.getName().equals(s.getCacheName()))
+                .findFirst()
+                .orElse(null);
+        if (seeder == null) {
+            log.warn(String.format("cache %s 开启了布隆过滤器，但没有对应的CacheBloomFilterSeeder，过滤器不会生效", cache.getName()));
+            return false;
+        }
         try {
-            org.ehcache.Cache<Object, Object> res = ehCacheManager.getCache(name, Object.class, Object.class);
-            if (res != null) {
-                return res;
-            }
+            refreshExecutor.execute(() -> cache.seedBloomFilter(seeder));
+            return true;
+        } catch (RejectedExecutionException e) {
+            log.warn(String.format("cache %s 的布隆过滤器加载任务提交失败，沿用当前的过滤器", cache.getName()));
+            return false;
+        }
+    }
 
-            return ehCacheManager.createCache(name, configuration);
+    /**
+     * 按配置的间隔定时重新加载布隆过滤器
+     */
+    private void scheduleBloomReseed(RedisEhcacheCache cache) {
+        RedisEhcacheProperties.Policy policy = redisEhcacheProperties.getCaches().get(cache.getName());
+        if (cache.getBloomFilter() == null || policy == null || policy.getBloomReseedInterval() == null) {
+            return;
+        }
+        long interval = policy.getBloomReseedInterval().toMillis();
+        writeBehindScheduler.scheduleWithFixedDelay(() -> seedBloomFilter(cache), interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 立即重新加载布隆过滤器，绕过缓存批量写入数据（如导入）后调用，使新的key不再被拦截。
+     * 在刷新线程池中异步执行，完成前沿用当前的过滤器
+     *
+     * @param cacheName cacheName
+     * @return 是否提交了加载任务，cache不存在、未开启布隆过滤器或没有对应的seeder时返回false
+     */
+    public boolean reseedBloomFilter(String cacheName) {
+        Cache cache = cacheMap.get(cacheName);
+        return cache != null && seedBloomFilter((RedisEhcacheCache) cache);
+    }
+
+    /**
+     * 注册cache创建的回调，已创建的cache立即回调一次
+     */
+    public void onCacheCreated(Consumer<RedisEhcacheCache> listener) {
+        cacheCreatedListeners.add(listener);
+        for (Cache cache : cacheMap.values()) {
+            listener.accept((RedisEhcacheCache) cache);
+        }
+    }
+
+    private LocalCache getLocalCache(String name) {
+        lock.lock();
+        try {
+            return getLocalCacheProvider(redisEhcacheProperties.getEhcache().getProvider(name)).createCache(name, getHotKeys(name));
         } finally {
             lock.unlock();
         }
@@ -122,8 +302,61 @@ public class RedisEhcacheCacheManager implements CacheManager {
 
         RedisEhcacheCache redisEhcacheCache = (RedisEhcacheCache) cache;
         // 如果是发送者本身发送的消息，就不进行key的清除
-        if (sender == null || redisEhcacheCache.getLocalCache().hashCode() != sender) {
+        if (sender == null || redisEhcacheCache.getLocalStore().hashCode() != sender) {
             redisEhcacheCache.clearLocal(key);
         }
     }
+
+    /**
+     * 消息是否由本节点的cache发出
+     */
+    public boolean isLocalSender(String cacheName, Integer sender) {
+        Cache cache = cacheMap.get(cacheName);
+        return sender != null && cache != null && ((RedisEhcacheCache) cache).getLocalStore().hashCode() == sender;
+    }
+
+    @Override
+    public void destroy() {
+        // 先停止定时的延迟写入，再由各cache写完剩余的数据，最后发送尚未发出的失效消息
+        writeBehindScheduler.shutdown();
+        try {
+            writeBehindScheduler.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        refreshExecutor.shutdownNow();
+        RedisEhcacheProperties.Warmup warmup = redisEhcacheProperties.getWarmup();
+        for (Cache cache : cacheMap.values()) {
+            if (warmup.isEnabled()) {
+                // 保存热点key快照，供之后启动的节点预热
+                ((RedisEhcacheCache) cache).saveHotKeys(warmup.getMaxKeys(), warmup.getHotKeysTtl());
+            }
+            ((RedisEhcacheCache) cache).close();
+        }
+        publisher.shutdown();
+        for (LocalCacheProvider provider : localCacheProviders.values()) {
+            provider.close();
+        }
+    }
+
+    /**
+     * 清空本节点所有cache的本地缓存
+     */
+    public void clearAllLocal() {
+        for (Cache cache : cacheMap.values()) {
+            ((RedisEhcacheCache) cache).clearLocal(null);
+        }
+    }
+
+    public void clearLocalKeys(String cacheName, Collection<Object> keys, Integer sender) {
+        Cache cache = cacheMap.get(cacheName);
+        if (cache == null) {
+            return;
+        }
+
+        RedisEhcacheCache redisEhcacheCache = (RedisEhcacheCache) cache;
+        if (sender == null || redisEhcacheCache.getLocalStore().hashCode() != sender) {
+            redisEhcacheCache.clearLocalKeys(keys);
+        }
+    }
 }
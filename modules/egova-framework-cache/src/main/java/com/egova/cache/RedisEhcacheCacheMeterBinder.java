@@ -0,0 +1,120 @@
+package com.egova.cache;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tag;
+import io.micrometer.core.instrument.binder.cache.CacheMeterBinder;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * 把 {@link CacheMetrics} 暴露为micrometer指标。
+ * 除通用的 cache.gets / cache.puts / cache.evictions / cache.size 外，还按层级区分命中情况，
+ * 并提供回源次数、耗时分布、失效通知数量、redis异常次数和熔断状态。
+ */
+public class RedisEhcacheCacheMeterBinder extends CacheMeterBinder {
+
+    private final CacheMetrics metrics;
+
+    public RedisEhcacheCacheMeterBinder(RedisEhcacheCache cache, Iterable<Tag> tags) {
+        super(cache, cache.getName(), tags);
+        this.metrics = cache.getMetrics();
+    }
+
+    @Override
+    protected Long size() {
+        return metrics.getLocalSize();
+    }
+
+    @Override
+    protected long hitCount() {
+        return metrics.getHits();
+    }
+
+    @Override
+    protected Long missCount() {
+        return metrics.getMisses();
+    }
+
+    @Override
+    protected Long evictionCount() {
+        return metrics.getEvictions();
+    }
+
+    @Override
+    protected long putCount() {
+        return metrics.getPuts();
+    }
+
+    @Override
+    protected void bindImplementationSpecificMetrics(MeterRegistry registry) {
+        counter(registry, "cache.tier.gets", "二级缓存各层的命中次数", CacheMetrics::getLocalHits, "tier", "local", "result", "hit");
+        counter(registry, "cache.tier.gets", "二级缓存各层的命中次数", CacheMetrics::getLocalMisses, "tier", "local", "result", "miss");
+        counter(registry, "cache.tier.gets", "二级缓存各层的命中次数", CacheMetrics::getRemoteHits, "tier", "remote", "result", "hit");
+        counter(registry, "cache.tier.gets", "二级缓存各层的命中次数", CacheMetrics::getRemoteMisses, "tier", "remote", "result", "miss");
+
+        counter(registry, "cache.loads", "回源加载次数", CacheMetrics::getLoads, "result", "success");
+        counter(registry, "cache.loads", "回源加载次数", CacheMetrics::getLoadFailures, "result", "failure");
+        FunctionTimer.builder("cache.load.duration", metrics, CacheMetrics::getLoads, CacheMetrics::getLoadTime, TimeUnit.NANOSECONDS)
+                .tags(getTagsWithCacheName())
+                .description("回源加载耗时")
+                .register(registry);
+        Gauge.builder("cache.load.duration.max", metrics, m -> m.getMaxLoadTime() / 1e6)
+                .tags(getTagsWithCacheName())
+                .baseUnit("milliseconds")
+                .description("回源加载最长耗时")
+                .register(registry);
+        long[] bounds = CacheMetrics.LOAD_TIME_BOUNDS;
+        for (int i = 0; i <= bounds.length; i++) {
+            int bucket = i;
+            String le = i < bounds.length ? String.valueOf(bounds[i]) : "+Inf";
+            // 与prometheus的histogram一致，按累计次数输出
+            counter(registry, "cache.load.duration.bucket", "回源耗时不超过le毫秒的次数", m -> {
+                long[] counts = m.getLoadTimeBuckets();
+                long sum = 0;
+                for (int j = 0; j <= bucket; j++) {
+                    sum += counts[j];
+                }
+                return sum;
+            }, "le", le);
+        }
+
+        counter(registry, "cache.invalidations", "失效通知涉及的key数量", CacheMetrics::getInvalidationsSent, "direction", "sent");
+        counter(registry, "cache.invalidations", "失效通知涉及的key数量", CacheMetrics::getInvalidationsReceived, "direction", "received");
+        counter(registry, "cache.redis.errors", "redis操作异常次数", CacheMetrics::getRedisErrors);
+        counter(registry, "cache.bloom.rejections", "布隆过滤器直接拦截的次数", CacheMetrics::getBloomRejections);
+        counter(registry, "cache.local.evictions", "一级缓存容量淘汰次数", CacheMetrics::getLocalEvictions);
+        counter(registry, "cache.local.expirations", "一级缓存过期移除次数", CacheMetrics::getLocalExpirations);
+        counter(registry, "cache.warmup.entries", "启动预热回填到一级缓存的条目数", CacheMetrics::getWarmups);
+
+        if (metrics.isCircuitBreakerEnabled()) {
+            gauge(registry, "cache.redis.breaker.state", "redis熔断状态，0正常，1熔断中，2探测中", CacheMetrics::getCircuitBreakerState);
+            gauge(registry, "cache.redis.breaker.pending", "熔断期间待补发的失效key数量", CacheMetrics::getPendingInvalidations);
+            counter(registry, "cache.redis.breaker.openings", "进入熔断的次数", CacheMetrics::getCircuitBreakerOpenings);
+            counter(registry, "cache.redis.breaker.rejections", "熔断期间跳过redis的次数", CacheMetrics::getCircuitBreakerRejections);
+            counter(registry, "cache.redis.breaker.overflows", "待补发失效超过上限、改为清空cache的次数", CacheMetrics::getPendingInvalidationOverflows);
+        }
+        if (metrics.isWriteBehindEnabled()) {
+            gauge(registry, "cache.write.behind.pending", "延迟写入缓冲中待写入的key数量", CacheMetrics::getWriteBehindPending);
+            counter(registry, "cache.write.behind.rejections", "延迟写入缓冲已满、改为同步写入的次数", CacheMetrics::getWriteBehindRejections);
+        }
+    }
+
+    private void gauge(MeterRegistry registry, String name, String description, ToDoubleFunction<CacheMetrics> function) {
+        Gauge.builder(name, metrics, function)
+                .tags(getTagsWithCacheName())
+                .description(description)
+                .register(registry);
+    }
+
+    private void counter(MeterRegistry registry, String name, String description, ToDoubleFunction<CacheMetrics> function, String... tags) {
+        FunctionCounter.builder(name, metrics, function)
+                .tags(getTagsWithCacheName())
+                .tags(tags)
+                .description(description)
+                .register(registry);
+    }
+}
@@ -2,6 +2,7 @@ package com.egova.cache;
 
 import lombok.Data;
 import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
 
 import java.time.Duration;
 import java.util.HashMap;
@@ -35,6 +36,25 @@ public class RedisEhcacheProperties {
 
     private Ehcache ehcache = new Ehcache();
 
+    /**
+     * 每个cacheName单独的读取策略，如提前刷新、过期后返回旧值
+     */
+    private Map<String, Policy> caches = new HashMap<>();
+
+    /**
+     * 异步刷新的线程数
+     */
+    private int refreshPoolSize = 2;
+
+    /**
+     * 异步刷新排队的任务上限，队列满时放弃本次刷新
+     */
+    private int refreshQueueSize = 1000;
+
+    /**
+     * 启动时从二级缓存预热一级缓存
+     */
+    private Warmup warmup = new Warmup();
 
     @Data
     public class Redis {
@@ -55,11 +75,78 @@ public class RedisEhcacheProperties {
             put("hour24",Duration.ofHours(24));
         }};
 
+        /**
+         * 一级缓存一致性的维护方式，默认由写入方发送消息；
+         * tracking由redis推送失效通知，其他服务直接写redis也能使一级缓存失效，需要redis 6以上的单机或主从部署
+         */
+        private CacheCoherence coherence = CacheCoherence.topic;
+
         /**
          * 缓存更新时通知其他节点的topic名称
          */
         private String topic = "cache:redis:ehcache:topic";
 
+        /**
+         * 失效消息的合并发送间隔，同一个cache在此间隔内的失效key合并为一条消息
+         */
+        private Duration messageFlushInterval = Duration.ofMillis(5);
+
+        /**
+         * 单条失效消息最多携带的key数量，达到后立即发送
+         */
+        private int messageBatchSize = 500;
+
+        /**
+         * 接收端每个cache待处理的失效key上限，超过后直接清空该cache的本地缓存
+         */
+        private int messageMaxPendingKeys = 10000;
+
+        /**
+         * 是否把失效消息同时写入redis stream，节点断线或停顿后可据此补齐错过的消息。
+         * 默认关闭：开启后每次发送消息都多一次stream写入，各节点还要定时轮询stream
+         */
+        private boolean messageLogEnabled = false;
+
+        /**
+         * 失效日志保留的消息条数（近似值）
+         */
+        private long messageLogMaxLength = 10000;
+
+        /**
+         * 检查失效日志中错过消息的间隔
+         */
+        private Duration messageLogPollInterval = Duration.ofSeconds(1);
+
+        /**
+         * 是否按旧版本的JSON格式发送失效消息。默认开启，滚动升级期间旧版本节点仍能收到失效；
+         * 集群中的节点全部升级后设为false，改为发送合并后的二进制消息
+         */
+        private boolean messageLegacyFormat = true;
+
+        /**
+         * 框架内部使用的redis key（如加载锁）的前缀
+         */
+        private String metaPrefix = "cache:redis:ehcache";
+
+        /**
+         * 是否开启分布式加载锁，开启后同一个key在集群内只有一个节点回源加载，其余节点等待二级缓存
+         */
+        private boolean distributedLoad = false;
+
+        /**
+         * 分布式加载锁的持有时间，也是其余节点等待的最长时间
+         */
+        private Duration loadLockTimeout = Duration.ofSeconds(10);
+
+        /**
+         * 等待其它节点加载时轮询二级缓存的间隔
+         */
+        private Duration loadWaitInterval = Duration.ofMillis(50);
+
+        /**
+         * redis的熔断配置，只在cacheType为all时生效
+         */
+        private CircuitBreaker circuitBreaker = new CircuitBreaker();
 
 
 
@@ -69,6 +156,10 @@ public class RedisEhcacheProperties {
     @Data
     public class Ehcache {
 
+        /**
+         * 一级缓存的实现，默认ehcache
+         */
+        private LocalCacheType provider = LocalCacheType.ehcache;
 
         /**
          * 写入后过期时间，单位毫秒。默认5分钟
@@ -81,6 +172,288 @@ public class RedisEhcacheProperties {
          */
         private long maxEntry = 500;
 
+        /**
+         * 磁盘层的存储目录，默认为系统临时目录下的ehcache目录
+         */
+        private String diskPath = System.getProperty("java.io.tmpdir") + "/ehcache";
+
+        /**
+         * 每个cacheName单独的一级缓存容量配置，未配置的cache使用maxEntry和expireAfterWrite
+         */
+        private Map<String, Pool> caches = new HashMap<>();
+
+        /**
+         * 指定cache的一级缓存写入后过期时间，单位毫秒
+         */
+        public long getExpireAfterWrite(String name) {
+            Pool pool = caches.get(name);
+            return pool != null && pool.getExpireAfterWrite() != null ? pool.getExpireAfterWrite() : expireAfterWrite;
+        }
+
+        /**
+         * 指定cache的一级缓存实现
+         */
+        public LocalCacheType getProvider(String name) {
+            Pool pool = caches.get(name);
+            return pool != null && pool.getProvider() != null ? pool.getProvider() : provider;
+        }
     }
-}
 
+    /**
+     * redis熔断配置。
+     * 在统计窗口内，调用数达到minimumCalls后，异常率或慢调用率达到阈值即熔断；
+     * 熔断期间只使用一级缓存，openDuration后探测redis，恢复前补发熔断期间跳过的失效。
+     */
+    @Data
+    public static class CircuitBreaker {
+
+        /**
+         * 是否开启熔断
+         */
+        private boolean enabled = false;
+
+        /**
+         * 触发熔断的异常率
+         */
+        private double failureRateThreshold = 0.5;
+
+        /**
+         * 触发熔断的慢调用率
+         */
+        private double slowCallRateThreshold = 0.8;
+
+        /**
+         * 超过该耗时的redis操作记为慢调用
+         */
+        private Duration slowCallDuration = Duration.ofMillis(500);
+
+        /**
+         * 统计窗口内至少达到该调用数才判断是否熔断
+         */
+        private int minimumCalls = 20;
+
+        /**
+         * 统计窗口的长度
+         */
+        private Duration window = Duration.ofSeconds(10);
+
+        /**
+         * 熔断后再次探测redis的间隔
+         */
+        private Duration openDuration = Duration.ofSeconds(5);
+
+        /**
+         * 熔断期间记录的待补发失效key上限，超过后恢复时清空整个cache
+         */
+        private int maxPendingInvalidations = 10000;
+    }
+
+    /**
+     * 启动预热配置。
+     * 应用就绪前，按停机节点保存的热点key快照（没有快照时按key索引中最近写入的key）从二级缓存批量读取，回填一级缓存；
+     * 预热只读取二级缓存，不会回源。
+     */
+    @Data
+    public static class Warmup {
+
+        /**
+         * 是否开启预热
+         */
+        private boolean enabled = false;
+
+        /**
+         * 需要预热的cacheName
+         */
+        private Set<String> caches = new HashSet<>();
+
+        /**
+         * 每个cache最多预热的key数量，也是停机时保存的热点key数量上限
+         */
+        private int maxKeys = 10000;
+
+        /**
+         * 每批读取的key数量
+         */
+        private int batchSize = 500;
+
+        /**
+         * 并发读取的批次数
+         */
+        private int concurrency = 4;
+
+        /**
+         * 预热的最长时间，超过后放弃剩余的批次，应用照常启动
+         */
+        private Duration timeout = Duration.ofSeconds(30);
+
+        /**
+         * 停机时保存的热点key快照的保留时间
+         */
+        private Duration hotKeysTtl = Duration.ofDays(1);
+    }
+
+    /**
+     * 单个cache的一级缓存容量配置。
+     * 堆内按条数或字节数二选一，配置了字节数时以字节数为准；
+     * 堆外和磁盘层需要序列化，容量必须依次大于上一层，只有ehcache支持。
+     */
+    @Data
+    public static class Pool {
+
+        /**
+         * 一级缓存的实现，为空时使用全局配置
+         */
+        private LocalCacheType provider;
+
+        /**
+         * 堆内最大缓存对象个数
+         */
+        private long heapEntries = 500;
+
+        /**
+         * 堆内最大占用，如 64MB；caffeine按值序列化后的字节数估算
+         */
+        private DataSize heapSize;
+
+        /**
+         * 堆外最大占用，如 256MB
+         */
+        private DataSize offHeapSize;
+
+        /**
+         * 磁盘层最大占用，如 1GB
+         */
+        private DataSize diskSize;
+
+        /**
+         * 写入后过期时间，单位毫秒，为空时使用全局配置
+         */
+        private Long expireAfterWrite;
+
+        /**
+         * 写入超过该时间的条目在下一次读取时从二级缓存后台刷新，只有caffeine支持，且需要由消息维护一致性；为空表示不刷新
+         */
+        private Duration refreshAfterWrite;
+    }
+
+    /**
+     * 单个cache的读取策略。
+     * 提前刷新和过期旧值只对带加载器的读取（{@code @Cacheable(sync = true)}）生效，
+     * 刷新在有界线程池中异步执行，同一个key同时只有一个刷新任务；
+     * 空值占位和布隆过滤器用于防止不存在的key反复穿透到数据库；
+     * 热点key统计用于让少数高频读取的key常驻一级缓存；
+     * 延迟写入用于允许其它节点短暂读到旧值的cache，减少写入时的redis往返。
+     */
+    @Data
+    public static class Policy {
+
+        /**
+         * 提前刷新比例，值存活超过过期时间的该比例后，读取立即返回当前值并异步回源刷新，如 0.8；0表示不开启
+         */
+        private double refreshAheadRatio;
+
+        /**
+         * 过期后的宽限时间，宽限期内读取返回旧值并异步回源刷新；为空表示不开启
+         */
+        private Duration staleGrace;
+
+        /**
+         * 空值的缓存时间，不允许缓存null时也以空值占位，一级、二级缓存中都只保留该时间；为空表示不开启
+         */
+        private Duration nullTtl;
+
+        /**
+         * 过期时间的随机延长比例，每次写入在过期时间上随机增加0到该比例的时间，如 0.1；
+         * 避免同一批写入的key同时过期、同时回源。0表示不开启
+         */
+        private double ttlJitter;
+
+        /**
+         * 是否滑动过期，从二级缓存读到的key在同一个pipeline中重新设置过期时间；
+         * 一级缓存命中不会顺延，一级缓存的存活时间不超过二级缓存的剩余时间
+         */
+        private boolean slidingExpiration;
+
+        /**
+         * 是否开启布隆过滤器，需要提供对应的 {@link CacheBloomFilterSeeder}，过滤器判定不存在的key直接返回null。
+         * 新增的数据需要写入或删除一次对应的key才能通过过滤器；由redis失效通知维护一致性（coherence为tracking）时不生效
+         */
+        private boolean bloomFilter;
+
+        /**
+         * 布隆过滤器预期的key数量
+         */
+        private long bloomExpectedInsertions = 100000;
+
+        /**
+         * 布隆过滤器的误判率
+         */
+        private double bloomFalsePositiveRate = 0.01;
+
+        /**
+         * 定时重新加载布隆过滤器的间隔。绕过缓存写入数据库的key（没有经过put或evict）在重新加载前一直被拦截；
+         * 为空表示只在创建cache时加载一次
+         */
+        private Duration bloomReseedInterval;
+
+        /**
+         * 热点key的判定阈值，最近约4万次读取中估算读取次数达到该值的key视为热点；0表示不统计
+         */
+        private int hotKeyThreshold;
+
+        /**
+         * 最多保留的热点key数量
+         */
+        private int hotKeyCapacity = 32;
+
+        /**
+         * 热点key在一级缓存中的存活时间，为空时与其它key相同；
+         * 超过二级缓存过期时间时，一致性只依赖失效通知
+         */
+        private Duration hotKeyLocalTtl;
+
+        /**
+         * 是否延迟写入二级缓存，只在cacheType为all时生效。
+         * 写入后一级缓存立即更新，二级缓存的写入和失效消息由后台批量发送，其它节点在flushInterval内可能读到旧值
+         */
+        private boolean writeBehind;
+
+        /**
+         * 延迟写入缓冲的key数量上限
+         */
+        private int writeBehindBufferSize = 10000;
+
+        /**
+         * 延迟写入每批的key数量，缓冲中达到该数量时立即写入
+         */
+        private int writeBehindBatchSize = 500;
+
+        /**
+         * 延迟写入的间隔
+         */
+        private Duration writeBehindFlushInterval = Duration.ofMillis(10);
+
+        /**
+         * 缓冲已满时等待空位的最长时间，超过后同步写入
+         */
+        private Duration writeBehindMaxWait = Duration.ofMillis(50);
+
+        /**
+         * 一级缓存是否按值存储。开启后一级缓存保存值序列化后的字节（与二级缓存的序列化方式相同），
+         * 每次读取反序列化出调用方独有的副本，调用方修改返回值不会影响缓存，不需要再自行深拷贝；
+         * 一级缓存命中多一次反序列化，写入一级缓存多一次序列化。配置了堆外或磁盘层的cache不支持
+         */
+        private boolean storeByValue;
+
+        /**
+         * redis key压缩的长度阈值，达到该长度的key保留 类名:方法名: 前缀，其余部分替换为128位哈希；
+         * 最小为88，0表示不开启。开启或关闭后原有的key不再被读取，由过期时间清理
+         */
+        private int compactKeyLength;
+
+        /**
+         * 是否在redis中记录压缩后的key对应的原始key，用于排查问题和按索引预热
+         */
+        private boolean compactKeyOriginals;
+    }
+}
@@ -1,22 +1,36 @@
 package com.egova.cache.config;
 
+import com.egova.cache.CacheBloomFilterSeeder;
 import com.egova.cache.CacheKeyGenerator;
 import com.egova.cache.CacheMessageListener;
+import com.egova.cache.CacheMessageLogReader;
+import com.egova.cache.CacheMessagePublisher;
+import com.egova.cache.CacheTrackingListener;
+import com.egova.cache.CacheWarmer;
 import com.egova.cache.RedisEhcacheCacheManager;
+import com.egova.cache.RedisEhcacheCacheMeterBinder;
 import com.egova.cache.RedisEhcacheProperties;
 import com.egova.json.JsonMapping;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.boot.autoconfigure.AutoConfigureAfter;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.autoconfigure.data.redis.RedisAutoConfiguration;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.cache.annotation.CachingConfigurerSupport;
 import org.springframework.cache.interceptor.KeyGenerator;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.SyncTaskExecutor;
 import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.data.redis.listener.ChannelTopic;
 import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.data.redis.serializer.RedisSerializer;
 
 import java.util.Objects;
 
@@ -32,22 +46,80 @@ public class CacheAutoConfiguration {
     private RedisEhcacheProperties redisEhcacheProperties;
 
     @Bean
-    public RedisEhcacheCacheManager cacheManager(@Autowired(required = false) RedisTemplate<Object, Object> redisTemplate) {
-        return new RedisEhcacheCacheManager(redisEhcacheProperties, redisTemplate);
+    public RedisEhcacheCacheManager cacheManager(@Autowired(required = false) RedisTemplate<Object, Object> redisTemplate,
+                                                 @Autowired(required = false) @Qualifier("cacheValueSerializer") RedisSerializer<Object> cacheValueSerializer,
+                                                 ObjectProvider<CacheBloomFilterSeeder> bloomFilterSeeders) {
+        RedisEhcacheCacheManager cacheManager = new RedisEhcacheCacheManager(redisEhcacheProperties, redisTemplate);
+        // 名为cacheValueSerializer的bean只用于缓存数据，如 CompactRedisSerializer
+        cacheManager.setValueSerializer(cacheValueSerializer);
+        cacheManager.setBloomFilterSeeders(bloomFilterSeeders);
+        return cacheManager;
     }
 
     @Bean
     @ConditionalOnBean(RedisEhcacheCacheManager.class)
+    @ConditionalOnProperty(prefix = "cache.multi.redis", name = "coherence", havingValue = "topic", matchIfMissing = true)
+    public CacheMessageListener cacheMessageListener(RedisTemplate<Object, Object> redisTemplate,
+                                                     RedisEhcacheCacheManager redisEhcacheCacheManager,
+                                                     JsonMapping jsonMapping) {
+        return new CacheMessageListener(redisTemplate, redisEhcacheCacheManager, jsonMapping,
+                redisEhcacheProperties.getRedis().getMessageMaxPendingKeys());
+    }
+
+    @Bean
+    @ConditionalOnBean(CacheMessageListener.class)
     public RedisMessageListenerContainer redisMessageListenerContainer(RedisTemplate<Object, Object> redisTemplate,
-                                                                       RedisEhcacheCacheManager redisEhcacheCacheManager,
-                                                                       JsonMapping jsonMapping) {
+                                                                       CacheMessageListener cacheMessageListener) {
         RedisMessageListenerContainer redisMessageListenerContainer = new RedisMessageListenerContainer();
         redisMessageListenerContainer.setConnectionFactory(Objects.requireNonNull(redisTemplate.getConnectionFactory()));
-        CacheMessageListener cacheMessageListener = new CacheMessageListener(redisTemplate, redisEhcacheCacheManager, jsonMapping);
+        // 监听器只做解码和合并，直接在订阅线程上执行，不再为每条消息创建线程
+        redisMessageListenerContainer.setTaskExecutor(new SyncTaskExecutor());
         redisMessageListenerContainer.addMessageListener(cacheMessageListener, new ChannelTopic(redisEhcacheProperties.getRedis().getTopic()));
         return redisMessageListenerContainer;
     }
 
+    @Bean
+    @ConditionalOnBean(CacheMessageListener.class)
+    @ConditionalOnProperty(prefix = "cache.multi.redis", name = "message-log-enabled", havingValue = "true")
+    public CacheMessageLogReader cacheMessageLogReader(RedisTemplate<Object, Object> redisTemplate,
+                                                       RedisEhcacheCacheManager redisEhcacheCacheManager,
+                                                       CacheMessageListener cacheMessageListener) {
+        RedisEhcacheProperties.Redis redis = redisEhcacheProperties.getRedis();
+        return new CacheMessageLogReader(redisTemplate, redisEhcacheCacheManager, cacheMessageListener,
+                CacheMessagePublisher.getLogKey(redis.getTopic()), redis.getMessageLogPollInterval());
+    }
+
+
+    @Bean
+    @ConditionalOnBean(RedisEhcacheCacheManager.class)
+    @ConditionalOnProperty(prefix = "cache.multi.redis", name = "coherence", havingValue = "tracking")
+    public CacheTrackingListener cacheTrackingListener(RedisTemplate<Object, Object> redisTemplate,
+                                                       RedisEhcacheCacheManager redisEhcacheCacheManager) {
+        return new CacheTrackingListener(redisTemplate, redisEhcacheCacheManager);
+    }
+
+
+    @Bean
+    @ConditionalOnBean(RedisEhcacheCacheManager.class)
+    @ConditionalOnProperty(prefix = "cache.multi.warmup", name = "enabled", havingValue = "true")
+    public CacheWarmer cacheWarmer(RedisEhcacheCacheManager redisEhcacheCacheManager) {
+        return new CacheWarmer(redisEhcacheCacheManager, redisEhcacheProperties.getWarmup());
+    }
+
+    /**
+     * 存在micrometer时暴露各cache的指标，动态创建的cache在创建时绑定
+     */
+    @Configuration
+    @ConditionalOnClass(MeterBinder.class)
+    public static class CacheMetricsConfig {
+
+        @Bean
+        @ConditionalOnBean(RedisEhcacheCacheManager.class)
+        public MeterBinder redisEhcacheCacheMeterBinder(RedisEhcacheCacheManager redisEhcacheCacheManager) {
+            return registry -> redisEhcacheCacheManager.onCacheCreated(cache ->
+                    new RedisEhcacheCacheMeterBinder(cache, Tags.of("cacheManager", "cacheManager")).bindTo(registry));
+        }
+    }
 
     @Configuration
     public static class CustomCachingConfig extends CachingConfigurerSupport {
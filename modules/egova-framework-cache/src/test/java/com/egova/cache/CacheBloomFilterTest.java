@@ -0,0 +1,124 @@
+package com.egova.cache;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 布隆过滤器的拦截和重新加载，数据库中的key由 {@link #rows} 模拟
+ */
+class CacheBloomFilterTest {
+
+    private static final String NAME = "bloom";
+
+    private static final long TIMEOUT = 5000;
+
+    private final List<Object> rows = new CopyOnWriteArrayList<>();
+
+    private LettuceConnectionFactory connectionFactory;
+
+    private RedisTemplate<Object, Object> redisTemplate;
+
+    private RedisEhcacheCacheManager cacheManager;
+
+    @BeforeEach
+    void setUp() {
+        connectionFactory = EmbeddedRedis.connectionFactory(4);
+        redisTemplate = EmbeddedRedis.redisTemplate(connectionFactory);
+        rows.add("a");
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (cacheManager != null) {
+            cacheManager.destroy();
+        }
+        connectionFactory.destroy();
+    }
+
+    @Test
+    void filtersUnknownKeys() {
+        CacheBloomFilter filter = new CacheBloomFilter(1000, 0.01);
+        filter.put("a");
+        assertTrue(filter.mightContain("b"));
+        filter.setReady(true);
+        assertTrue(filter.mightContain("a"));
+        assertFalse(filter.mightContain("b"));
+        assertFalse(filter.emptyCopy().isReady());
+    }
+
+    @Test
+    void reseedAdmitsRowsWrittenOutsideTheCache() {
+        RedisEhcacheCache cache = newCache(CacheCoherence.topic);
+        await(() -> cache.getBloomFilter().isReady());
+        assertEquals("a", cache.get("a", () -> "a"));
+        assertNull(cache.get("b", () -> "b"));
+
+        // 数据直接写入数据库，没有经过缓存
+        rows.add("b");
+        assertNull(cache.get("b", () -> "b"));
+        CacheBloomFilter filter = cache.getBloomFilter();
+        assertTrue(cacheManager.reseedBloomFilter(NAME));
+        await(() -> cache.getBloomFilter() != filter);
+        assertEquals("b", cache.get("b", () -> "b"));
+        assertEquals("a", cache.get("a", () -> "a"));
+        assertFalse(cacheManager.reseedBloomFilter("missing"));
+    }
+
+    @Test
+    void disabledWithTracking() {
+        RedisEhcacheCache cache = newCache(CacheCoherence.tracking);
+        assertNull(cache.getBloomFilter());
+        assertEquals("b", cache.get("b", () -> "b"));
+    }
+
+    private RedisEhcacheCache newCache(CacheCoherence coherence) {
+        RedisEhcacheProperties properties = new RedisEhcacheProperties();
+        properties.setCacheType(CacheType.all);
+        properties.getRedis().setCoherence(coherence);
+        RedisEhcacheProperties.Policy policy = new RedisEhcacheProperties.Policy();
+        policy.setBloomFilter(true);
+        properties.getCaches().put(NAME, policy);
+        cacheManager = new RedisEhcacheCacheManager(properties, redisTemplate);
+
+        StaticListableBeanFactory beanFactory = new StaticListableBeanFactory();
+        beanFactory.addBean("seeder", new CacheBloomFilterSeeder() {
+            @Override
+            public String getCacheName() {
+                return NAME;
+            }
+
+            @Override
+            public Iterable<?> loadKeys() {
+                return rows;
+            }
+        });
+        cacheManager.setBloomFilterSeeders(beanFactory.getBeanProvider(CacheBloomFilterSeeder.class));
+        return (RedisEhcacheCache) cacheManager.getCache(NAME);
+    }
+
+    private static void await(BooleanSupplier condition) {
+        long deadline = System.currentTimeMillis() + TIMEOUT;
+        while (!condition.getAsBoolean() && System.currentTimeMillis() < deadline) {
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        assertTrue(condition.getAsBoolean());
+    }
+}
@@ -0,0 +1,144 @@
+package com.egova.cache;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CacheCircuitBreakerTest {
+
+    private static final long FAST = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private static final long SLOW = TimeUnit.SECONDS.toNanos(1);
+
+    private final List<List<Object>> replayedKeys = new ArrayList<>();
+
+    private final List<Boolean> replayedClears = new ArrayList<>();
+
+    private boolean redisDown;
+
+    @Test
+    void staysClosedBelowMinimumCalls() {
+        CacheCircuitBreaker breaker = newBreaker(10, 60_000);
+        for (int i = 0; i < 9; i++) {
+            breaker.onError();
+        }
+        assertEquals(CacheCircuitBreaker.State.closed, breaker.getState());
+        assertTrue(breaker.allowRequest());
+    }
+
+    @Test
+    void opensWhenFailureRateIsReached() {
+        CacheCircuitBreaker breaker = newBreaker(4, 60_000);
+        breaker.onSuccess(FAST);
+        breaker.onSuccess(FAST);
+        breaker.onError();
+        assertEquals(CacheCircuitBreaker.State.closed, breaker.getState());
+        breaker.onError();
+
+        assertEquals(CacheCircuitBreaker.State.open, breaker.getState());
+        assertEquals(1, breaker.getOpenings());
+        assertFalse(breaker.allowRequest());
+        assertEquals(1, breaker.getRejections());
+    }
+
+    @Test
+    void opensOnSlowCalls() {
+        CacheCircuitBreaker breaker = newBreaker(4, 60_000);
+        for (int i = 0; i < 4; i++) {
+            breaker.onSuccess(SLOW);
+        }
+        assertEquals(CacheCircuitBreaker.State.open, breaker.getState());
+    }
+
+    @Test
+    void replaysDeferredInvalidationsBeforeClosing() throws Exception {
+        CacheCircuitBreaker breaker = newBreaker(1, 20);
+        breaker.onError();
+        breaker.deferInvalidation("a");
+        breaker.deferInvalidation("b");
+        breaker.deferInvalidation("a");
+        assertEquals(2, breaker.getPendingInvalidations());
+
+        Thread.sleep(30);
+        // 熔断时间结束后的第一次调用触发探测，本次仍然跳过redis；未设置线程池时在当前线程探测
+        assertFalse(breaker.allowRequest());
+        assertEquals(CacheCircuitBreaker.State.closed, breaker.getState());
+        assertEquals(Arrays.asList(Arrays.asList("a", "b")), replayedKeys);
+        assertEquals(Arrays.asList(false), replayedClears);
+        assertEquals(0, breaker.getPendingInvalidations());
+        assertTrue(breaker.allowRequest());
+    }
+
+    @Test
+    void keepsPendingInvalidationsWhenProbeFails() throws Exception {
+        CacheCircuitBreaker breaker = newBreaker(1, 20);
+        breaker.onError();
+        breaker.deferInvalidation("a");
+        redisDown = true;
+
+        Thread.sleep(30);
+        assertFalse(breaker.allowRequest());
+        assertEquals(CacheCircuitBreaker.State.open, breaker.getState());
+        assertEquals(1, breaker.getPendingInvalidations());
+        // 下一次熔断时间结束前不再探测
+        assertFalse(breaker.allowRequest());
+        assertEquals(1, replayedKeys.size());
+
+        redisDown = false;
+        Thread.sleep(30);
+        breaker.allowRequest();
+        assertEquals(CacheCircuitBreaker.State.closed, breaker.getState());
+        assertEquals(Arrays.asList("a"), replayedKeys.get(1));
+    }
+
+    @Test
+    void clearsWholeCacheWhenPendingOverflows() throws Exception {
+        RedisEhcacheProperties.CircuitBreaker properties = properties(1, 20);
+        properties.setMaxPendingInvalidations(2);
+        CacheCircuitBreaker breaker = new CacheCircuitBreaker("test", properties, this::replay);
+        breaker.onError();
+        breaker.deferInvalidation("a");
+        breaker.deferInvalidation("b");
+        breaker.deferInvalidation("c");
+        assertEquals(1, breaker.getOverflows());
+        assertEquals(0, breaker.getPendingInvalidations());
+
+        Thread.sleep(30);
+        breaker.allowRequest();
+        assertEquals(CacheCircuitBreaker.State.closed, breaker.getState());
+        assertEquals(Arrays.asList(true), replayedClears);
+    }
+
+    private CacheCircuitBreaker newBreaker(int minimumCalls, long openMillis) {
+        return new CacheCircuitBreaker("test", properties(minimumCalls, openMillis), this::replay);
+    }
+
+    private static RedisEhcacheProperties.CircuitBreaker properties(int minimumCalls, long openMillis) {
+        RedisEhcacheProperties.CircuitBreaker properties = new RedisEhcacheProperties.CircuitBreaker();
+        properties.setEnabled(true);
+        properties.setMinimumCalls(minimumCalls);
+        properties.setFailureRateThreshold(0.5);
+        properties.setSlowCallRateThreshold(0.8);
+        properties.setSlowCallDuration(Duration.ofMillis(500));
+        properties.setWindow(Duration.ofMinutes(1));
+        properties.setOpenDuration(Duration.ofMillis(openMillis));
+        return properties;
+    }
+
+    private void replay(Collection<Object> keys, boolean clear) {
+        replayedKeys.add(new ArrayList<>(keys));
+        replayedClears.add(clear);
+        if (redisDown) {
+            throw new IllegalStateException("redis down");
+        }
+    }
+}
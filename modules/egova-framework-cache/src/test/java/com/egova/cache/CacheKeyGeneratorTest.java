@@ -0,0 +1,118 @@
+package com.egova.cache;
+
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+class CacheKeyGeneratorTest {
+
+    private final CacheKeyGenerator generator = new CacheKeyGenerator();
+
+    private final UserServiceImpl target = new UserServiceImpl();
+
+    @Test
+    void buildsPrefixFromClassAndMethod() throws Exception {
+        assertEquals("Service:Name", generator.generate(target, method("findByName"), new Object[0]));
+        assertEquals("Service:Code", generator.generate(target, method("getByCode"), new Object[0]));
+        assertEquals("Service:all", generator.generate(target, method("getDataFromCache"), new Object[0]));
+        assertEquals("Service:key-value", generator.generate(target, method("getManyFromCache"), new Object[0]));
+        assertEquals("Service:count", generator.generate(target, method("count"), new Object[0]));
+    }
+
+    @Test
+    void keepsKeysOfNumbersAndPlainStrings() throws Exception {
+        assertEquals("Service:Name:abc:12", generator.generate(target, method("findByName"), "abc", 12L));
+    }
+
+    @Test
+    void writesNullParameters() throws Exception {
+        Method method = method("findByName");
+        assertEquals("Service:Name:\\0:a", generator.generate(target, method, null, "a"));
+        assertNotEquals(generator.generate(target, method, null, "a"), generator.generate(target, method, "a", null));
+    }
+
+    @Test
+    void escapesSeparators() throws Exception {
+        Method method = method("findByName");
+        assertEquals("Service:Name:a\\:b", generator.generate(target, method, "a:b"));
+        assertNotEquals(generator.generate(target, method, "a:b"), generator.generate(target, method, "a", "b"));
+        assertNotEquals(generator.generate(target, method, "a,b"), generator.generate(target, method, Arrays.asList("a", "b")));
+    }
+
+    @Test
+    void encodesContainersByContent() throws Exception {
+        Method method = method("findByName");
+        assertEquals("Service:Name:[1,2]", generator.generate(target, method, (Object) new long[]{1, 2}));
+        assertEquals("Service:Name:[1,2]", generator.generate(target, method, Arrays.asList(1L, 2L)));
+        assertEquals(generator.generate(target, method, new LinkedHashSet<>(Arrays.asList("b", "a"))),
+                generator.generate(target, method, new LinkedHashSet<>(Arrays.asList("a", "b"))));
+
+        Map<String, Object> first = new LinkedHashMap<>();
+        first.put("b", 2);
+        first.put("a", null);
+        Map<String, Object> second = new HashMap<>();
+        second.put("a", null);
+        second.put("b", 2);
+        assertEquals("Service:Name:{a=\\0,b=2}", generator.generate(target, method, first));
+        assertEquals(generator.generate(target, method, first), generator.generate(target, method, second));
+    }
+
+    @Test
+    void mergesIntegerAndLong() throws Exception {
+        // 文档中说明的不区分类型：id的类型不一致时仍命中同一个key
+        Method method = method("findByName");
+        assertEquals(generator.generate(target, method, 5), generator.generate(target, method, 5L));
+    }
+
+    @Test
+    void generatesManyKeysLikeGenerate() throws Exception {
+        Method method = method("getManyFromCache");
+        List<Object> keys = generator.generateMany(target, method, Arrays.asList(1L, "a:b", null));
+        assertEquals(Arrays.asList(
+                generator.generate(target, method, 1L),
+                generator.generate(target, method, "a:b"),
+                generator.generate(target, method, (Object) null)), keys);
+    }
+
+    private static Method method(String name) {
+        for (Method method : UserServiceImpl.class.getDeclaredMethods()) {
+            if (method.getName().equals(name)) {
+                return method;
+            }
+        }
+        throw new IllegalArgumentException(name);
+    }
+
+    static class UserServiceImpl {
+
+        Object findByName(Object... names) {
+            return null;
+        }
+
+        Object getByCode(String code) {
+            return null;
+        }
+
+        Object getDataFromCache() {
+            return null;
+        }
+
+        Object getManyFromCache(Collection<?> ids) {
+            return null;
+        }
+
+        long count() {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package com.egova.cache;
+
+import com.alibaba.fastjson.JSON;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CacheMessageCodecTest {
+
+    @Test
+    void roundTripsKeysOfEveryType() {
+        UUID uuid = UUID.randomUUID();
+        CacheMessage message = new CacheMessage("users", null, 42,
+                Arrays.asList("Service:Name:张三", 7, 1L << 40, uuid));
+
+        byte[] bytes = CacheMessageCodec.encode(message);
+        assertTrue(CacheMessageCodec.isBinary(bytes));
+
+        CacheMessage decoded = CacheMessageCodec.decode(bytes);
+        assertEquals("users", decoded.getCacheName());
+        assertEquals(42, decoded.getSender());
+        assertNull(decoded.getKey());
+        // 其它类型的key按字符串发送
+        assertEquals(Arrays.asList("Service:Name:张三", 7, 1L << 40, uuid.toString()), decoded.getKeys());
+        assertNull(decoded.getOffset());
+    }
+
+    @Test
+    void singleKeyIsDecodedAsKeys() {
+        CacheMessage decoded = CacheMessageCodec.decode(CacheMessageCodec.encode(new CacheMessage("users", "a", null)));
+        assertNull(decoded.getSender());
+        assertEquals(Arrays.asList("a"), decoded.getKeys());
+    }
+
+    @Test
+    void clearMessageHasNoKeys() {
+        CacheMessage decoded = CacheMessageCodec.decode(CacheMessageCodec.encode(new CacheMessage("users", null, 1)));
+        assertNull(decoded.getKey());
+        assertNull(decoded.getKeys());
+    }
+
+    @Test
+    void readsOffsetAppendedByLog() throws Exception {
+        byte[] bytes = CacheMessageCodec.encode(new CacheMessage("users", "a", 1), true);
+        // 发布脚本写入日志后在消息末尾追加 varint长度 + 编号
+        byte[] offset = "1600000000000-0".getBytes(StandardCharsets.UTF_8);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(bytes);
+        out.write(offset.length);
+        out.write(offset);
+
+        CacheMessage decoded = CacheMessageCodec.decode(out.toByteArray());
+        assertEquals("1600000000000-0", decoded.getOffset());
+        assertEquals(Arrays.asList("a"), decoded.getKeys());
+
+        // 标记了编号但发布时没有追加（日志关闭）
+        assertNull(CacheMessageCodec.decode(bytes).getOffset());
+    }
+
+    @Test
+    void legacyJsonIsNotBinary() throws Exception {
+        // 兼容模式下发送给旧版本节点的JSON消息，旧版本用jackson解析
+        byte[] legacy = JSON.toJSONBytes(new CacheMessage("users", 12L, 3));
+        assertFalse(CacheMessageCodec.isBinary(legacy));
+
+        ObjectMapper objectMapper = new ObjectMapper().configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+        CacheMessage decoded = objectMapper.readValue(legacy, CacheMessage.class);
+        assertEquals("users", decoded.getCacheName());
+        assertEquals(12, ((Number) decoded.getKey()).intValue());
+        assertEquals(3, decoded.getSender());
+    }
+
+    @Test
+    void rejectsUnknownVersion() {
+        byte[] bytes = CacheMessageCodec.encode(new CacheMessage("users", "a", 1));
+        bytes[1] = CacheMessageCodec.VERSION + 1;
+        assertThrows(IllegalArgumentException.class, () -> CacheMessageCodec.decode(bytes));
+        assertThrows(IllegalArgumentException.class, () -> CacheMessageCodec.decode("{}".getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    void rejectsSerializedObjects() throws Exception {
+        // 旧的编码中类型3为jdk序列化的对象，构造的消息不能在接收方反序列化
+        ByteArrayOutputStream object = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(object)) {
+            out.writeObject(new HashMap<>(Collections.singletonMap("a", "b")));
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        bytes.write(new byte[]{CacheMessageCodec.MAGIC, CacheMessageCodec.VERSION, 0, 5});
+        bytes.write("users".getBytes(StandardCharsets.UTF_8));
+        bytes.write(new byte[]{1, 3, (byte) (object.size() | 0x80), (byte) (object.size() >>> 7)});
+        object.writeTo(bytes);
+
+        assertThrows(IllegalArgumentException.class, () -> CacheMessageCodec.decode(bytes.toByteArray()));
+    }
+
+    @Test
+    void rejectsTruncatedLength() {
+        byte[] bytes = {CacheMessageCodec.MAGIC, CacheMessageCodec.VERSION, 0, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x7F};
+        assertThrows(IllegalArgumentException.class, () -> CacheMessageCodec.decode(bytes));
+    }
+
+    @Test
+    void encodesLongCacheNamesWithVarint() {
+        char[] name = new char[300];
+        Arrays.fill(name, 'c');
+        CacheMessage decoded = CacheMessageCodec.decode(CacheMessageCodec.encode(new CacheMessage(new String(name), "a", null)));
+        assertArrayEquals(name, decoded.getCacheName().toCharArray());
+    }
+}
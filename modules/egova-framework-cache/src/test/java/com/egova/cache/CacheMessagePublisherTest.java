@@ -0,0 +1,89 @@
+package com.egova.cache;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+class CacheMessagePublisherTest {
+
+    private static final String TOPIC = "cache:redis:ehcache:topic";
+
+    private LettuceConnectionFactory connectionFactory;
+
+    private RedisConnection subscription;
+
+    private final BlockingQueue<byte[]> received = new LinkedBlockingQueue<>();
+
+    private CacheMessagePublisher publisher;
+
+    @BeforeEach
+    void setUp() {
+        connectionFactory = EmbeddedRedis.connectionFactory(3);
+        subscription = connectionFactory.getConnection();
+        subscription.subscribe((message, pattern) -> received.add(message.getBody()), TOPIC.getBytes(StandardCharsets.UTF_8));
+        publisher = new CacheMessagePublisher(EmbeddedRedis.redisTemplate(connectionFactory), TOPIC, Duration.ofMillis(5), 500);
+    }
+
+    @AfterEach
+    void tearDown() {
+        subscription.close();
+        connectionFactory.destroy();
+    }
+
+    @Test
+    void batchesKeysOfOneCache() throws Exception {
+        publisher.publish(new CacheMessage("users", "a", 1));
+        publisher.publish(new CacheMessage("users", "b", 1));
+
+        CacheMessage message = CacheMessageCodec.decode(poll());
+        assertEquals(Arrays.asList("a", "b"), message.getKeys());
+        publisher.shutdown();
+    }
+
+    @Test
+    void publishesInCallerThreadAfterShutdown() throws Exception {
+        publisher.publish(new CacheMessage("users", "a", 1));
+        publisher.shutdown();
+        assertEquals(Arrays.asList("a"), CacheMessageCodec.decode(poll()).getKeys());
+
+        // 容器关闭期间的写入不抛出RejectedExecutionException，消息照常发送
+        publisher.publish(new CacheMessage("users", "b", 1));
+        assertEquals(Arrays.asList("b"), CacheMessageCodec.decode(poll()).getKeys());
+    }
+
+    @Test
+    void writesNoLogByDefault() throws Exception {
+        RedisTemplate<Object, Object> redisTemplate = EmbeddedRedis.redisTemplate(connectionFactory);
+        String logKey = CacheMessagePublisher.getLogKey(TOPIC);
+        redisTemplate.delete(logKey);
+        RedisEhcacheProperties.Redis properties = new RedisEhcacheProperties().getRedis();
+        properties.setTopic(TOPIC);
+        CacheMessagePublisher defaultPublisher = new CacheMessagePublisher(redisTemplate, properties);
+
+        defaultPublisher.publish(new CacheMessage("users", "a", 1));
+        assertNotNull(poll());
+        assertFalse(redisTemplate.hasKey(logKey));
+        defaultPublisher.shutdown();
+        publisher.shutdown();
+    }
+
+    private byte[] poll() throws InterruptedException {
+        byte[] body = received.poll(5, TimeUnit.SECONDS);
+        assertNotNull(body, "没有收到消息");
+        return body;
+    }
+}
@@ -0,0 +1,111 @@
+package com.egova.cache;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.cache.Cache;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * {@link CacheTrackingListener} 连接真实的redis-server，由其他客户端直接修改redis，检查一级缓存是否失效
+ */
+class CacheTrackingListenerTest {
+
+    private static final long TIMEOUT = 5000;
+
+    private LettuceConnectionFactory connectionFactory;
+
+    private RedisTemplate<Object, Object> redisTemplate;
+
+    private RedisEhcacheCacheManager cacheManager;
+
+    private CacheTrackingListener listener;
+
+    private RedisEhcacheCache cache;
+
+    @BeforeEach
+    void setUp() {
+        connectionFactory = EmbeddedRedis.connectionFactory(1);
+        redisTemplate = EmbeddedRedis.redisTemplate(connectionFactory);
+        RedisEhcacheProperties properties = new RedisEhcacheProperties();
+        properties.setCacheType(CacheType.all);
+        properties.getRedis().setCoherence(CacheCoherence.tracking);
+        cacheManager = new RedisEhcacheCacheManager(properties, redisTemplate);
+        listener = new CacheTrackingListener(redisTemplate, cacheManager);
+        listener.afterPropertiesSet();
+        cache = (RedisEhcacheCache) cacheManager.getCache("tracking");
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        listener.destroy();
+        cacheManager.destroy();
+        connectionFactory.destroy();
+    }
+
+    @Test
+    void invalidatesEveryKeyOfOneNotification() {
+        // MSET在一次事件循环中修改两个key，redis把两个key放在同一条通知中
+        write("a1", "b1");
+        await(() -> cache.getMetrics().getInvalidationsReceived() >= 2);
+        assertEquals("a1", value("a"));
+        assertEquals("b1", value("b"));
+        long localHits = cache.getMetrics().getLocalHits();
+        assertEquals("a1", value("a"));
+        assertEquals("b1", value("b"));
+        assertEquals(localHits + 2, cache.getMetrics().getLocalHits(), "两个key都应已进入一级缓存");
+
+        write("a2", "b2");
+        await(() -> "a2".equals(value("a")) && "b2".equals(value("b")));
+    }
+
+    @Test
+    void clearsLocalCacheOnFlush() {
+        write("a1", "b1");
+        await(() -> cache.getMetrics().getInvalidationsReceived() >= 2);
+        assertEquals("a1", value("a"));
+        long received = cache.getMetrics().getInvalidationsReceived();
+
+        // FLUSHDB的通知中没有key
+        redisTemplate.execute((RedisCallback<Object>) connection -> {
+            connection.flushDb();
+            return null;
+        });
+        await(() -> cache.getMetrics().getInvalidationsReceived() > received);
+        assertEquals(null, value("a"));
+    }
+
+    private void write(String a, String b) {
+        Map<Object, Object> values = new HashMap<>();
+        values.put("tracking:a", a);
+        values.put("tracking:b", b);
+        redisTemplate.opsForValue().multiSet(values);
+    }
+
+    private Object value(String key) {
+        Cache.ValueWrapper wrapper = cache.get(key);
+        return wrapper == null ? null : wrapper.get();
+    }
+
+    private static void await(BooleanSupplier condition) {
+        long deadline = System.currentTimeMillis() + TIMEOUT;
+        while (!condition.getAsBoolean() && System.currentTimeMillis() < deadline) {
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        assertTrue(condition.getAsBoolean());
+    }
+}
@@ -0,0 +1,81 @@
+package com.egova.cache;
+
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.serializer.JdkSerializationRedisSerializer;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+import redis.embedded.RedisServer;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.ServerSocket;
+
+/**
+ * 测试使用的redis：首次使用时在空闲端口上启动embedded-redis自带的redis-server（不持久化），各测试共用，JVM退出时关闭。
+ * 每个测试类使用自己的库，开始前清空该库
+ */
+final class EmbeddedRedis {
+
+    private static RedisServer server;
+
+    private static int port;
+
+    private EmbeddedRedis() {
+    }
+
+    private static synchronized int port() {
+        if (server == null) {
+            try {
+                try (ServerSocket socket = new ServerSocket(0)) {
+                    port = socket.getLocalPort();
+                }
+                server = RedisServer.newRedisServer()
+                        .port(port)
+                        .setting("bind 127.0.0.1")
+                        .setting("save \"\"")
+                        .setting("appendonly no")
+                        .build();
+                server.start();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    server.stop();
+                } catch (IOException ignored) {
+                }
+            }));
+        }
+        return port;
+    }
+
+    /**
+     * 连接指定的库并清空
+     */
+    static LettuceConnectionFactory connectionFactory(int database) {
+        RedisStandaloneConfiguration configuration = new RedisStandaloneConfiguration("127.0.0.1", port());
+        configuration.setDatabase(database);
+        LettuceConnectionFactory connectionFactory = new LettuceConnectionFactory(configuration);
+        connectionFactory.afterPropertiesSet();
+        redisTemplate(connectionFactory).execute((RedisCallback<Object>) connection -> {
+            connection.flushDb();
+            return null;
+        });
+        return connectionFactory;
+    }
+
+    /**
+     * 与业务中一致，key为字符串；值使用jdk序列化，测试数据不依赖json的类型还原
+     */
+    static RedisTemplate<Object, Object> redisTemplate(LettuceConnectionFactory connectionFactory) {
+        RedisTemplate<Object, Object> redisTemplate = new RedisTemplate<>();
+        redisTemplate.setConnectionFactory(connectionFactory);
+        redisTemplate.setKeySerializer(new StringRedisSerializer());
+        redisTemplate.setHashKeySerializer(new StringRedisSerializer());
+        redisTemplate.setValueSerializer(new JdkSerializationRedisSerializer());
+        redisTemplate.afterPropertiesSet();
+        return redisTemplate;
+    }
+}
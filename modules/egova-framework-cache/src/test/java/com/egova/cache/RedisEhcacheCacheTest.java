@@ -0,0 +1,138 @@
+package com.egova.cache;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.cache.Cache;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * {@link RedisEhcacheCache} 连接真实的redis-server。两个cacheManager共用一个redis，代表两个节点
+ */
+class RedisEhcacheCacheTest {
+
+    private static final String NAME = "users";
+
+    private LettuceConnectionFactory connectionFactory;
+
+    private RedisTemplate<Object, Object> redisTemplate;
+
+    private RedisEhcacheCacheManager node;
+
+    private RedisEhcacheCacheManager otherNode;
+
+    private RedisEhcacheCache cache;
+
+    private RedisEhcacheCache otherCache;
+
+    @BeforeEach
+    void setUp() {
+        connectionFactory = EmbeddedRedis.connectionFactory(2);
+        redisTemplate = EmbeddedRedis.redisTemplate(connectionFactory);
+        node = newNode();
+        otherNode = newNode();
+        cache = (RedisEhcacheCache) node.getCache(NAME);
+        otherCache = (RedisEhcacheCache) otherNode.getCache(NAME);
+    }
+
+    @AfterEach
+    void tearDown() {
+        node.destroy();
+        otherNode.destroy();
+        connectionFactory.destroy();
+    }
+
+    private RedisEhcacheCacheManager newNode() {
+        RedisEhcacheProperties properties = new RedisEhcacheProperties();
+        properties.setCacheType(CacheType.all);
+        return new RedisEhcacheCacheManager(properties, redisTemplate);
+    }
+
+    @Test
+    void putAllIsReadByGetAll() {
+        Map<Object, Object> values = new HashMap<>();
+        values.put("a", "1");
+        values.put("b", "2");
+        cache.putAll(values);
+
+        // 另一个节点的一级缓存为空，从二级缓存批量读取
+        Map<Object, Object> result = otherCache.getAll(Arrays.asList("a", "b", "missing"));
+        assertEquals(values, result);
+        assertEquals(2, otherCache.getMetrics().getRemoteHits());
+
+        // 回填后从一级缓存读取
+        assertEquals(values, otherCache.getAll(Arrays.asList("a", "b")));
+        assertEquals(2, otherCache.getMetrics().getLocalHits());
+        assertEquals(new HashSet<>(Arrays.asList(NAME + ":a", NAME + ":b")), cache.cacheKeys());
+    }
+
+    @Test
+    void putIfAbsentKeepsExistingValue() {
+        assertNull(cache.putIfAbsent("a", "1"));
+        Cache.ValueWrapper existing = otherCache.putIfAbsent("a", "2");
+        assertEquals("1", existing.get());
+        assertEquals("1", value(otherCache, "a"));
+        assertEquals("1", redisTemplate.opsForValue().get(NAME + ":a"));
+        assertTrue(cache.cacheKeys().contains(NAME + ":a"));
+        Long ttl = redisTemplate.getExpire(NAME + ":a");
+        assertTrue(ttl != null && ttl > 0);
+    }
+
+    @Test
+    void clearSwitchesGeneration() {
+        cache.put("a", "1");
+        // 从未清空过的cache使用旧版本的key
+        assertTrue(redisTemplate.hasKey(NAME + ":a"));
+        assertEquals("1", value(otherCache, "a"));
+        assertEquals(1, cache.getLocalStore().getSize());
+
+        cache.clear();
+        assertEquals(0, cache.getLocalStore().getSize());
+        assertNull(value(cache, "a"));
+        // 旧的key不删除，等待过期
+        assertTrue(redisTemplate.hasKey(cache.getGenerationKey()));
+        assertTrue(redisTemplate.hasKey(NAME + ":a"));
+        // 模拟另一个节点收到清空消息
+        otherNode.clearLocal(NAME, null, null);
+        assertEquals(0, otherCache.getLocalStore().getSize());
+        assertNull(value(otherCache, "a"));
+
+        cache.put("b", "2");
+        assertTrue(redisTemplate.hasKey(NAME + ":g1:b"));
+        assertEquals("2", value(otherCache, "b"));
+        assertFalse(cache.cacheKeys().contains(NAME + ":a"));
+        assertEquals(new HashSet<>(Arrays.asList(NAME + ":g1:b")), cache.cacheKeys());
+    }
+
+    @Test
+    @SuppressWarnings("deprecation")
+    void localCacheViewUnwrapsEntries() {
+        cache.put("a", "1");
+        org.ehcache.Cache<Object, Object> local = cache.getLocalCache();
+        assertEquals("1", local.get("a"));
+        assertTrue(local.containsKey("a"));
+        assertEquals("1", local.iterator().next().getValue());
+        assertThrows(UnsupportedOperationException.class, () -> local.put("b", "2"));
+
+        cache.clear();
+        assertNull(local.get("a"));
+        assertFalse(local.iterator().hasNext());
+    }
+
+    private static Object value(RedisEhcacheCache cache, Object key) {
+        Cache.ValueWrapper wrapper = cache.get(key);
+        return wrapper == null ? null : wrapper.get();
+    }
+}
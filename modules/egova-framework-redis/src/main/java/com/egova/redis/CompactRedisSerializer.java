@@ -0,0 +1,375 @@
+package com.egova.redis;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONArray;
+import com.alibaba.fastjson.JSONException;
+import com.alibaba.fastjson.JSONObject;
+import com.alibaba.fastjson.parser.Feature;
+import com.alibaba.fastjson.serializer.SerializerFeature;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+
+import java.io.ByteArrayOutputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * 紧凑的二进制值序列化。
+ * 格式为 魔数 + 头部 + 内容：头部记录值的种类和是否压缩；
+ * 字符串、整数、布尔值、字节数组直接按二进制写入，其余对象写入类型编号（常用JDK类型内置编号，未登记的类型写入类名）和不带根类名的json。
+ * 内容超过压缩阈值时使用deflate压缩，压缩后没有变小则保留原文。
+ * 不以魔数开头的数据按 {@link FastJson2JsonRedisSerializer} 的json格式读取，切换前写入的旧数据仍然可读。
+ * 注意：旧版本的节点无法读取本格式，需要所有节点都升级后再切换。
+ */
+public class CompactRedisSerializer implements RedisSerializer<Object> {
+
+    /**
+     * 0xFE在UTF-8中不会出现，与json文本不会混淆
+     */
+    static final byte MAGIC = (byte) 0xFE;
+
+    private static final int FLAG_DEFLATE = 0x80;
+
+    private static final int KIND_STRING = 1;
+
+    private static final int KIND_LONG = 2;
+
+    private static final int KIND_INTEGER = 3;
+
+    private static final int KIND_BOOLEAN = 4;
+
+    private static final int KIND_BYTES = 5;
+
+    private static final int KIND_TYPE = 6;
+
+    private static final int KIND_CLASS = 7;
+
+    private static final int KIND_BUILTIN = 8;
+
+    /**
+     * deflate的最大压缩比约为1032:1，声明的原始长度超过压缩内容的该倍数时数据必然有误，不按其分配内存
+     */
+    private static final int MAX_DEFLATE_RATIO = 1032;
+
+    /**
+     * 常用的JDK类型，按下标写入；顺序即编号，只能在末尾追加
+     */
+    private static final Class<?>[] BUILTIN_TYPES = {
+            ArrayList.class, LinkedList.class, HashMap.class, LinkedHashMap.class, TreeMap.class,
+            HashSet.class, LinkedHashSet.class, TreeSet.class, JSONObject.class, JSONArray.class,
+            Double.class, Float.class, Short.class, Byte.class, BigDecimal.class, BigInteger.class, Date.class
+    };
+
+    private static final Map<Class<?>, Integer> BUILTIN_IDS = new HashMap<>();
+
+    static {
+        for (int i = 0; i < BUILTIN_TYPES.length; i++) {
+            BUILTIN_IDS.put(BUILTIN_TYPES[i], i);
+        }
+    }
+
+    private static final SerializerFeature[] FEATURES = {
+            SerializerFeature.WriteDateUseDateFormat, SerializerFeature.WriteClassName, SerializerFeature.NotWriteRootClassName
+    };
+
+    private final FastJson2JsonRedisSerializer<Object> jsonSerializer = new FastJson2JsonRedisSerializer<>(Object.class);
+
+    private final Map<Integer, Class<?>> types = new ConcurrentHashMap<>();
+
+    private final Map<Class<?>, Integer> typeIds = new ConcurrentHashMap<>();
+
+    private final Map<String, Class<?>> classes = new ConcurrentHashMap<>();
+
+    private final int compressThreshold;
+
+    /**
+     * @param compressThreshold 超过该字节数的内容压缩存储，小于等于0表示不压缩
+     */
+    public CompactRedisSerializer(int compressThreshold) {
+        this.compressThreshold = compressThreshold;
+    }
+
+    /**
+     * 登记类型编号，值为该类型时只写入编号而不写类名。各节点登记的编号必须一致，已使用的编号不能再分配给其它类型
+     *
+     * @param id   类型编号，大于0
+     * @param type 类型
+     */
+    public CompactRedisSerializer register(int id, Class<?> type) {
+        if (id <= 0) {
+            throw new IllegalArgumentException("类型编号必须大于0：" + id);
+        }
+        Class<?> existing = types.putIfAbsent(id, type);
+        if (existing != null && existing != type) {
+            throw new IllegalArgumentException(String.format("类型编号%d已分配给%s", id, existing.getName()));
+        }
+        typeIds.put(type, id);
+        return this;
+    }
+
+    @Override
+    public byte[] serialize(Object value) throws SerializationException {
+        if (value == null) {
+            return new byte[0];
+        }
+        Output out = new Output();
+        int kind;
+        if (value instanceof String) {
+            kind = KIND_STRING;
+            out.write(((String) value).getBytes(StandardCharsets.UTF_8));
+        } else if (value instanceof Long) {
+            kind = KIND_LONG;
+            out.writeVarLong(zigZag((Long) value));
+        } else if (value instanceof Integer) {
+            kind = KIND_INTEGER;
+            out.writeVarLong(zigZag((Integer) value));
+        } else if (value instanceof Boolean) {
+            kind = KIND_BOOLEAN;
+            out.write((Boolean) value ? 1 : 0);
+        } else if (value instanceof byte[]) {
+            kind = KIND_BYTES;
+            out.write((byte[]) value);
+        } else {
+            Integer id = typeIds.get(value.getClass());
+            Integer builtin = id == null ? BUILTIN_IDS.get(value.getClass()) : null;
+            if (id != null) {
+                kind = KIND_TYPE;
+                out.writeVarLong(id);
+            } else if (builtin != null) {
+                kind = KIND_BUILTIN;
+                out.writeVarLong(builtin);
+            } else {
+                kind = KIND_CLASS;
+                byte[] className = value.getClass().getName().getBytes(StandardCharsets.UTF_8);
+                out.writeVarLong(className.length);
+                out.write(className);
+            }
+            JSONObject.DEFFAULT_DATE_FORMAT = "yyyy-MM-dd HH:mm:ss";
+            out.write(JSON.toJSONBytes(value, FastJson2JsonRedisSerializer.serializeConfig, FEATURES));
+        }
+
+        byte[] body = out.buffer();
+        int length = out.size();
+        if (compressThreshold > 0 && length > compressThreshold) {
+            byte[] compressed = compress(body, length);
+            if (compressed != null) {
+                return envelope(kind | FLAG_DEFLATE, compressed, compressed.length);
+            }
+        }
+        return envelope(kind, body, length);
+    }
+
+    @Override
+    public Object deserialize(byte[] bytes) throws SerializationException {
+        if (bytes == null || bytes.length == 0) {
+            return null;
+        }
+        if (bytes[0] != MAGIC) {
+            return jsonSerializer.deserialize(bytes);
+        }
+        try {
+            int header = bytes[1] & 0xFF;
+            Input in = new Input(bytes, 2, bytes.length);
+            if ((header & FLAG_DEFLATE) != 0) {
+                in = new Input(decompress(bytes, in), 0);
+            }
+            switch (header & ~FLAG_DEFLATE) {
+                case KIND_STRING:
+                    return new String(in.bytes, in.position, in.limit - in.position, StandardCharsets.UTF_8);
+                case KIND_LONG:
+                    return unZigZag(in.readVarLong());
+                case KIND_INTEGER:
+                    return (int) unZigZag(in.readVarLong());
+                case KIND_BOOLEAN:
+                    return in.bytes[in.position] != 0;
+                case KIND_BYTES:
+                    return in.remaining();
+                case KIND_TYPE: {
+                    int id = (int) in.readVarLong();
+                    Class<?> type = types.get(id);
+                    if (type == null) {
+                        throw new SerializationException("未登记的类型编号：" + id);
+                    }
+                    return parse(in, type);
+                }
+                case KIND_BUILTIN:
+                    return parse(in, BUILTIN_TYPES[(int) in.readVarLong()]);
+                case KIND_CLASS: {
+                    int length = (int) in.readVarLong();
+                    String className = new String(in.bytes, in.position, length, StandardCharsets.UTF_8);
+                    in.position += length;
+                    return parse(in, resolve(className));
+                }
+                default:
+                    throw new SerializationException("无法识别的数据种类：" + header);
+            }
+        } catch (SerializationException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new SerializationException("Could not deserialize: " + e.getMessage(), e);
+        }
+    }
+
+    private Object parse(Input in, Class<?> type) {
+        return JSON.parseObject(in.bytes, in.position, in.limit - in.position, StandardCharsets.UTF_8, type,
+                FastJson2JsonRedisSerializer.parserConfig, null, JSON.DEFAULT_PARSER_FEATURE, new Feature[0]);
+    }
+
+    /**
+     * 按类名加载类型，与json格式读取 {@code @type} 相同，经过fastjson的autoType检查，拒绝黑名单中的类型
+     */
+    private Class<?> resolve(String className) {
+        Class<?> type = classes.get(className);
+        if (type == null) {
+            try {
+                type = FastJson2JsonRedisSerializer.parserConfig.checkAutoType(className, null, JSON.DEFAULT_PARSER_FEATURE);
+            } catch (JSONException e) {
+                throw new SerializationException("不允许的类型：" + className, e);
+            }
+            if (type == null) {
+                throw new SerializationException("找不到类型：" + className);
+            }
+            classes.put(className, type);
+        }
+        return type;
+    }
+
+    private static byte[] envelope(int header, byte[] body, int length) {
+        byte[] bytes = new byte[length + 2];
+        bytes[0] = MAGIC;
+        bytes[1] = (byte) header;
+        System.arraycopy(body, 0, bytes, 2, length);
+        return bytes;
+    }
+
+    /**
+     * 压缩后的内容以原始长度开头；没有变小时返回null
+     */
+    private static byte[] compress(byte[] body, int length) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED, true);
+        try {
+            deflater.setInput(body, 0, length);
+            deflater.finish();
+            Output out = new Output();
+            out.writeVarLong(length);
+            byte[] buffer = new byte[Math.max(64, length / 2)];
+            while (!deflater.finished()) {
+                int n = deflater.deflate(buffer);
+                out.write(buffer, 0, n);
+                if (out.size() >= length) {
+                    return null;
+                }
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] decompress(byte[] bytes, Input in) throws DataFormatException {
+        long declared = in.readVarLong();
+        if (declared < 0 || declared > Math.min((long) (in.limit - in.position) * MAX_DEFLATE_RATIO, Integer.MAX_VALUE)) {
+            throw new DataFormatException("压缩数据的原始长度有误：" + declared);
+        }
+        int length = (int) declared;
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(bytes, in.position, in.limit - in.position);
+            byte[] body = new byte[length];
+            int offset = 0;
+            while (offset < length) {
+                int n = inflater.inflate(body, offset, length - offset);
+                if (n == 0 && (inflater.finished() || inflater.needsInput())) {
+                    throw new DataFormatException("压缩数据不完整");
+                }
+                offset += n;
+            }
+            return body;
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static class Output extends ByteArrayOutputStream {
+
+        Output() {
+            super(64);
+        }
+
+        void writeVarLong(long value) {
+            while ((value & ~0x7FL) != 0) {
+                write((int) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            write((int) value);
+        }
+
+        @Override
+        public void write(byte[] b) {
+            write(b, 0, b.length);
+        }
+
+        byte[] buffer() {
+            return buf;
+        }
+    }
+
+    private static class Input {
+
+        final byte[] bytes;
+
+        final int limit;
+
+        int position;
+
+        Input(byte[] bytes, int position) {
+            this(bytes, position, bytes.length);
+        }
+
+        Input(byte[] bytes, int position, int limit) {
+            this.bytes = bytes;
+            this.position = position;
+            this.limit = limit;
+        }
+
+        long readVarLong() {
+            long value = 0;
+            for (int shift = 0; ; shift += 7) {
+                byte b = bytes[position++];
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+        }
+
+        byte[] remaining() {
+            byte[] result = new byte[limit - position];
+            System.arraycopy(bytes, position, result, 0, result.length);
+            return result;
+        }
+    }
+}
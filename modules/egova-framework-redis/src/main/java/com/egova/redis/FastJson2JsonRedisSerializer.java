@@ -18,12 +18,12 @@ public class FastJson2JsonRedisSerializer<T> implements RedisSerializer<T> {
 
 
 
-    private static final ParserConfig parserConfig = new ParserConfig();
+    static final ParserConfig parserConfig = new ParserConfig();
 
 
     private Class<T> clazz;
 
-    private static final   SerializeConfig serializeConfig = new XSerializeConfig();
+    static final   SerializeConfig serializeConfig = new XSerializeConfig();
 
     static {
         parserConfig.setAutoTypeSupport(true);
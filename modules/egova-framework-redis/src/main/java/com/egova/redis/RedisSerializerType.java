@@ -0,0 +1,17 @@
+package com.egova.redis;
+
+/**
+ * redis值的序列化方式
+ */
+public enum RedisSerializerType {
+
+    /**
+     * 带类名的json，见 {@link FastJson2JsonRedisSerializer}
+     */
+    json,
+
+    /**
+     * 紧凑的二进制格式，见 {@link CompactRedisSerializer}，可读取json格式的旧数据
+     */
+    compact
+}
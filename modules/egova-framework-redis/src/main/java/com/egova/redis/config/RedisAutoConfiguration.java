@@ -1,5 +1,8 @@
 package com.egova.redis.config;
 
+import com.egova.redis.RedisSerializerType;
+import lombok.Getter;
+import lombok.Setter;
 import org.springframework.boot.autoconfigure.AutoConfigureBefore;
 import org.springframework.boot.autoconfigure.data.redis.RedisProperties;
 import org.springframework.boot.context.properties.ConfigurationProperties;
@@ -10,6 +13,11 @@ import org.springframework.context.annotation.Primary;
 import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
 import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.util.unit.DataSize;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 /**
  * @author chendb
@@ -20,10 +28,27 @@ import org.springframework.data.redis.core.StringRedisTemplate;
 public class RedisAutoConfiguration {
 
 
+    @Getter
+    @Setter
     @Primary
     @ConfigurationProperties(prefix = "spring.redis")
     public static class DefaultRedisProperties extends RedisProperties {
 
+        /**
+         * 值的序列化方式，默认json；compact为紧凑的二进制格式，需要所有节点都升级后再切换
+         */
+        private RedisSerializerType valueSerializer = RedisSerializerType.json;
+
+        /**
+         * compact格式下超过该大小的值压缩存储
+         */
+        private DataSize compressThreshold = DataSize.ofKilobytes(1);
+
+        /**
+         * compact格式下登记的类型编号，如 1: com.egova.xxx.User，登记后只写编号不写类名；各节点的配置必须一致
+         */
+        private Map<Integer, String> compactTypes = new LinkedHashMap<>();
+
     }
 
     @Primary
@@ -43,6 +68,11 @@ public class RedisAutoConfiguration {
             return this.connectionFactory(properties);
         }
 
+        @Override
+        public RedisSerializer<Object> getValueSerializer() {
+            return this.createValueSerializer(properties.getValueSerializer(), properties.getCompressThreshold(), properties.getCompactTypes());
+        }
+
 
         @Bean
         public LettuceConnectionFactory lettuceConnectionFactory() {
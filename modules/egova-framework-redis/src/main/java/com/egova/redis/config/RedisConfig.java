@@ -1,7 +1,9 @@
 package com.egova.redis.config;
 
 
+import com.egova.redis.CompactRedisSerializer;
 import com.egova.redis.FastJson2JsonRedisSerializer;
+import com.egova.redis.RedisSerializerType;
 import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
 import org.springframework.boot.autoconfigure.data.redis.RedisProperties;
 import org.springframework.data.redis.connection.RedisPassword;
@@ -11,9 +13,13 @@ import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactor
 import org.springframework.data.redis.connection.lettuce.LettucePoolingClientConfiguration;
 import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.serializer.RedisSerializer;
 import org.springframework.data.redis.serializer.StringRedisSerializer;
+import org.springframework.util.ClassUtils;
+import org.springframework.util.unit.DataSize;
 
 import java.time.Duration;
+import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Function;
 
@@ -93,10 +99,34 @@ public abstract class RedisConfig
 
     public void setSerializer(RedisTemplate template) {
 
-        FastJson2JsonRedisSerializer serializer = new FastJson2JsonRedisSerializer(Object.class);
-        template.setValueSerializer(serializer);
+        template.setValueSerializer(getValueSerializer());
 
 
         template.setKeySerializer(new StringRedisSerializer());
     }
+
+    /**
+     * 值的序列化方式，默认为带类名的json，子类可改为 {@link CompactRedisSerializer}
+     */
+    public RedisSerializer<Object> getValueSerializer() {
+        return new FastJson2JsonRedisSerializer<>(Object.class);
+    }
+
+    /**
+     * 按配置创建值的序列化
+     */
+    public RedisSerializer<Object> createValueSerializer(RedisSerializerType type, DataSize compressThreshold, Map<Integer, String> types) {
+        if (type != RedisSerializerType.compact) {
+            return new FastJson2JsonRedisSerializer<>(Object.class);
+        }
+        CompactRedisSerializer serializer = new CompactRedisSerializer(compressThreshold == null ? 0 : (int) compressThreshold.toBytes());
+        for (Map.Entry<Integer, String> entry : types.entrySet()) {
+            try {
+                serializer.register(entry.getKey(), ClassUtils.forName(entry.getValue(), ClassUtils.getDefaultClassLoader()));
+            } catch (ClassNotFoundException e) {
+                throw new IllegalStateException("redis序列化登记的类型不存在：" + entry.getValue(), e);
+            }
+        }
+        return serializer;
+    }
 }
@@ -0,0 +1,176 @@
+package com.egova.redis;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.serializer.SerializationException;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CompactRedisSerializerTest {
+
+    private final CompactRedisSerializer serializer = new CompactRedisSerializer(256);
+
+    @Test
+    void roundTripsScalars() {
+        for (Object value : Arrays.asList("张三", "", 0L, -1L, Long.MAX_VALUE, Long.MIN_VALUE, 7, Integer.MIN_VALUE, true, false)) {
+            assertEquals(value, roundTrip(value));
+        }
+        assertArrayEquals(new byte[]{1, 2, 3}, (byte[]) roundTrip(new byte[]{1, 2, 3}));
+        // 数字只占varint的长度
+        assertEquals(3, serializer.serialize(1L).length);
+    }
+
+    @Test
+    void roundTripsBuiltinTypes() {
+        List<Object> list = new ArrayList<>(Arrays.asList("a", "b"));
+        assertEquals(list, roundTrip(list));
+
+        Map<String, Object> map = new HashMap<>();
+        map.put("name", "a");
+        Object decoded = roundTrip(map);
+        assertEquals(HashMap.class, decoded.getClass());
+        assertEquals(map, decoded);
+
+        assertEquals(new BigDecimal("12.50"), roundTrip(new BigDecimal("12.50")));
+    }
+
+    @Test
+    void writesIdOfRegisteredType() {
+        serializer.register(1, User.class);
+        User user = new User(12L, "张三");
+        byte[] registered = serializer.serialize(user);
+        byte[] named = new CompactRedisSerializer(256).serialize(user);
+        assertTrue(registered.length < named.length);
+
+        assertUser(user, serializer.deserialize(registered));
+        // 按类名写入的数据在登记了类型的节点上也能读取
+        assertUser(user, serializer.deserialize(named));
+    }
+
+    @Test
+    void writesClassNameOfOtherTypes() {
+        User user = new User(12L, "张三");
+        assertUser(user, roundTrip(user));
+    }
+
+    @Test
+    void compressesLargeValues() {
+        char[] chars = new char[1024];
+        Arrays.fill(chars, 'a');
+        String large = new String(chars);
+        byte[] bytes = serializer.serialize(large);
+        assertEquals(CompactRedisSerializer.MAGIC, bytes[0]);
+        assertTrue((bytes[1] & 0x80) != 0);
+        assertTrue(bytes.length < 100);
+        assertEquals(large, serializer.deserialize(bytes));
+
+        assertEquals(0, serializer.serialize("small")[1] & 0x80);
+        assertEquals(0, new CompactRedisSerializer(0).serialize(large)[1] & 0x80);
+    }
+
+    @Test
+    void readsLegacyJson() {
+        // 升级前写入redis的数据
+        FastJson2JsonRedisSerializer<Object> legacy = new FastJson2JsonRedisSerializer<>(Object.class);
+        User user = new User(12L, "张三");
+        assertUser(user, serializer.deserialize(legacy.serialize(user)));
+        assertEquals("a", serializer.deserialize(legacy.serialize("a")));
+        assertEquals(Collections.singletonList("a"), serializer.deserialize(legacy.serialize(Collections.singletonList("a"))));
+    }
+
+    @Test
+    void rejectsInvalidRegistration() {
+        serializer.register(1, User.class);
+        serializer.register(1, User.class);
+        assertThrows(IllegalArgumentException.class, () -> serializer.register(0, User.class));
+        assertThrows(IllegalArgumentException.class, () -> serializer.register(1, String.class));
+    }
+
+    @Test
+    void rejectsUnknownTypeId() {
+        serializer.register(1, User.class);
+        byte[] bytes = serializer.serialize(new User(12L, "张三"));
+        assertThrows(SerializationException.class, () -> new CompactRedisSerializer(256).deserialize(bytes));
+    }
+
+    @Test
+    void rejectsDeniedClassName() {
+        // 按类名写入的类型经过fastjson的autoType检查，黑名单中的类型不会被加载和实例化
+        byte[] className = "com.sun.rowset.JdbcRowSetImpl".getBytes(StandardCharsets.UTF_8);
+        byte[] json = "{}".getBytes(StandardCharsets.UTF_8);
+        byte[] bytes = new byte[3 + className.length + json.length];
+        bytes[0] = CompactRedisSerializer.MAGIC;
+        bytes[1] = 7;
+        bytes[2] = (byte) className.length;
+        System.arraycopy(className, 0, bytes, 3, className.length);
+        System.arraycopy(json, 0, bytes, 3 + className.length, json.length);
+        assertThrows(SerializationException.class, () -> serializer.deserialize(bytes));
+    }
+
+    @Test
+    void rejectsOversizedDeclaredLength() {
+        // 压缩的字符串，声明的原始长度为Integer.MAX_VALUE，压缩内容只有两个字节
+        byte[] bytes = {CompactRedisSerializer.MAGIC, (byte) 0x81, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x07, 0x03, 0x00};
+        assertThrows(SerializationException.class, () -> serializer.deserialize(bytes));
+    }
+
+    @Test
+    void treatsEmptyAsNull() {
+        assertEquals(0, serializer.serialize(null).length);
+        assertNull(serializer.deserialize(null));
+        assertNull(serializer.deserialize(new byte[0]));
+    }
+
+    private Object roundTrip(Object value) {
+        return serializer.deserialize(serializer.serialize(value));
+    }
+
+    private static void assertUser(User expected, Object actual) {
+        assertEquals(User.class, actual.getClass());
+        assertEquals(expected.getId(), ((User) actual).getId());
+        assertEquals(expected.getName(), ((User) actual).getName());
+    }
+
+    public static class User {
+
+        private Long id;
+
+        private String name;
+
+        public User() {
+        }
+
+        User(Long id, String name) {
+            this.id = id;
+            this.name = name;
+        }
+
+        public Long getId() {
+            return id;
+        }
+
+        public void setId(Long id) {
+            this.id = id;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+    }
+}